@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import randomartassignment.expression.ExpressionGeneratorParallel.EvaluatorType;
+
+/**
+ * GenerationBenchmarkParallel measures how long it takes to generate an expression, and to set up an evaluator for it, from a fixed seed.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmarkParallel
+{
+	/**
+	 * The depth that the expression is generated with.
+	 */
+	@Param({"5", "10", "15", "20"})
+	public int depth;
+
+	/**
+	 * The seed that the expression is generated from.
+	 */
+	@Param({"11"})
+	public long seed;
+
+	/**
+	 * Whether identical subexpressions are reused.
+	 */
+	@Param({"false", "true"})
+	public boolean reuse;
+
+	/**
+	 * How the expression is worked out.
+	 */
+	@Param({"TREE", "POSTFIX", "SEPARABLE", "BYTECODE"})
+	public String evaluator;
+
+	/**
+	 * Generates the expression.
+	 * 
+	 * @return The expression.
+	 */
+	@Benchmark
+	public ExpressionGeneratorParallel generate()
+	{
+		return new ExpressionGeneratorParallel(depth, reuse, seed);
+	}
+
+	/**
+	 * Generates the expression and sets up its evaluator.
+	 * 
+	 * @return The expression.
+	 */
+	@Benchmark
+	public ExpressionGeneratorParallel generateAndSetUp()
+	{
+		ExpressionGeneratorParallel e = new ExpressionGeneratorParallel(depth, reuse, seed);
+		e.setEvaluator(EvaluatorType.valueOf(evaluator));
+		return e;
+	}
+}
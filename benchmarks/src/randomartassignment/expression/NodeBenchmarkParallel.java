@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import randomartassignment.expression.TrigonometryParallel.Precision;
+
+/**
+ * NodeBenchmarkParallel measures how long each kind of expression takes to work out by itself, with variables as its arguments, both for a single pixel and for a row of pixels.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeBenchmarkParallel
+{
+	/**
+	 * The number of pixels in a row.
+	 */
+	private static final int WIDTH = 512;
+
+	/**
+	 * The kind of expression.
+	 */
+	@Param({"X", "Y", "MULTIPLY", "AVERAGE", "SIN", "COS"})
+	public String node;
+
+	/**
+	 * How sines and cosines are worked out.
+	 */
+	@Param({"EXACT", "POLYNOMIAL", "TABLE"})
+	public String precision;
+
+	/**
+	 * The expression.
+	 */
+	private ExpressionParallel expression;
+
+	/**
+	 * The position of the pixel - not final, so that the expression cannot be worked out ahead of time.
+	 */
+	private double x = 0.25, y = -0.75;
+
+	/**
+	 * Receives a row of pixels.
+	 */
+	private final double[] row = new double[WIDTH];
+
+	/**
+	 * Makes the expression.
+	 */
+	@Setup
+	public void setUp()
+	{
+		TrigonometryParallel.setPrecision(Precision.valueOf(precision));
+		switch(node)
+		{
+			case "X":
+				expression = new ExpressionParallel.Variable("X");
+				break;
+			case "Y":
+				expression = new ExpressionParallel.Variable("Y");
+				break;
+			case "MULTIPLY":
+				expression = new ExpressionParallel.Multiply(new ExpressionParallel.Variable("X"), new ExpressionParallel.Variable("Y"), new ExpressionParallel.Variable("X"));
+				break;
+			case "AVERAGE":
+				expression = new ExpressionParallel.Average(new ExpressionParallel.Variable("X"), new ExpressionParallel.Variable("Y"), new ExpressionParallel.Variable("X"));
+				break;
+			case "SIN":
+				expression = new ExpressionParallel.Sin(new ExpressionParallel.Variable("X"));
+				break;
+			case "COS":
+				expression = new ExpressionParallel.Cos(new ExpressionParallel.Variable("X"));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown kind of expression: " + node);
+		}
+	}
+
+	/**
+	 * Works out the expression for a single pixel.
+	 * 
+	 * @return The value of the pixel.
+	 */
+	@Benchmark
+	public double pixel()
+	{
+		return expression.evaluate(x, y);
+	}
+
+	/**
+	 * Works out the expression for a row of pixels.
+	 * 
+	 * @return The values of the row.
+	 */
+	@Benchmark
+	public double[] row()
+	{
+		expression.evaluateRow(y, -1.0, 2.0 / (WIDTH - 1), row);
+		return row;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import randomartassignment.expression.ExpressionGeneratorParallel.EvaluatorType;
+
+/**
+ * TreeBenchmarkParallel measures how long whole expressions take to work out with each evaluator. The expressions are generated from fixed seeds, so the same expressions are measured
+ * every time and numbers from before and after a change can be compared.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmarkParallel
+{
+	/**
+	 * The number of pixels in a row.
+	 */
+	private static final int WIDTH = 512;
+
+	/**
+	 * The depth that the expression is generated with.
+	 */
+	@Param({"5", "10", "15", "20"})
+	public int depth;
+
+	/**
+	 * The seed that the expression is generated from.
+	 */
+	@Param({"11"})
+	public long seed;
+
+	/**
+	 * How the expression is worked out.
+	 */
+	@Param({"TREE", "POSTFIX", "SEPARABLE", "BYTECODE"})
+	public String evaluator;
+
+	/**
+	 * The expression.
+	 */
+	private ExpressionGeneratorParallel expression;
+
+	/**
+	 * The position of the pixel - not final, so that the expression cannot be worked out ahead of time.
+	 */
+	private double x = 0.25, y = -0.75;
+
+	/**
+	 * Receives a row of pixels.
+	 */
+	private final double[] row = new double[WIDTH];
+
+	/**
+	 * Generates the expression and sets up its evaluator.
+	 */
+	@Setup
+	public void setUp()
+	{
+		expression = new ExpressionGeneratorParallel(depth, false, seed);
+		expression.setEvaluator(EvaluatorType.valueOf(evaluator));
+	}
+
+	/**
+	 * Works out the expression for a single pixel.
+	 * 
+	 * @return The value of the pixel.
+	 */
+	@Benchmark
+	public double pixel()
+	{
+		return expression.evaluateExpression(x, y);
+	}
+
+	/**
+	 * Works out the expression for a row of pixels.
+	 * 
+	 * @return The values of the row.
+	 */
+	@Benchmark
+	public double[] row()
+	{
+		expression.evaluateRow(y, -1.0, 2.0 / (WIDTH - 1), row);
+		return row;
+	}
+}
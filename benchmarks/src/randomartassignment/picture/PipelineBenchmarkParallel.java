@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PipelineBenchmarkParallel measures how long <code>DriverParallel</code> takes to make and save a whole picture, from the arguments to the finished file, for several sizes of
+ * picture and numbers of threads. The expressions are generated from a fixed seed, so the same picture is made every time.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmarkParallel
+{
+	/**
+	 * The width and height of the picture.
+	 */
+	@Param({"256", "1024", "2048"})
+	public int size;
+
+	/**
+	 * The depth that the expressions are generated with.
+	 */
+	@Param({"10"})
+	public int depth;
+
+	/**
+	 * The seed that the expressions are generated from.
+	 */
+	@Param({"11"})
+	public long seed;
+
+	/**
+	 * The number of threads that make the picture.
+	 */
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	/**
+	 * The number of rows in each band, or 0 to make the whole picture at once.
+	 */
+	@Param({"0", "32"})
+	public int band;
+
+	/**
+	 * The kind of file that the picture is saved as.
+	 */
+	@Param({"binary", "png"})
+	public String format;
+
+	/**
+	 * How the expression is worked out.
+	 */
+	@Param({"TREE", "BYTECODE"})
+	public String evaluator;
+
+	/**
+	 * Where the pictures are saved.
+	 */
+	private File directory;
+
+	/**
+	 * Makes somewhere to save the pictures.
+	 */
+	@Setup
+	public void setUp()
+	{
+		directory = new File(System.getProperty("java.io.tmpdir"), "randomartassignment-benchmark");
+		directory.mkdirs();
+	}
+
+	/**
+	 * Deletes the pictures.
+	 */
+	@TearDown
+	public void tearDown()
+	{
+		for(File f : directory.listFiles())
+		{
+			f.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Makes and saves a picture.
+	 */
+	@Benchmark
+	public void picture()
+	{
+		DriverParallel.main(new String[] {"-c", "-d", "" + depth, "-s", "" + seed, "-w", "" + size, "-h", "" + size, "-j", "" + threads, "-b", "" + band, "-o", format, "-e", evaluator, "-l",
+		          directory.getPath() + "/", "-n", "/picture"});
+	}
+}
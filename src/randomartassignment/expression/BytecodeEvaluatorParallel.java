@@ -0,0 +1,693 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BytecodeEvaluatorParallel is the superclass of classes that are generated while the program is running, one for each expression, whose <code>evaluate(double, double)</code> is nothing
+ * but the straight-line arithmetic of that expression. This lets the JIT compiler treat the expression like any other code that it can inline and keep in registers. Large expressions
+ * are split into many small methods so that none of them go over the 64 KB limit on the size of a method or past the point where the JIT compiler refuses to compile a method. It has been
+ * designed to work in a parallel fashion - the generated classes have no state. In order to use any subclasses of ExpressionParallel, make sure to adjust this class.
+ * 
+ * The generated code always uses the <code>TrigonometryParallel.Precision</code> that was current when it was generated.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public abstract class BytecodeEvaluatorParallel implements EvaluatorParallel
+{
+	/**
+	 * The number of bytes of code that a method is allowed to have before parts of it are split off into methods of their own - this is the size below which HotSpot inlines frequently
+	 * called methods.
+	 */
+	private static final int SMALL_METHOD = 325;
+
+	/**
+	 * The number of bytes of code that a method may never go over - HotSpot does not compile methods that are any bigger than this.
+	 */
+	private static final int HUGE_METHOD = 8000;
+
+	/**
+	 * The most methods a generated class is allowed to have - each one takes up three entries in a constant pool that can only hold 65535.
+	 */
+	private static final int MAX_METHODS = 20000;
+
+	/**
+	 * The number of bytes taken up by calling a method that has been split off: <code>dload_0</code>, <code>dload_2</code>, and <code>invokestatic</code>.
+	 */
+	private static final int CALL_SIZE = 5;
+
+	/**
+	 * Used to give every generated class a different name.
+	 */
+	private static final AtomicInteger COUNT = new AtomicInteger();
+
+	/**
+	 * A constructor for the generated subclasses.
+	 */
+	protected BytecodeEvaluatorParallel()
+	{
+	}
+
+	/**
+	 * The solution to the expression when provided with values for variables, as worked out by the generated code.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluate(double, double)
+	 */
+	@Override
+	public abstract double evaluate(double x, double y);
+
+	/**
+	 * The solutions to the expression for a whole row of pixels, as worked out by a loop in the generated code - having the loop in the generated class means that the expression can be
+	 * inlined into it.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluateRow(double, double, double, double[])
+	 */
+	@Override
+	public abstract void evaluateRow(double y, double x0, double dx, double[] out);
+
+	/**
+	 * Generates, loads, and creates an instance of a class that evaluates the given expression.
+	 * 
+	 * @param root
+	 *             A fully filled <code>ExpressionParallel</code> tree made only of the expressions known to <code>ExpressionGeneratorParallel</code>.
+	 * @return A <code>BytecodeEvaluatorParallel</code> that gives the same results as <code>root</code>.
+	 * @throws IllegalArgumentException
+	 *              If the tree contains an expression that this class does not know how to compile, or if it is too large to fit in a single class.
+	 * @throws LinkageError
+	 *              If the generated class could not be loaded.
+	 */
+	public static BytecodeEvaluatorParallel compile(ExpressionParallel root)
+	{
+		String name = "randomartassignment/expression/GeneratedEvaluatorParallel" + COUNT.getAndIncrement();
+
+		/* Start with methods small enough to be inlined, and only allow bigger ones if there would be too many of them. */
+		int limit = SMALL_METHOD;
+		byte[] classfile;
+		while((classfile = new Generator(name, limit).generate(root)) == null)
+		{
+			if(limit == HUGE_METHOD)
+			{
+				throw new IllegalArgumentException("The expression is too large to be turned into a single class.");
+			}
+			limit = Math.min(limit * 2, HUGE_METHOD);
+		}
+
+		try
+		{
+			Class<?> c = new Loader(BytecodeEvaluatorParallel.class.getClassLoader()).define(name.replace('/', '.'), classfile);
+			return c.asSubclass(BytecodeEvaluatorParallel.class).getConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException ee)
+		{
+			throw new LinkageError("The generated class could not be created.", ee);
+		}
+	}
+
+	/**
+	 * Loader is a class loader that exists only to define a generated class - since each one gets its own loader, the class can be unloaded as soon as nothing uses it anymore.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	private static final class Loader extends ClassLoader
+	{
+		/**
+		 * A constructor.
+		 * 
+		 * @param parent
+		 *             The class loader that is able to find BytecodeEvaluatorParallel.
+		 */
+		Loader(ClassLoader parent)
+		{
+			super(parent);
+		}
+
+		/**
+		 * Turns the bytes of a class file into a class.
+		 * 
+		 * @param name
+		 *             The binary name of the class.
+		 * @param b
+		 *             The contents of the class file.
+		 * @return The class.
+		 */
+		Class<?> define(String name, byte[] b)
+		{
+			return defineClass(name, b, 0, b.length);
+		}
+	}
+
+	/**
+	 * Generator writes the class file for an expression. Every method in it, apart from the constructor and <code>evaluate</code>, is a static method that takes x and y and returns the
+	 * value of one part of the expression.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	private static final class Generator
+	{
+		/**
+		 * The internal name of the class being generated.
+		 */
+		private final String name;
+
+		/**
+		 * The most bytes of code any method is allowed to have, if possible.
+		 */
+		private final int limit;
+
+		/**
+		 * The way that sin(pi * v) and cos(pi * v) are worked out by the generated code.
+		 */
+		private final TrigonometryParallel.Precision precision = TrigonometryParallel.getPrecision();
+
+		/**
+		 * The contents of the constant pool.
+		 */
+		private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+
+		/**
+		 * Used to write to <code>poolBytes</code>.
+		 */
+		private final DataOutputStream pool = new DataOutputStream(poolBytes);
+
+		/**
+		 * The index of every constant that has already been added to the pool, so that they are not added more than once.
+		 */
+		private final HashMap<String, Integer> constants = new HashMap<String, Integer>();
+
+		/**
+		 * The index that the next constant to be added will have.
+		 */
+		private int poolCount = 1;
+
+		/**
+		 * The size of the code for each expression, after its own oversized subexpressions have been split off.
+		 */
+		private final IdentityHashMap<ExpressionParallel, Integer> sizes = new IdentityHashMap<ExpressionParallel, Integer>();
+
+		/**
+		 * The number of the method for each expression that has been split off.
+		 */
+		private final IdentityHashMap<ExpressionParallel, Integer> methods = new IdentityHashMap<ExpressionParallel, Integer>();
+
+		/**
+		 * The expressions that have been split off, in the order of the numbers of their methods.
+		 */
+		private final List<ExpressionParallel> outlined = new ArrayList<ExpressionParallel>();
+
+		/**
+		 * A constructor.
+		 * 
+		 * @param n
+		 *             The internal name of the class.
+		 * @param l
+		 *             The most bytes of code any method is allowed to have, if possible.
+		 */
+		Generator(String n, int l)
+		{
+			name = n;
+			limit = l;
+		}
+
+		/**
+		 * Writes the class file.
+		 * 
+		 * @param root
+		 *             The expression that the class evaluates.
+		 * @return The contents of the class file, or null if the expression needs too many methods at the current limit.
+		 */
+		byte[] generate(ExpressionParallel root)
+		{
+			outline(root);
+			if(outlined.size() > MAX_METHODS)
+			{
+				return null;
+			}
+
+			try
+			{
+				ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(methodBytes);
+
+				int superclass = classConstant("randomartassignment/expression/BytecodeEvaluatorParallel");
+
+				/* The constructor. */
+				ByteArrayOutputStream code = new ByteArrayOutputStream();
+				code.write(0x2a);// aload_0
+				code.write(0xb7);// invokespecial
+				writeShort(code, methodConstant(superclass, "<init>", "()V"));
+				code.write(0xb1);// return
+				writeMethod(out, 0x0001, "<init>", "()V", 1, 1, code, null);
+
+				/* evaluate, which hands its arguments to the method for the root. */
+				code = new ByteArrayOutputStream();
+				code.write(0x27);// dload_1
+				code.write(0x29);// dload_3
+				code.write(0xb8);// invokestatic
+				writeShort(code, methodConstant(classConstant(name), "m" + methods.get(root), "(DD)D"));
+				code.write(0xaf);// dreturn
+				writeMethod(out, 0x0011, "evaluate", "(DD)D", 4, 5, code, null);
+
+				/* evaluateRow, which loops over the row calling the method for the root - this is the only code that branches. */
+				code = new ByteArrayOutputStream();
+				code.write(0x03);// 0: iconst_0
+				code.write(0x36);// 1: istore 8
+				code.write(8);
+				code.write(0x15);// 3: iload 8
+				code.write(8);
+				code.write(0x19);// 5: aload 7
+				code.write(7);
+				code.write(0xbe);// 7: arraylength
+				code.write(0xa2);// 8: if_icmpge 34
+				writeShort(code, 34 - 8);
+				code.write(0x19);// 11: aload 7
+				code.write(7);
+				code.write(0x15);// 13: iload 8
+				code.write(8);
+				code.write(0x15);// 15: iload 8
+				code.write(8);
+				code.write(0x87);// 17: i2d
+				code.write(0x18);// 18: dload 5
+				code.write(5);
+				code.write(0x6b);// 20: dmul
+				code.write(0x29);// 21: dload_3
+				code.write(0x63);// 22: dadd
+				code.write(0x27);// 23: dload_1
+				code.write(0xb8);// 24: invokestatic
+				writeShort(code, methodConstant(classConstant(name), "m" + methods.get(root), "(DD)D"));
+				code.write(0x52);// 27: dastore
+				code.write(0x84);// 28: iinc 8 1
+				code.write(8);
+				code.write(1);
+				code.write(0xa7);// 31: goto 3
+				writeShort(code, 3 - 31);
+				code.write(0xb1);// 34: return
+
+				/* The stack map frames at the two branch targets: 3 has one more local (the int i) than the start of the method, and 34 has the same locals as 3. */
+				ByteArrayOutputStream frames = new ByteArrayOutputStream();
+				writeShort(frames, 2);
+				frames.write(252);// append_frame with one local
+				writeShort(frames, 3);
+				frames.write(1);// int
+				frames.write(34 - 3 - 1);// same_frame
+				writeMethod(out, 0x0011, "evaluateRow", "(DDD[D)V", 6, 9, code, frames);
+
+				for(int m = 0; m < outlined.size(); m++)
+				{
+					code = new ByteArrayOutputStream();
+					int stack = emit(outlined.get(m), code, true);
+					code.write(0xaf);// dreturn
+					writeMethod(out, 0x000a, "m" + m, "(DD)D", stack * 2, 4, code, null);
+				}
+
+				int thisClass = classConstant(name);
+
+				ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+				DataOutputStream cls = new DataOutputStream(classBytes);
+				cls.writeInt(0xcafebabe);
+				cls.writeShort(0);
+				cls.writeShort(51);// Java SE 7
+				cls.writeShort(poolCount);
+				poolBytes.writeTo(cls);
+				cls.writeShort(0x0031);// public final super
+				cls.writeShort(thisClass);
+				cls.writeShort(superclass);
+				cls.writeShort(0);// interfaces
+				cls.writeShort(0);// fields
+				cls.writeShort(outlined.size() + 3);
+				methodBytes.writeTo(cls);
+				cls.writeShort(0);// attributes
+				cls.flush();
+
+				if(poolCount > 0xffff)
+				{
+					return null;
+				}
+				return classBytes.toByteArray();
+			}
+			catch(IOException ee)
+			{
+				throw new Error("Writing to memory should never fail.", ee);
+			}
+		}
+
+		/**
+		 * Works out the size of the code for an expression, splitting off its largest subexpressions into their own methods until it fits within the limit.
+		 * 
+		 * @param e
+		 *             The expression to size.
+		 * @return The number of bytes of code that the expression takes up where it is used.
+		 */
+		private int size(ExpressionParallel e)
+		{
+			if(methods.containsKey(e))
+			{
+				return CALL_SIZE;
+			}
+			Integer known = sizes.get(e);
+			if(known != null)
+			{
+				return known;
+			}
+
+			int own;
+			if(e instanceof ExpressionParallel.Variable)
+			{
+				own = 1;// dload
+			}
+			else if(e instanceof ExpressionParallel.Multiply)
+			{
+				own = 1 + e.expr.size();// dconst_1, then a dmul after each argument
+			}
+			else if(e instanceof ExpressionParallel.Average)
+			{
+				own = 1 + e.expr.size() + 4;// dconst_0, then a dadd after each argument, then ldc2_w and ddiv
+			}
+			else if(e instanceof ExpressionParallel.Sin || e instanceof ExpressionParallel.Cos)
+			{
+				if(e.expr.isEmpty())
+				{
+					throw new IllegalArgumentException("\"" + e.getClass().getSimpleName() + "\" is missing its argument.");
+				}
+				own = 7;// ldc2_w, dmul, and invokestatic
+			}
+			else
+			{
+				throw new IllegalArgumentException("\"" + e.getClass().getName() + "\" is not known to BytecodeEvaluatorParallel.");
+			}
+
+			int total = own;
+			for(ExpressionParallel a : e.expr)
+			{
+				total += size(a);
+			}
+
+			/* Split off the biggest arguments until this fits. */
+			while(total > limit)
+			{
+				ExpressionParallel biggest = null;
+				for(ExpressionParallel a : e.expr)
+				{
+					if(!methods.containsKey(a) && (biggest == null || size(a) > size(biggest)))
+					{
+						biggest = a;
+					}
+				}
+				if(biggest == null || size(biggest) <= CALL_SIZE)
+				{
+					break;
+				}
+				outline(biggest);
+
+				total = own;
+				for(ExpressionParallel a : e.expr)
+				{
+					total += size(a);
+				}
+			}
+
+			sizes.put(e, total);
+			return total;
+		}
+
+		/**
+		 * Gives an expression a method of its own.
+		 * 
+		 * @param e
+		 *             The expression to split off.
+		 */
+		private void outline(ExpressionParallel e)
+		{
+			size(e);
+			methods.put(e, outlined.size());
+			outlined.add(e);
+		}
+
+		/**
+		 * Writes the code for an expression.
+		 * 
+		 * @param e
+		 *             The expression to write.
+		 * @param code
+		 *             Where to write it.
+		 * @param body
+		 *             True if <code>e</code> is what the method being written evaluates, false if <code>e</code> is one of its subexpressions.
+		 * @return The number of doubles that the code needs room for on the operand stack.
+		 */
+		private int emit(ExpressionParallel e, ByteArrayOutputStream code, boolean body)
+		{
+			Integer method = methods.get(e);
+			if(!body && method != null)
+			{
+				code.write(0x26);// dload_0
+				code.write(0x28);// dload_2
+				code.write(0xb8);// invokestatic
+				writeShort(code, methodConstant(classConstant(name), "m" + method, "(DD)D"));
+				return 2;
+			}
+
+			if(e instanceof ExpressionParallel.Variable)
+			{
+				code.write(("X".equals(((ExpressionParallel.Variable) e).name)) ? 0x26 : 0x28);// dload_0 or dload_2
+				return 1;
+			}
+			else if(e instanceof ExpressionParallel.Multiply)
+			{
+				int stack = 1;
+				code.write(0x0f);// dconst_1
+				for(ExpressionParallel a : e.expr)
+				{
+					stack = Math.max(stack, 1 + emit(a, code, false));
+					code.write(0x6b);// dmul
+				}
+				return stack;
+			}
+			else if(e instanceof ExpressionParallel.Average)
+			{
+				int stack = 2;
+				code.write(0x0e);// dconst_0
+				for(ExpressionParallel a : e.expr)
+				{
+					stack = Math.max(stack, 1 + emit(a, code, false));
+					code.write(0x63);// dadd
+				}
+				code.write(0x14);// ldc2_w
+				writeShort(code, doubleConstant(e.expr.size()));
+				code.write(0x6f);// ddiv
+				return stack;
+			}
+			else if(precision == TrigonometryParallel.Precision.EXACT)
+			{
+				code.write(0x14);// ldc2_w
+				writeShort(code, doubleConstant(Math.PI));
+				int stack = 1 + emit(e.expr.get(0), code, false);
+				code.write(0x6b);// dmul
+				code.write(0xb8);// invokestatic
+				writeShort(code, methodConstant(classConstant("java/lang/Math"), (e instanceof ExpressionParallel.Sin) ? "sin" : "cos", "(D)D"));
+				return stack;
+			}
+			else
+			{
+				String function = (precision == TrigonometryParallel.Precision.POLYNOMIAL) ? "polynomial" : "table";
+				int stack = emit(e.expr.get(0), code, false);
+				code.write(0xb8);// invokestatic
+				writeShort(code, methodConstant(classConstant("randomartassignment/expression/TrigonometryParallel"), function
+				          + ((e instanceof ExpressionParallel.Sin) ? "SinPi" : "CosPi"), "(D)D"));
+				return stack;
+			}
+		}
+
+		/**
+		 * Writes a method.
+		 * 
+		 * @param out
+		 *             Where to write the method.
+		 * @param access
+		 *             The access flags of the method.
+		 * @param methodName
+		 *             The name of the method.
+		 * @param descriptor
+		 *             The descriptor of the method.
+		 * @param maxStack
+		 *             The size of the operand stack that the code needs.
+		 * @param maxLocals
+		 *             The number of local variables that the code needs.
+		 * @param code
+		 *             The code of the method.
+		 * @param frames
+		 *             The contents of the method's StackMapTable attribute, or null if the code never branches and so does not need one.
+		 * @throws IOException
+		 *              Never, since everything is written to memory.
+		 */
+		private void writeMethod(DataOutputStream out, int access, String methodName, String descriptor, int maxStack, int maxLocals, ByteArrayOutputStream code,
+		          ByteArrayOutputStream frames) throws IOException
+		{
+			out.writeShort(access);
+			out.writeShort(utf8Constant(methodName));
+			out.writeShort(utf8Constant(descriptor));
+			out.writeShort(1);// attributes
+			out.writeShort(utf8Constant("Code"));
+			out.writeInt(12 + code.size() + ((frames == null) ? 0 : 6 + frames.size()));
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.size());
+			code.writeTo(out);
+			out.writeShort(0);// exception table
+			if(frames == null)
+			{
+				out.writeShort(0);// attributes
+			}
+			else
+			{
+				out.writeShort(1);
+				out.writeShort(utf8Constant("StackMapTable"));
+				out.writeInt(frames.size());
+				frames.writeTo(out);
+			}
+		}
+
+		/**
+		 * Writes a big-endian unsigned short.
+		 * 
+		 * @param code
+		 *             Where to write it.
+		 * @param value
+		 *             The value to write.
+		 */
+		private static void writeShort(ByteArrayOutputStream code, int value)
+		{
+			code.write(value >>> 8);
+			code.write(value);
+		}
+
+		/**
+		 * Gets the index of a UTF-8 string in the constant pool, adding it if necessary.
+		 * 
+		 * @param s
+		 *             The string.
+		 * @return The index of the constant.
+		 * @throws IOException
+		 *              Never, since everything is written to memory.
+		 */
+		private int utf8Constant(String s) throws IOException
+		{
+			Integer index = constants.get("U" + s);
+			if(index == null)
+			{
+				pool.writeByte(1);
+				pool.writeUTF(s);
+				index = poolCount++;
+				constants.put("U" + s, index);
+			}
+			return index;
+		}
+
+		/**
+		 * Gets the index of a class in the constant pool, adding it if necessary.
+		 * 
+		 * @param internalName
+		 *             The internal name of the class.
+		 * @return The index of the constant.
+		 */
+		private int classConstant(String internalName)
+		{
+			try
+			{
+				Integer index = constants.get("C" + internalName);
+				if(index == null)
+				{
+					int utf8 = utf8Constant(internalName);
+					pool.writeByte(7);
+					pool.writeShort(utf8);
+					index = poolCount++;
+					constants.put("C" + internalName, index);
+				}
+				return index;
+			}
+			catch(IOException ee)
+			{
+				throw new Error("Writing to memory should never fail.", ee);
+			}
+		}
+
+		/**
+		 * Gets the index of a method reference in the constant pool, adding it if necessary.
+		 * 
+		 * @param owner
+		 *             The index of the class that the method belongs to.
+		 * @param methodName
+		 *             The name of the method.
+		 * @param descriptor
+		 *             The descriptor of the method.
+		 * @return The index of the constant.
+		 */
+		private int methodConstant(int owner, String methodName, String descriptor)
+		{
+			try
+			{
+				String key = "M" + owner + "." + methodName + descriptor;
+				Integer index = constants.get(key);
+				if(index == null)
+				{
+					int n = utf8Constant(methodName);
+					int d = utf8Constant(descriptor);
+					pool.writeByte(12);
+					pool.writeShort(n);
+					pool.writeShort(d);
+					int nameAndType = poolCount++;
+					pool.writeByte(10);
+					pool.writeShort(owner);
+					pool.writeShort(nameAndType);
+					index = poolCount++;
+					constants.put(key, index);
+				}
+				return index;
+			}
+			catch(IOException ee)
+			{
+				throw new Error("Writing to memory should never fail.", ee);
+			}
+		}
+
+		/**
+		 * Gets the index of a double in the constant pool, adding it if necessary.
+		 * 
+		 * @param d
+		 *             The double.
+		 * @return The index of the constant.
+		 */
+		private int doubleConstant(double d)
+		{
+			try
+			{
+				String key = "D" + Double.doubleToRawLongBits(d);
+				Integer index = constants.get(key);
+				if(index == null)
+				{
+					pool.writeByte(6);
+					pool.writeDouble(d);
+					index = poolCount;
+					poolCount += 2;// doubles take up two entries
+					constants.put(key, index);
+				}
+				return index;
+			}
+			catch(IOException ee)
+			{
+				throw new Error("Writing to memory should never fail.", ee);
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+/**
+ * <code>EvaluatorParallel</code> is anything that can work out the value of an expression at a pixel. The tree of <code>ExpressionParallel</code> objects is itself one, but there are
+ * other representations of the same expression (see <code>ExpressionGeneratorParallel.EvaluatorType</code>) that give the exact same answers more quickly. Implementations must be safe to
+ * use from many threads at once.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public interface EvaluatorParallel
+{
+	/**
+	 * The solution to the expression when provided with values for variables.
+	 * 
+	 * @param x
+	 *             A value between [-1.0, 1.0] that represents a pixel's x-position.
+	 * @param y
+	 *             A value between [-1.0, 1.0] that represents a pixel's y-position.
+	 * @return A double between [-1.0, 1.0].
+	 */
+	double evaluate(double x, double y);
+
+	/**
+	 * The solutions to the expression for a whole row of pixels at once. The i-th pixel of the row has the x-position <code>i * dx + x0</code>, which is exactly the same as the value
+	 * <code>DriverParallel</code> has always used for it when <code>x0</code> is -1.0. Working on a row at a time lets the cost of interpreting the expression be paid once per row instead
+	 * of once per pixel.
+	 * 
+	 * @param y
+	 *             A value between [-1.0, 1.0] that represents the row's y-position.
+	 * @param x0
+	 *             The x-position of the first pixel in the row.
+	 * @param dx
+	 *             The distance between the x-positions of neighboring pixels.
+	 * @param out
+	 *             An array that receives the solution for every pixel in the row - its length is the number of pixels in the row.
+	 */
+	void evaluateRow(double y, double x0, double dx, double[] out);
+}
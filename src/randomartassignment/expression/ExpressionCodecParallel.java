@@ -0,0 +1,688 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import randomartassignment.expression.ExpressionGeneratorParallel.StorageType;
+
+/**
+ * ExpressionCodecParallel saves expressions in a compact binary form and reads them back exactly as they were - unlike their text, this keeps which products are inside of which, and
+ * which parts are shared. After a four byte header, everything is written as numbers made of groups of four bits, each holding three bits of the number, lowest first, and a fourth bit
+ * that is set if more groups follow. The first number is the number of channels, and then each expression is written in the order that <code>toString</code> writes it, as one number
+ * per part. The eight most common parts have a number of their own, so that they take half a byte: 0 for X, 1 for Y, 2 for sin, 3 for cos, 4 and 5 for a product and an average of
+ * two, and 6 and 7 for a product and an average of three. Any other product or average of n arguments is 8 + 3n or 9 + 3n, and a part that has already been written once is 10 + 3n,
+ * where n is which part it was, counting from 0 at the start of its expression. Most parts take half a byte, a tenth or less of what their text takes. It has been designed to work in
+ * a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public final class ExpressionCodecParallel
+{
+	/**
+	 * The bytes that every file starts with - the last one is the version of the format.
+	 */
+	private static final byte[] MAGIC = {'R', 'A', 'E', 1};
+
+	/**
+	 * The kind of a part that has already been written once, in the numbers that are used while reading and writing - these are those of <code>ExpressionStoreParallel</code>.
+	 */
+	private static final int SHARED = 6;
+
+	/**
+	 * The first number that is not one of the eight most common parts.
+	 */
+	private static final int COMMON = 8;
+
+	/**
+	 * This class only has static methods.
+	 */
+	private ExpressionCodecParallel()
+	{
+	}
+
+	/**
+	 * Checks whether some bytes are the start of an expression file.
+	 * 
+	 * @param start
+	 *             The first bytes of a file.
+	 * @param length
+	 *             The number of bytes that are in <code>start</code>.
+	 * @return True if the file is in this format.
+	 */
+	public static boolean isEncoded(byte[] start, int length)
+	{
+		if(length < MAGIC.length)
+		{
+			return false;
+		}
+		for(int i = 0; i < MAGIC.length; i++)
+		{
+			if(start[i] != MAGIC[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes out the expressions for each channel of a picture.
+	 * 
+	 * @param e
+	 *             The expressions.
+	 * @param out
+	 *             Where they are written. It is not closed or flushed.
+	 * @throws IOException
+	 *              If they could not be written.
+	 * @throws IllegalArgumentException
+	 *              If an expression contains a subclass of ExpressionParallel that this class does not know of.
+	 */
+	public static void write(ExpressionGeneratorParallel[] e, OutputStream out) throws IOException
+	{
+		out.write(MAGIC);
+		NibbleOutput nibbles = new NibbleOutput(out);
+		writeNumber(nibbles, e.length);
+		for(ExpressionGeneratorParallel g : e)
+		{
+			if(g.getStore() != null)
+			{
+				ExpressionStoreParallel s = g.getStore();
+				for(int i = 0; i < s.size(); i++)
+				{
+					writeCode(nibbles, s.code(i));
+				}
+			}
+			else
+			{
+				write(g.getRoot(), nibbles);
+			}
+		}
+		nibbles.finish();
+	}
+
+	/**
+	 * Writes out a tree, a part at a time in the order that <code>toString</code> writes them, using a stack so that the depth of the tree does not matter.
+	 * 
+	 * @param root
+	 *             The root of the tree.
+	 * @param out
+	 *             Where it is written.
+	 * @throws IOException
+	 *              If it could not be written.
+	 */
+	private static void write(ExpressionParallel root, NibbleOutput out) throws IOException
+	{
+		IdentityHashMap<ExpressionParallel, Long> written = new IdentityHashMap<ExpressionParallel, Long>();
+		long parts = 0;
+		List<ExpressionParallel> stack = new ArrayList<ExpressionParallel>();
+		stack.add(root);
+		while(!stack.isEmpty())
+		{
+			ExpressionParallel e = stack.remove(stack.size() - 1);
+			Long shared = written.get(e);
+			if(shared != null)
+			{
+				writeCode(out, SHARED | shared << ExpressionStoreParallel.ARGUMENTS);
+				continue;
+			}
+
+			int kind;
+			if(e instanceof ExpressionParallel.Variable)
+			{
+				kind = ("X".equals(((ExpressionParallel.Variable) e).name)) ? ExpressionStoreParallel.X : ExpressionStoreParallel.Y;
+			}
+			else if(e instanceof ExpressionParallel.Multiply)
+			{
+				kind = ExpressionStoreParallel.MULTIPLY;
+			}
+			else if(e instanceof ExpressionParallel.Average)
+			{
+				kind = ExpressionStoreParallel.AVERAGE;
+			}
+			else if(e instanceof ExpressionParallel.Sin)
+			{
+				kind = ExpressionStoreParallel.SIN;
+			}
+			else if(e instanceof ExpressionParallel.Cos)
+			{
+				kind = ExpressionStoreParallel.COS;
+			}
+			else
+			{
+				throw new IllegalArgumentException("Cannot write " + e.getClass().getName() + ".");
+			}
+
+			/* Every part is numbered, but variables are never worth referring back to, since they take a byte either way. */
+			if(!e.expr.isEmpty())
+			{
+				written.put(e, parts);
+			}
+			parts++;
+			writeCode(out, kind | (long) e.expr.size() << ExpressionStoreParallel.ARGUMENTS);
+			for(int a = e.expr.size() - 1; a >= 0; a--)
+			{
+				stack.add(e.expr.get(a));
+			}
+		}
+	}
+
+	/**
+	 * Reads back the expressions for each channel of a picture.
+	 * 
+	 * @param in
+	 *             Where they are read from. It is not closed, and nothing after the byte that the expressions end in is read.
+	 * @param storage
+	 *             How the expressions are kept in memory.
+	 * @return The expressions.
+	 * @throws IOException
+	 *              If they could not be read, or are not in this format.
+	 */
+	public static ExpressionGeneratorParallel[] read(InputStream in, StorageType storage) throws IOException
+	{
+		for(int i = 0; i < MAGIC.length; i++)
+		{
+			if(in.read() != MAGIC[i])
+			{
+				throw new IOException("This is not a file of expressions.");
+			}
+		}
+
+		NibbleInput nibbles = new NibbleInput(in);
+		long channels = readNumber(nibbles);
+		if(channels < 1 || channels > 3)
+		{
+			throw new IOException("A file of expressions cannot have " + channels + " channels.");
+		}
+		ExpressionGeneratorParallel[] e = new ExpressionGeneratorParallel[(int) channels];
+		for(int a = 0; a < e.length; a++)
+		{
+			e[a] = (storage == StorageType.OBJECTS) ? new ExpressionGeneratorParallel(readTree(nibbles)) : new ExpressionGeneratorParallel(readStore(nibbles,
+			          storage == StorageType.OFFHEAP));
+		}
+		return e;
+	}
+
+	/**
+	 * Reads a tree, keeping the parts that have not been given all of their arguments yet on a stack. Parts that were shared when they were written are shared again.
+	 * 
+	 * @param in
+	 *             Where it is read from.
+	 * @return The root of the tree.
+	 * @throws IOException
+	 *              If it could not be read.
+	 */
+	private static ExpressionParallel readTree(NibbleInput in) throws IOException
+	{
+		List<ExpressionParallel> parts = new ArrayList<ExpressionParallel>();
+		List<ExpressionParallel> unfinished = new ArrayList<ExpressionParallel>();
+		List<Integer> left = new ArrayList<Integer>();
+		ExpressionParallel root = null;
+		do
+		{
+			long code = readCode(in);
+			long value = code >>> ExpressionStoreParallel.ARGUMENTS;
+			ExpressionParallel e;
+			int arguments = 0;
+			if((code & 7) == SHARED)
+			{
+				if(value >= parts.size() || unfinished.contains(parts.get((int) value)))
+				{
+					throw new IOException("A part refers to part " + value + ", which has not been read yet.");
+				}
+				e = parts.get((int) value);
+			}
+			else
+			{
+				arguments = checkArguments(code);
+				e = create((int) (code & 7));
+				parts.add(e);
+			}
+
+			if(unfinished.isEmpty())
+			{
+				root = e;
+			}
+			else
+			{
+				int top = unfinished.size() - 1;
+				unfinished.get(top).addArgument(e);
+				left.set(top, left.get(top) - 1);
+				if(left.get(top) == 0)
+				{
+					unfinished.remove(top);
+					left.remove(top);
+				}
+			}
+			if(arguments > 0)
+			{
+				unfinished.add(e);
+				left.add(arguments);
+			}
+		}
+		while(!unfinished.isEmpty());
+		return root;
+	}
+
+	/**
+	 * Reads an expression straight into arrays. A shared part is copied from where it was first read, which is always finished by then.
+	 * 
+	 * @param in
+	 *             Where it is read from.
+	 * @param offHeap
+	 *             True if the arrays should be kept outside of the Java heap.
+	 * @return The expression.
+	 * @throws IOException
+	 *              If it could not be read, or has a part with more arguments than arrays allow.
+	 */
+	private static ExpressionStoreParallel readStore(NibbleInput in, boolean offHeap) throws IOException
+	{
+		byte[] codes = new byte[1024];
+		int n = 0;
+		int[] starts = new int[64], ends = new int[64];// where each part that was read, rather than copied, is
+		int parts = 0;
+		int[] unfinished = new int[16], left = new int[16];
+		int top = 0;
+		do
+		{
+			long code = readCode(in);
+			int finished = -1;// the part that was just read, if it has no arguments
+			int arguments = 0;
+			if((code & 7) == SHARED)
+			{
+				long value = code >>> ExpressionStoreParallel.ARGUMENTS;
+				if(value >= parts || ends[(int) value] == 0)
+				{
+					throw new IOException("A part refers to part " + value + ", which has not been read yet.");
+				}
+				int start = starts[(int) value], length = ends[(int) value] - start;
+				codes = ensure(codes, n, length);
+				System.arraycopy(codes, start, codes, n, length);
+				n += length;
+			}
+			else
+			{
+				arguments = checkArguments(code);
+				if(arguments > ExpressionStoreParallel.MAX_ARGUMENTS)
+				{
+					throw new IOException("A part with " + arguments + " arguments cannot be kept in arrays.");
+				}
+				if(parts == starts.length)
+				{
+					starts = Arrays.copyOf(starts, 2 * parts);
+					ends = Arrays.copyOf(ends, 2 * parts);
+				}
+				starts[parts] = n;
+				codes = ensure(codes, n, 1);
+				codes[n++] = (byte) code;
+				if(arguments == 0)
+				{
+					finished = parts;
+				}
+				parts++;
+			}
+
+			if(arguments > 0)
+			{
+				if(top == unfinished.length)
+				{
+					unfinished = Arrays.copyOf(unfinished, 2 * top);
+					left = Arrays.copyOf(left, 2 * top);
+				}
+				unfinished[top] = parts - 1;
+				left[top] = arguments;
+				top++;
+			}
+			else
+			{
+				if(finished >= 0)
+				{
+					ends[finished] = n;
+				}
+
+				/* This part is finished, so it is one more finished argument of the part on top of the stack, which may now be finished too, and so on down. */
+				while(top > 0 && --left[top - 1] == 0)
+				{
+					top--;
+					ends[unfinished[top]] = n;
+				}
+			}
+		}
+		while(top > 0);
+		return new ExpressionStoreParallel(codes, n, offHeap);
+	}
+
+	/**
+	 * Makes sure that an array has room for more bytes.
+	 * 
+	 * @param codes
+	 *             The array.
+	 * @param n
+	 *             The number of bytes in use.
+	 * @param more
+	 *             The number of bytes that are to be added.
+	 * @return The array, or a larger copy of it.
+	 * @throws IOException
+	 *              If the expression is too large to be kept in an array.
+	 */
+	private static byte[] ensure(byte[] codes, int n, int more) throws IOException
+	{
+		if((long) n + more <= codes.length)
+		{
+			return codes;
+		}
+		if((long) n + more > Integer.MAX_VALUE - 8)
+		{
+			throw new IOException("The expression has too many parts to be kept in arrays.");
+		}
+		return Arrays.copyOf(codes, (int) Math.min(Math.max(2L * codes.length, (long) n + more), Integer.MAX_VALUE - 8));
+	}
+
+	/**
+	 * Checks that a part has the number of arguments that its kind needs.
+	 * 
+	 * @param code
+	 *             The number that was read for the part.
+	 * @return The number of arguments.
+	 * @throws IOException
+	 *              If it is not a kind of part or has the wrong number of arguments.
+	 */
+	private static int checkArguments(long code) throws IOException
+	{
+		long arguments = code >>> ExpressionStoreParallel.ARGUMENTS;
+		int kind = (int) (code & 7);
+		boolean fine;
+		switch(kind)
+		{
+			case ExpressionStoreParallel.X:
+			case ExpressionStoreParallel.Y:
+				fine = arguments == 0;
+				break;
+			case ExpressionStoreParallel.MULTIPLY:
+			case ExpressionStoreParallel.AVERAGE:
+				fine = arguments >= 1 && arguments <= Integer.MAX_VALUE;
+				break;
+			case ExpressionStoreParallel.SIN:
+			case ExpressionStoreParallel.COS:
+				fine = arguments == 1;
+				break;
+			default:
+				fine = false;
+				break;
+		}
+		if(!fine)
+		{
+			throw new IOException("A part of kind " + kind + " cannot have " + arguments + " arguments.");
+		}
+		return (int) arguments;
+	}
+
+	/**
+	 * Makes a part of a tree.
+	 * 
+	 * @param kind
+	 *             The kind of part.
+	 * @return An <code>ExpressionParallel</code> that has no arguments yet.
+	 */
+	private static ExpressionParallel create(int kind)
+	{
+		switch(kind)
+		{
+			case ExpressionStoreParallel.X:
+				return new ExpressionParallel.Variable("X");
+			case ExpressionStoreParallel.Y:
+				return new ExpressionParallel.Variable("Y");
+			case ExpressionStoreParallel.MULTIPLY:
+				return new ExpressionParallel.Multiply();
+			case ExpressionStoreParallel.AVERAGE:
+				return new ExpressionParallel.Average();
+			case ExpressionStoreParallel.SIN:
+				return new ExpressionParallel.Sin();
+			default:
+				return new ExpressionParallel.Cos();
+		}
+	}
+
+	/**
+	 * Writes the number of a part.
+	 * 
+	 * @param out
+	 *             Where it is written.
+	 * @param code
+	 *             The kind of part in the lowest three bits and its number of arguments, or which part it was if it is <code>SHARED</code>, in the rest.
+	 * @throws IOException
+	 *              If it could not be written.
+	 * @throws IllegalArgumentException
+	 *              If it is a sine or cosine that does not have exactly one argument, or a variable that has any.
+	 */
+	private static void writeCode(NibbleOutput out, long code) throws IOException
+	{
+		int kind = (int) (code & 7);
+		long value = code >>> ExpressionStoreParallel.ARGUMENTS;
+		switch(kind)
+		{
+			case ExpressionStoreParallel.X:
+			case ExpressionStoreParallel.Y:
+			case ExpressionStoreParallel.SIN:
+			case ExpressionStoreParallel.COS:
+				if(value != ((kind == ExpressionStoreParallel.X || kind == ExpressionStoreParallel.Y) ? 0 : 1))
+				{
+					throw new IllegalArgumentException("A part of kind " + kind + " cannot have " + value + " arguments.");
+				}
+				writeNumber(out, (kind == ExpressionStoreParallel.X) ? 0 : (kind == ExpressionStoreParallel.Y) ? 1 : (kind == ExpressionStoreParallel.SIN) ? 2 : 3);
+				break;
+			case ExpressionStoreParallel.MULTIPLY:
+			case ExpressionStoreParallel.AVERAGE:
+			{
+				int average = (kind == ExpressionStoreParallel.AVERAGE) ? 1 : 0;
+				writeNumber(out, (value == 2 || value == 3) ? 4 + 2 * (value - 2) + average : COMMON + 3 * value + average);
+				break;
+			}
+			default:
+				writeNumber(out, COMMON + 3 * value + 2);
+				break;
+		}
+	}
+
+	/**
+	 * Reads the number of a part that was written by <code>writeCode</code>.
+	 * 
+	 * @param in
+	 *             Where it is read from.
+	 * @return The kind of part in the lowest three bits and its number of arguments, or which part it was if it is <code>SHARED</code>, in the rest.
+	 * @throws IOException
+	 *              If it could not be read.
+	 */
+	private static long readCode(NibbleInput in) throws IOException
+	{
+		long number = readNumber(in);
+		if(number < 4)
+		{
+			int kind = (number == 0) ? ExpressionStoreParallel.X : (number == 1) ? ExpressionStoreParallel.Y : (number == 2) ? ExpressionStoreParallel.SIN : ExpressionStoreParallel.COS;
+			return kind | ((number < 2) ? 0L : 1L) << ExpressionStoreParallel.ARGUMENTS;
+		}
+		else if(number < COMMON)
+		{
+			int kind = ((number & 1) == 0) ? ExpressionStoreParallel.MULTIPLY : ExpressionStoreParallel.AVERAGE;
+			return kind | (2 + (number - 4) / 2) << ExpressionStoreParallel.ARGUMENTS;
+		}
+
+		long value = (number - COMMON) / 3;
+		int kind = (int) ((number - COMMON) % 3);
+		return ((kind == 0) ? ExpressionStoreParallel.MULTIPLY : (kind == 1) ? ExpressionStoreParallel.AVERAGE : SHARED) | value << ExpressionStoreParallel.ARGUMENTS;
+	}
+
+	/**
+	 * Writes a number three bits at a time, lowest first.
+	 * 
+	 * @param out
+	 *             Where it is written.
+	 * @param value
+	 *             The number, which must not be negative.
+	 * @throws IOException
+	 *              If it could not be written.
+	 */
+	private static void writeNumber(NibbleOutput out, long value) throws IOException
+	{
+		while(value >= 8)
+		{
+			out.write((int) (value & 7) | 8);
+			value >>>= 3;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Reads a number that was written by <code>writeNumber</code>.
+	 * 
+	 * @param in
+	 *             Where it is read from.
+	 * @return The number.
+	 * @throws IOException
+	 *              If it could not be read, or is too large.
+	 */
+	private static long readNumber(NibbleInput in) throws IOException
+	{
+		long value = 0;
+		for(int shift = 0; shift < 60; shift += 3)
+		{
+			int nibble = in.read();
+			value |= (long) (nibble & 7) << shift;
+			if(nibble < 8)
+			{
+				return value;
+			}
+		}
+		throw new IOException("A number in the file of expressions is too large.");
+	}
+
+	/**
+	 * NibbleOutput writes four bits at a time, the first four of each byte being the higher ones.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	private static final class NibbleOutput
+	{
+		/**
+		 * Where the bytes are written.
+		 */
+		private final OutputStream out;
+
+		/**
+		 * The first four bits of a byte that has not been written yet, or -1 if there are none.
+		 */
+		private int pending = -1;
+
+		/**
+		 * A constructor.
+		 * 
+		 * @param o
+		 *             Where the bytes are written.
+		 */
+		NibbleOutput(OutputStream o)
+		{
+			out = o;
+		}
+
+		/**
+		 * Writes four bits.
+		 * 
+		 * @param nibble
+		 *             A number between [0, 15].
+		 * @throws IOException
+		 *              If a byte could not be written.
+		 */
+		void write(int nibble) throws IOException
+		{
+			if(pending < 0)
+			{
+				pending = nibble;
+			}
+			else
+			{
+				out.write(pending << 4 | nibble);
+				pending = -1;
+			}
+		}
+
+		/**
+		 * Writes out the last byte, if only half of it has been filled.
+		 * 
+		 * @throws IOException
+		 *              If it could not be written.
+		 */
+		void finish() throws IOException
+		{
+			if(pending >= 0)
+			{
+				write(0);
+			}
+		}
+	}
+
+	/**
+	 * NibbleInput reads four bits at a time, the first four of each byte being the higher ones.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	private static final class NibbleInput
+	{
+		/**
+		 * Where the bytes are read from.
+		 */
+		private final InputStream in;
+
+		/**
+		 * The last four bits of the byte that was read last, or -1 if they have been used.
+		 */
+		private int pending = -1;
+
+		/**
+		 * A constructor.
+		 * 
+		 * @param i
+		 *             Where the bytes are read from.
+		 */
+		NibbleInput(InputStream i)
+		{
+			in = i;
+		}
+
+		/**
+		 * Reads four bits.
+		 * 
+		 * @return A number between [0, 15].
+		 * @throws IOException
+		 *              If a byte could not be read, or there are no more.
+		 */
+		int read() throws IOException
+		{
+			if(pending >= 0)
+			{
+				int nibble = pending;
+				pending = -1;
+				return nibble;
+			}
+
+			int b = in.read();
+			if(b < 0)
+			{
+				throw new EOFException("The file of expressions ends too soon.");
+			}
+			pending = b & 15;
+			return b >>> 4;
+		}
+	}
+}
@@ -4,10 +4,17 @@
 
 package randomartassignment.expression;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * ExpressionGeneratorParallel is essentially a wrapper around ExpressionParallel in that it represents a whole expression along with associated methods that help create it and evaluate it.
@@ -34,9 +41,9 @@ public class ExpressionGeneratorParallel
 		 */
 		VARIABLE
 		{
-			ExpressionParallel create()
+			ExpressionParallel create(SplittableRandomParallel random)
 			{
-				return RANDOM.nextBoolean() ? new ExpressionParallel.Variable("X") : new ExpressionParallel.Variable("Y");
+				return random.nextBoolean() ? new ExpressionParallel.Variable("X") : new ExpressionParallel.Variable("Y");
 			}
 		},
 
@@ -45,7 +52,7 @@ public class ExpressionGeneratorParallel
 		 */
 		MULTIPLY
 		{
-			ExpressionParallel create()
+			ExpressionParallel create(SplittableRandomParallel random)
 			{
 				return new ExpressionParallel.Multiply();
 			}
@@ -56,7 +63,7 @@ public class ExpressionGeneratorParallel
 		 */
 		AVERAGE
 		{
-			ExpressionParallel create()
+			ExpressionParallel create(SplittableRandomParallel random)
 			{
 				return new ExpressionParallel.Average();
 			}
@@ -67,7 +74,7 @@ public class ExpressionGeneratorParallel
 		 */
 		SIN
 		{
-			ExpressionParallel create()
+			ExpressionParallel create(SplittableRandomParallel random)
 			{
 				return new ExpressionParallel.Sin();
 			}
@@ -78,7 +85,7 @@ public class ExpressionGeneratorParallel
 		 */
 		COS
 		{
-			ExpressionParallel create()
+			ExpressionParallel create(SplittableRandomParallel random)
 			{
 				return new ExpressionParallel.Cos();
 			}
@@ -97,19 +104,163 @@ public class ExpressionGeneratorParallel
 		/**
 		 * Creates a random expression selected from the list, <code>EXPRESSIONS</code>.
 		 * 
+		 * @param random
+		 *             Where the random values come from.
 		 * @return An <code>ExpressionParallel</code> that has no preset arguments.
 		 */
-		public static ExpressionParallel generateRandomExpression()
+		public static ExpressionParallel generateRandomExpression(SplittableRandomParallel random)
 		{
-			return EXPRESSIONS.get(RANDOM.nextInt(SIZE)).create();
+			return EXPRESSIONS.get(random.nextInt(SIZE)).create(random);
 		}
 
 		/**
 		 * The actual <code>ExpressionParallel</code> is created here - it is dependent on the actual method definition as made within the enum definition.
 		 * 
+		 * @param random
+		 *             Where the random values come from, for expressions that need them.
 		 * @return An <code>ExpressionParallel</code> that has no preset arguments.
 		 */
-		abstract ExpressionParallel create();
+		abstract ExpressionParallel create(SplittableRandomParallel random);
+	}
+
+	/**
+	 * A list of all of the ways that ExpressionGeneratorParallel knows of to evaluate its expression. They all give identical results, except for <code>FLOAT</code>, but differ in how
+	 * quickly they do so and in how much work it takes to set them up.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	public enum EvaluatorType
+	{
+		/**
+		 * Walks the tree of <code>ExpressionParallel</code> objects for every pixel. It needs no setting up and works with any subclass of ExpressionParallel.
+		 */
+		TREE
+		{
+			EvaluatorParallel create(ExpressionParallel root)
+			{
+				return root;
+			}
+		},
+
+		/**
+		 * Flattens the tree into a postfix program once and runs that on a stack for every pixel.
+		 */
+		POSTFIX
+		{
+			EvaluatorParallel create(ExpressionParallel root)
+			{
+				return new PostfixEvaluatorParallel(root);
+			}
+		},
+
+		/**
+		 * Works out the subexpressions that only depend on X once per picture and those that only depend on Y once per row, leaving only the rest to be worked out for every pixel. This
+		 * only helps when whole rows are evaluated at once.
+		 */
+		SEPARABLE
+		{
+			EvaluatorParallel create(ExpressionParallel root)
+			{
+				return new SeparableEvaluatorParallel(root);
+			}
+		},
+
+		/**
+		 * Generates a class whose code is the arithmetic of the expression, so that the JIT compiler can compile the expression itself. Generating the class takes a moment, so this is
+		 * best for large pictures. If the class cannot be generated, the tree is used instead.
+		 */
+		BYTECODE
+		{
+			EvaluatorParallel create(ExpressionParallel root)
+			{
+				try
+				{
+					return BytecodeEvaluatorParallel.compile(root);
+				}
+				catch(LinkageError ee)
+				{
+					return root;
+				}
+			}
+		},
+
+		/**
+		 * Runs the same program as <code>POSTFIX</code>, but in floats rather than doubles, which is quicker but not exact - a few pixels may come out one shade off (see
+		 * <code>FloatEvaluatorParallel</code>).
+		 */
+		FLOAT
+		{
+			EvaluatorParallel create(ExpressionParallel root)
+			{
+				return new FloatEvaluatorParallel(root);
+			}
+		};
+
+		/**
+		 * The actual <code>EvaluatorParallel</code> is created here - it is dependent on the actual method definition as made within the enum definition.
+		 * 
+		 * @param root
+		 *             A fully filled <code>ExpressionParallel</code> tree.
+		 * @return An <code>EvaluatorParallel</code> that gives the same results as <code>root</code>.
+		 */
+		abstract EvaluatorParallel create(ExpressionParallel root);
+	}
+
+	/**
+	 * A list of the ways that ExpressionGeneratorParallel can keep its expression in memory. The same depth and seed give the same expression with all of them.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	public enum StorageType
+	{
+		/**
+		 * Keeps the expression as a tree of <code>ExpressionParallel</code> objects, which can use any evaluator and share subexpressions.
+		 */
+		OBJECTS
+		{
+			ExpressionGeneratorParallel create(int expressionDepth, boolean shareSubexpressions, SplittableRandomParallel random)
+			{
+				return new ExpressionGeneratorParallel(expressionDepth, shareSubexpressions, random);
+			}
+		},
+
+		/**
+		 * Keeps the expression in an <code>ExpressionStoreParallel</code>, which takes a fraction of the memory and no recursion, so depths well beyond 25 are possible. It is always
+		 * evaluated by the store itself and never shares subexpressions.
+		 */
+		ARRAYS
+		{
+			ExpressionGeneratorParallel create(int expressionDepth, boolean shareSubexpressions, SplittableRandomParallel random)
+			{
+				return new ExpressionGeneratorParallel(ExpressionStoreParallel.generate(expressionDepth, random, false));
+			}
+		},
+
+		/**
+		 * Keeps the expression in an <code>ExpressionStoreParallel</code> whose arrays are outside of the Java heap, so that they do not count against its maximum size.
+		 */
+		OFFHEAP
+		{
+			ExpressionGeneratorParallel create(int expressionDepth, boolean shareSubexpressions, SplittableRandomParallel random)
+			{
+				return new ExpressionGeneratorParallel(ExpressionStoreParallel.generate(expressionDepth, random, true));
+			}
+		};
+
+		/**
+		 * Generates an expression that is kept in this way.
+		 * 
+		 * @param expressionDepth
+		 *             An integer that represents the maximum possible depth of the expression.
+		 * @param shareSubexpressions
+		 *             True if identical subexpressions should be shared, where that is possible.
+		 * @param random
+		 *             Where the random values come from.
+		 * @return An <code>ExpressionGeneratorParallel</code> for the expression.
+		 */
+		abstract ExpressionGeneratorParallel create(int expressionDepth, boolean shareSubexpressions, SplittableRandomParallel random);
 	}
 
 	/**
@@ -118,10 +269,40 @@ public class ExpressionGeneratorParallel
 	private ExpressionParallel root;
 
 	/**
-	 * This object returns random values that help determine in what order expressions are created. Please use it when randomness is required so as to maintain unique but reproducible
-	 * creations.
+	 * The expression, if it is kept in arrays rather than as a tree - the root is null then.
+	 */
+	private ExpressionStoreParallel store;
+
+	/**
+	 * What is actually used to evaluate the root - by default, the root itself.
+	 */
+	private EvaluatorParallel evaluator;
+
+	/**
+	 * A program that evaluates the roots of every channel of a picture at once, which this is one of - or null if there is none.
 	 */
-	static final Random RANDOM = new Random();// Can possibly add an option to give an argument so that you can repeat equations
+	private PostfixEvaluatorParallel channels;
+
+	/**
+	 * Which of the values that <code>channels</code> works out is this root's.
+	 */
+	private int channel;
+
+	/**
+	 * While an expression that shares its subexpressions is being generated, this holds every distinct subexpression made so far. It is null otherwise. Parts of the expression are
+	 * generated at the same time, so it has to allow for that.
+	 */
+	private ConcurrentHashMap<Shape, ExpressionParallel> shapes;
+
+	/**
+	 * The depth from which the arguments of a part of an expression are generated at the same time as each other - shallower parts are too small to be worth splitting up.
+	 */
+	private static final int PARALLEL_DEPTH = 12;
+
+	/**
+	 * The threads that large expressions are generated on. They are only started once they are needed.
+	 */
+	private static final ForkJoinPool POOL = new ForkJoinPool();
 
 	/**
 	 * A constructor that accepts a value for the maximum depth of the expression - keep in mind that it does not necessarily always reach it.
@@ -132,7 +313,130 @@ public class ExpressionGeneratorParallel
 	 */
 	public ExpressionGeneratorParallel(int expressionDepth)
 	{
-		root = createExpression(expressionDepth);
+		this(expressionDepth, false);
+	}
+
+	/**
+	 * A constructor that accepts a value for the maximum depth of the expression and whether identical subexpressions should be shared. A shared subexpression is only kept in memory once
+	 * no matter how many times it appears, and the postfix evaluator only works it out once per pixel - at large depths, this saves a great deal of both. The expression is the same as
+	 * it would have been otherwise, and so is its <code>toString()</code>.
+	 * 
+	 * @param expressionDepth
+	 *             An integer that represents the maximum possible depth of the expression, it must be between 0 and less than the maximum amount of calls to the stack that are allowed by
+	 *             the Java implementation.
+	 * @param shareSubexpressions
+	 *             True if identical subexpressions should be shared, false if every subexpression should be its own object.
+	 */
+	public ExpressionGeneratorParallel(int expressionDepth, boolean shareSubexpressions)
+	{
+		this(expressionDepth, shareSubexpressions, SplittableRandomParallel.newSeed());
+	}
+
+	/**
+	 * A constructor that accepts a value for the maximum depth of the expression, whether identical subexpressions should be shared, and a seed that the expression is generated from.
+	 * The same depth and seed always give the same expression.
+	 * 
+	 * @param expressionDepth
+	 *             An integer that represents the maximum possible depth of the expression, it must be between 0 and less than the maximum amount of calls to the stack that are allowed by
+	 *             the Java implementation.
+	 * @param shareSubexpressions
+	 *             True if identical subexpressions should be shared, false if every subexpression should be its own object.
+	 * @param seed
+	 *             The seed.
+	 */
+	public ExpressionGeneratorParallel(int expressionDepth, boolean shareSubexpressions, long seed)
+	{
+		this(expressionDepth, shareSubexpressions, new SplittableRandomParallel(seed));
+	}
+
+	/**
+	 * A constructor that generates an expression from the given random values.
+	 * 
+	 * @param expressionDepth
+	 *             An integer that represents the maximum possible depth of the expression.
+	 * @param shareSubexpressions
+	 *             True if identical subexpressions should be shared, false if every subexpression should be its own object.
+	 * @param random
+	 *             Where the random values come from.
+	 */
+	private ExpressionGeneratorParallel(int expressionDepth, boolean shareSubexpressions, SplittableRandomParallel random)
+	{
+		if(shareSubexpressions)
+		{
+			shapes = new ConcurrentHashMap<Shape, ExpressionParallel>();
+		}
+		Subexpression s = new Subexpression(expressionDepth, random);
+		root = (ForkJoinTask.inForkJoinPool()) ? s.invoke() : POOL.invoke(s);
+		evaluator = root;
+		shapes = null;
+	}
+
+	/**
+	 * Generates the expressions for several channels of a picture at the same time. Each channel gets its own split of the seed, in order, so the same seed always gives the same
+	 * expressions, and the first channel's expression does not depend on how many channels there are.
+	 * 
+	 * @param channels
+	 *             The number of expressions to generate.
+	 * @param expressionDepth
+	 *             An integer that represents the maximum possible depth of each expression.
+	 * @param shareSubexpressions
+	 *             True if identical subexpressions should be shared, false if every subexpression should be its own object.
+	 * @param seed
+	 *             The seed.
+	 * @return An array of <code>ExpressionGeneratorParallel</code>s, one for each channel.
+	 */
+	public static ExpressionGeneratorParallel[] generate(int channels, int expressionDepth, boolean shareSubexpressions, long seed)
+	{
+		return generate(channels, expressionDepth, shareSubexpressions, seed, StorageType.OBJECTS);
+	}
+
+	/**
+	 * Generates the expressions for several channels of a picture at the same time, keeping them in the given way. Each channel gets its own split of the seed, in order, so the same
+	 * seed always gives the same expressions no matter how they are kept.
+	 * 
+	 * @param channels
+	 *             The number of expressions to generate.
+	 * @param expressionDepth
+	 *             An integer that represents the maximum possible depth of each expression.
+	 * @param shareSubexpressions
+	 *             True if identical subexpressions should be shared, false if every subexpression should be its own object. It is ignored unless the expressions are kept as objects.
+	 * @param seed
+	 *             The seed.
+	 * @param storage
+	 *             How the expressions are kept in memory.
+	 * @return An array of <code>ExpressionGeneratorParallel</code>s, one for each channel.
+	 */
+	public static ExpressionGeneratorParallel[] generate(int channels, final int expressionDepth, final boolean shareSubexpressions, long seed, final StorageType storage)
+	{
+		final ExpressionGeneratorParallel[] generated = new ExpressionGeneratorParallel[channels];
+		SplittableRandomParallel random = new SplittableRandomParallel(seed);
+		final List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		for(int k = 0; k < channels; k++)
+		{
+			/* An anonymous inner class that generates one channel's expression by itself. */
+			final int kk = k;
+			final SplittableRandomParallel channelRandom = random.split();
+			tasks.add(new RecursiveAction()
+				{
+					private static final long serialVersionUID = 1L;
+
+					protected void compute()
+					{
+						generated[kk] = storage.create(expressionDepth, shareSubexpressions, channelRandom);
+					}
+				});
+		}
+
+		POOL.invoke(new RecursiveAction()
+			{
+				private static final long serialVersionUID = 1L;
+
+				protected void compute()
+				{
+					invokeAll(tasks);
+				}
+			});
+		return generated;
 	}
 
 	/**
@@ -144,19 +448,34 @@ public class ExpressionGeneratorParallel
 	public ExpressionGeneratorParallel(ExpressionParallel ex)
 	{
 		root = ex;
+		evaluator = root;
 	}
 
 	/**
-	 * A test expression that has a predetermined output (shown in "Grayscale check.png").
+	 * A constructor that accepts an expression that is kept in arrays. It is always evaluated by the arrays themselves.
+	 * 
+	 * @param s
+	 *             The expression.
 	 */
-	public static void grayscaleTest()
+	public ExpressionGeneratorParallel(ExpressionStoreParallel s)
+	{
+		store = s;
+		evaluator = store;
+	}
+
+	/**
+	 * A test expression that has a predetermined output (shown in "Grayscale check.png", which is 301 by 301 pixels).
+	 * 
+	 * @return An <code>ExpressionGeneratorParallel</code> for the test expression.
+	 */
+	public static ExpressionGeneratorParallel grayscaleTest()
 	{
 		// sin(pi * sin(pi * sin(pi * (sin(pi * sin(pi * sin(pi * sin(pi * cos(pi * y))))) * cos(pi * sin(pi * cos(pi * avg(sin(pi * y), (x * x)))))))))
 
-		new ExpressionParallel.Sin(new ExpressionParallel.Sin(new ExpressionParallel.Sin(new ExpressionParallel.Multiply(new ExpressionParallel.Sin(new ExpressionParallel.Sin(
-		          new ExpressionParallel.Sin(new ExpressionParallel.Sin(new ExpressionParallel.Cos(new ExpressionParallel.Variable("Y")))))), new ExpressionParallel.Cos(
-		          new ExpressionParallel.Sin(new ExpressionParallel.Cos(new ExpressionParallel.Average(new ExpressionParallel.Sin(new ExpressionParallel.Variable("Y")),
-		                    new ExpressionParallel.Multiply(new ExpressionParallel.Variable("X"), new ExpressionParallel.Variable("X"))))))))));
+		return new ExpressionGeneratorParallel(new ExpressionParallel.Sin(new ExpressionParallel.Sin(new ExpressionParallel.Sin(new ExpressionParallel.Multiply(
+		          new ExpressionParallel.Sin(new ExpressionParallel.Sin(new ExpressionParallel.Sin(new ExpressionParallel.Sin(new ExpressionParallel.Cos(new ExpressionParallel.Variable("Y")))))),
+		          new ExpressionParallel.Cos(new ExpressionParallel.Sin(new ExpressionParallel.Cos(new ExpressionParallel.Average(new ExpressionParallel.Sin(new ExpressionParallel.Variable("Y")),
+		                    new ExpressionParallel.Multiply(new ExpressionParallel.Variable("X"), new ExpressionParallel.Variable("X")))))))))));
 	}
 
 	/**
@@ -164,44 +483,224 @@ public class ExpressionGeneratorParallel
 	 * 
 	 * @param depth
 	 *             An integer that is the maximum possible depth that this expression will go, though it may not necessarily reach it.
+	 * @param random
+	 *             Where the random values come from.
 	 * @return A full expression with subexpressions that have their own subexpressions and so on, with all nodes ending with one or more variables.
 	 */
-	private ExpressionParallel createExpression(int depth)
+	private ExpressionParallel createExpression(int depth, SplittableRandomParallel random)
 	{
 		/* If it has hit the maximum depth, make a variable to end the recursion. */
 		if(depth == 0)
 		{
-			return RANDOM.nextBoolean() ? new ExpressionParallel.Variable("X") : new ExpressionParallel.Variable("Y");
+			return share(random.nextBoolean() ? new ExpressionParallel.Variable("X") : new ExpressionParallel.Variable("Y"));
 		}
 
-		/* Otherwise, reduce the remaining depth and return a full expression, which may be a subexpression for a higher call. */
+		/*
+		 * Otherwise, reduce the remaining depth and return a full expression, which may be a subexpression for a higher call. If this happens to have a returned value of 0, then it skips
+		 * going through making subexpressions and just returns itself, otherwise it generates the correct number of arguments, adds them to itself, and then returns itself.
+		 */
+		ExpressionParallel e = ExpressionType.generateRandomExpression(random);
+		for(SplittableRandomParallel r : splitArguments(e, random))
+		{
+			e.addArgument(createExpression(depth - 1, r));
+		}
 
-		depth--;
+		return share(e);
+	}
 
-		/*
-		 * If this happens to have a returned value of 0, then it skips going through making subexpressions and just returns itself, otherwise it generates the correct number of arguments,
-		 * adds them to itself, and then returns itself.
+	/**
+	 * Works out how many arguments an expression gets and splits off the random values that each one is generated from. This is all done before any of the arguments are generated, so
+	 * that each argument's random values do not depend on how the others were generated.
+	 * 
+	 * @param e
+	 *             The expression, which does not have any arguments yet.
+	 * @param random
+	 *             Where the random values for the expression come from.
+	 * @return An array with a <code>SplittableRandomParallel</code> for each argument - empty for a variable.
+	 */
+	private static SplittableRandomParallel[] splitArguments(ExpressionParallel e, SplittableRandomParallel random)
+	{
+		int arguments = e.howManyArguments();
+		if(arguments == -1)
+		{
+			arguments = random.nextInt(3) + 2;// the plus 2 here is mandatory for it to work, the maximum value can be whatever you want
+		}
+
+		SplittableRandomParallel[] split = new SplittableRandomParallel[Math.max(0, arguments)];
+		for(int i = 0; i < split.length; i++)
+		{
+			split[i] = random.split();
+		}
+		return split;
+	}
+
+	/**
+	 * Finds the subexpression that is identical to the one given, if subexpressions are being shared. Since the arguments of <code>e</code> have already been shared, it is enough to
+	 * compare them by identity.
+	 * 
+	 * @param e
+	 *             A newly generated expression whose arguments have all been shared.
+	 * @return The first expression that was generated to be identical to <code>e</code> - possibly <code>e</code> itself.
+	 */
+	private ExpressionParallel share(ExpressionParallel e)
+	{
+		if(shapes == null)
+		{
+			return e;
+		}
+
+		ExpressionParallel existing = shapes.putIfAbsent(new Shape(e), e);
+		return (existing != null) ? existing : e;
+	}
+
+	/**
+	 * Subexpression generates a part of an expression. If the part is deep enough, its arguments are generated at the same time as each other; otherwise the whole part is generated
+	 * by the thread that it is given to.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	private final class Subexpression extends RecursiveTask<ExpressionParallel>
+	{
+		/**
+		 * Used for serialization, which this class never needs.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The maximum depth of the part.
+		 */
+		private final int depth;
+
+		/**
+		 * Where the random values for the part come from.
+		 */
+		private final SplittableRandomParallel random;
+
+		/**
+		 * A constructor.
+		 * 
+		 * @param d
+		 *             The maximum depth of the part.
+		 * @param r
+		 *             Where the random values for the part come from.
 		 */
-		ExpressionParallel e = ExpressionType.generateRandomExpression();
+		Subexpression(int d, SplittableRandomParallel r)
+		{
+			depth = d;
+			random = r;
+		}
 
-		if(e.howManyArguments() == 1)
+		/**
+		 * Generates the part.
+		 * 
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		@Override
+		protected ExpressionParallel compute()
 		{
-			e.addArgument(createExpression(depth));
+			if(depth < PARALLEL_DEPTH)
+			{
+				return createExpression(depth, random);
+			}
+
+			/* The same as createExpression, except that the arguments are generated at the same time. */
+			ExpressionParallel e = ExpressionType.generateRandomExpression(random);
+			List<Subexpression> arguments = new ArrayList<Subexpression>();
+			for(SplittableRandomParallel r : splitArguments(e, random))
+			{
+				arguments.add(new Subexpression(depth - 1, r));
+			}
+			invokeAll(arguments);
+			for(Subexpression a : arguments)
+			{
+				e.addArgument(a.join());
+			}
+
+			return share(e);
 		}
-		else if(e.howManyArguments() == 2)
+	}
+
+	/**
+	 * Shape is what makes two expressions identical: they are of the same class, they have the same name if they are variables, and they have the very same arguments in the same order.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	private static final class Shape
+	{
+		/**
+		 * The expression that this is the shape of.
+		 */
+		private final ExpressionParallel e;
+
+		/**
+		 * The hash code, which is worked out ahead of time since every shape is looked up at least once.
+		 */
+		private final int hash;
+
+		/**
+		 * A constructor.
+		 * 
+		 * @param ex
+		 *             The expression that this is the shape of.
+		 */
+		Shape(ExpressionParallel ex)
 		{
-			e.addArguments(createExpression(depth), createExpression(depth));
+			e = ex;
+			int h = e.getClass().hashCode();
+			if(e instanceof ExpressionParallel.Variable)
+			{
+				h = 31 * h + ((ExpressionParallel.Variable) e).name.hashCode();
+			}
+			for(ExpressionParallel a : e.expr)
+			{
+				h = 31 * h + System.identityHashCode(a);
+			}
+			hash = h;
 		}
-		else if(e.howManyArguments() == -1)
+
+		/**
+		 * Checks if another shape is identical to this one.
+		 * 
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object o)
 		{
-			int numExpressions = RANDOM.nextInt(3) + 2;// the plus 2 here is mandatory for it to work, the maximum value can be whatever you want
-			for(int i = 0; i < numExpressions; i++)
+			if(!(o instanceof Shape))
+			{
+				return false;
+			}
+			ExpressionParallel other = ((Shape) o).e;
+			if(e.getClass() != other.getClass() || e.expr.size() != other.expr.size())
+			{
+				return false;
+			}
+			if(e instanceof ExpressionParallel.Variable && !((ExpressionParallel.Variable) e).name.equals(((ExpressionParallel.Variable) other).name))
+			{
+				return false;
+			}
+			for(int i = 0; i < e.expr.size(); i++)
 			{
-				e.addArgument(createExpression(depth));
+				if(e.expr.get(i) != other.expr.get(i))
+				{
+					return false;
+				}
 			}
+			return true;
 		}
 
-		return e;
+		/**
+		 * Gets the hash code of this shape.
+		 * 
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
 	}
 
 	/**
@@ -215,17 +714,327 @@ public class ExpressionGeneratorParallel
 	 */
 	public double evaluateExpression(double setX, double setY)
 	{
-		return root.evaluate(setX, setY);
+		return evaluator.evaluate(setX, setY);
+	}
+
+	/**
+	 * Evaluates the root for a whole row of pixels at once.
+	 * 
+	 * @param setY
+	 *             A value between [-1.0, 1.0] that represents the row's y-position.
+	 * @param startX
+	 *             The x-position of the first pixel in the row.
+	 * @param stepX
+	 *             The distance between the x-positions of neighboring pixels.
+	 * @param out
+	 *             An array that receives a double between [-1.0, 1.0] for every pixel in the row.
+	 */
+	public void evaluateRow(double setY, double startX, double stepX, double[] out)
+	{
+		evaluator.evaluateRow(setY, startX, stepX, out);
+	}
+
+	/**
+	 * Works out bounds on what the root evaluates to for every pixel in a rectangle. They hold whichever evaluator is used, since they all give exactly the same results - except for
+	 * <code>EvaluatorType.FLOAT</code>, which can be a little outside of them.
+	 * 
+	 * @param xLow
+	 *             The lowest x-position in the rectangle.
+	 * @param xHigh
+	 *             The highest x-position in the rectangle.
+	 * @param yLow
+	 *             The lowest y-position in the rectangle.
+	 * @param yHigh
+	 *             The highest y-position in the rectangle.
+	 * @param bounds
+	 *             Receives the lowest value in position 0 and the highest in position 1.
+	 */
+	public void evaluateInterval(double xLow, double xHigh, double yLow, double yHigh, double[] bounds)
+	{
+		if(store != null)
+		{
+			store.evaluateInterval(xLow, xHigh, yLow, yHigh, bounds);
+		}
+		else
+		{
+			root.evaluateInterval(xLow, xHigh, yLow, yHigh, bounds);
+		}
+	}
+
+	/**
+	 * Changes how the root is evaluated. This should be done before any evaluation starts, since setting up an evaluator may take some time.
+	 * 
+	 * @param type
+	 *             The <code>EvaluatorType</code> that is to be used from now on. If the root contains expressions that it does not know of, the root itself is used instead. It is
+	 *             ignored if the expression is kept in arrays.
+	 */
+	public void setEvaluator(EvaluatorType type)
+	{
+		channels = null;
+		if(store != null)
+		{
+			return;
+		}
+
+		try
+		{
+			evaluator = type.create(root);
+		}
+		catch(IllegalArgumentException ee)
+		{
+			evaluator = root;
+		}
+	}
+
+	/**
+	 * Changes how the roots of every channel of a picture are evaluated. If they are evaluated as postfix programs, and there are several channels that are all kept as trees, they are
+	 * also compiled into a single program, which <code>evaluateRows</code> uses to work out every channel in one pass over each row - and in which subexpressions that are identical,
+	 * even in different channels, are only worked out once.
+	 * 
+	 * @param generators
+	 *             The <code>ExpressionGeneratorParallel</code>s for each channel of the picture, in order.
+	 * @param type
+	 *             The <code>EvaluatorType</code> that is to be used from now on.
+	 */
+	public static void setEvaluator(ExpressionGeneratorParallel[] generators, EvaluatorType type)
+	{
+		ExpressionParallel[] roots = new ExpressionParallel[generators.length];
+		boolean trees = true;
+		for(int k = 0; k < generators.length; k++)
+		{
+			generators[k].setEvaluator(type);
+			roots[k] = generators[k].root;
+			trees &= roots[k] != null;
+		}
+		if(type != EvaluatorType.POSTFIX || generators.length < 2 || !trees)
+		{
+			return;
+		}
+
+		PostfixEvaluatorParallel program;
+		try
+		{
+			program = new PostfixEvaluatorParallel(roots);
+		}
+		catch(IllegalArgumentException ee)
+		{
+			return;// each channel is evaluated on its own, as it would have been anyway
+		}
+		for(int k = 0; k < generators.length; k++)
+		{
+			generators[k].channels = program;
+			generators[k].channel = k;
+		}
+	}
+
+	/**
+	 * Evaluates the roots of every channel of a picture for a whole row of pixels - all at once, if they were compiled together by <code>setEvaluator</code>, or one after another
+	 * otherwise. The results are exactly the same either way.
+	 * 
+	 * @param generators
+	 *             The <code>ExpressionGeneratorParallel</code>s for each channel of the picture, in order.
+	 * @param setY
+	 *             A value between [-1.0, 1.0] that represents the row's y-position.
+	 * @param startX
+	 *             The x-position of the first pixel in the row.
+	 * @param stepX
+	 *             The distance between the x-positions of neighboring pixels.
+	 * @param out
+	 *             An array with a row for each channel, all of the same length, each of which receives a double between [-1.0, 1.0] for every pixel in the row.
+	 */
+	public static void evaluateRows(ExpressionGeneratorParallel[] generators, double setY, double startX, double stepX, double[][] out)
+	{
+		PostfixEvaluatorParallel program = generators[0].channels;
+		boolean together = program != null && program.getResults() == generators.length;
+		for(int k = 0; together && k < generators.length; k++)
+		{
+			together = generators[k].channels == program && generators[k].channel == k;
+		}
+
+		if(together)
+		{
+			program.evaluateRows(setY, startX, stepX, out);
+		}
+		else
+		{
+			for(int k = 0; k < generators.length; k++)
+			{
+				generators[k].evaluateRow(setY, startX, stepX, out[k]);
+			}
+		}
+	}
+
+	/**
+	 * Gets the root, for the classes that read and write whole expressions.
+	 * 
+	 * @return The root, or null if the expression is kept in arrays.
+	 */
+	ExpressionParallel getRoot()
+	{
+		return root;
+	}
+
+	/**
+	 * Gets the arrays that the expression is kept in, for the classes that read and write whole expressions.
+	 * 
+	 * @return The arrays, or null if the expression is kept as a tree.
+	 */
+	ExpressionStoreParallel getStore()
+	{
+		return store;
+	}
+
+	/**
+	 * Counts the expressions that make up the root, as it is written out - an expression that is shared by several others is counted once for each of them. This is the number of
+	 * expressions that the tree works out for every pixel.
+	 * 
+	 * @return A long that is at least 1.
+	 */
+	public long getNodeCount()
+	{
+		if(store != null)
+		{
+			return store.size();
+		}
+		return countNodes(root, new IdentityHashMap<ExpressionParallel, Long>());
+	}
+
+	/**
+	 * Counts the expressions that make up an expression, remembering the counts of the ones that have been seen before so that shared expressions are not gone through repeatedly.
+	 * 
+	 * @param e
+	 *             The expression.
+	 * @param known
+	 *             The counts of the expressions that have been seen before.
+	 * @return A long that is at least 1.
+	 */
+	private static long countNodes(ExpressionParallel e, IdentityHashMap<ExpressionParallel, Long> known)
+	{
+		Long k = known.get(e);
+		if(k != null)
+		{
+			return k;
+		}
+
+		long count = 1;
+		for(ExpressionParallel a : e.expr)
+		{
+			count += countNodes(a, known);
+		}
+		known.put(e, count);
+		return count;
+	}
+
+	/**
+	 * Finds how deep the root actually goes, which can be less than the depth that it was generated with, since a variable can show up anywhere.
+	 * 
+	 * @return An integer that is 1 for a lone variable.
+	 */
+	public int getDepth()
+	{
+		if(store != null)
+		{
+			return store.getDepth();
+		}
+		return depth(root, new IdentityHashMap<ExpressionParallel, Integer>());
+	}
+
+	/**
+	 * Finds how deep an expression goes, remembering the depths of the ones that have been seen before.
+	 * 
+	 * @param e
+	 *             The expression.
+	 * @param known
+	 *             The depths of the expressions that have been seen before.
+	 * @return An integer that is at least 1.
+	 */
+	private static int depth(ExpressionParallel e, IdentityHashMap<ExpressionParallel, Integer> known)
+	{
+		Integer k = known.get(e);
+		if(k != null)
+		{
+			return k;
+		}
+
+		int d = 0;
+		for(ExpressionParallel a : e.expr)
+		{
+			d = Math.max(d, depth(a, known));
+		}
+		known.put(e, d + 1);
+		return d + 1;
+	}
+
+	/**
+	 * Works out how many characters <code>toString</code> would give without writing any of them out. With shared subexpressions, the text can be far longer than the number of
+	 * expressions, so this is the way to find out how large it is before writing it.
+	 * 
+	 * @return A long that is the length of the representation of the root.
+	 */
+	public long getTextLength()
+	{
+		if(store != null)
+		{
+			return store.getTextLength();
+		}
+		return textLength(root, new IdentityHashMap<ExpressionParallel, Long>());
+	}
+
+	/**
+	 * Works out the length of the representation of an expression, remembering the lengths of the ones that have been seen before.
+	 * 
+	 * @param e
+	 *             The expression.
+	 * @param known
+	 *             The lengths of the expressions that have been seen before.
+	 * @return A long that is at least 1.
+	 */
+	private static long textLength(ExpressionParallel e, IdentityHashMap<ExpressionParallel, Long> known)
+	{
+		Long k = known.get(e);
+		if(k != null)
+		{
+			return k;
+		}
+
+		long length = e.getSeparator(0).length();
+		for(int a = 0; a < e.expr.size(); a++)
+		{
+			length += textLength(e.expr.get(a), known) + e.getSeparator(a + 1).length();
+		}
+		known.put(e, length);
+		return length;
 	}
 
 	/**
 	 * A representation of the root that is mathematically correct - i.e. using parenthesis to denote precedence and order of operation use and to denote the location of arguments for
-	 * functions.
+	 * functions. Large expressions are better written with <code>appendTo</code>.
 	 * 
 	 * @return A string that represents the root.
 	 */
 	public String toString()
 	{
-		return root.toString();
+		return (store != null) ? store.toString() : root.toString();
+	}
+
+	/**
+	 * Writes out the same representation as <code>toString</code> in a single pass, a piece at a time, so that an expression whose text is too large to keep in memory can still be
+	 * saved.
+	 * 
+	 * @param out
+	 *             Where the representation is written.
+	 * @throws IOException
+	 *              If it could not be written.
+	 */
+	public void appendTo(Appendable out) throws IOException
+	{
+		if(store != null)
+		{
+			store.appendTo(out);
+		}
+		else
+		{
+			root.appendTo(out);
+		}
 	}
 }
@@ -4,16 +4,20 @@
 
 package randomartassignment.expression;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * <code>ExpressionParallel</code> represents a mathematical "expression," by which is meant either a representation of a variable, a mathematical operator, or a mathematical function (such
  * as those of trigonometry). It has been designed to work in a parallel fashion. Subclass this class in order to define more specific types of each.
  * 
+ * A tree of <code>ExpressionParallel</code> objects is the simplest <code>EvaluatorParallel</code>: it is evaluated by calling down through each of its subexpressions.
+ * 
  * @author Amndeep Singh Mann
  * @version 1.1 24 July 2012
  */
-public abstract class ExpressionParallel
+public abstract class ExpressionParallel implements EvaluatorParallel
 {
 	/**
 	 * Keeps track of all of the arguments, otherwise referred to as subexpressions, for this expression.
@@ -73,9 +77,66 @@ public abstract class ExpressionParallel
 	 * @param y
 	 *             A value between [-1.0, 1.0] that represents a pixel's y-position.
 	 * @return A double between [-1.0, 1.0].
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluate(double, double)
 	 */
 	public abstract double evaluate(double x, double y);
 
+	/**
+	 * The solutions to this expression for a whole row of pixels, worked out one expression at a time for the whole row (rather than one pixel at a time for the whole expression) using
+	 * temporary rows that belong to the calling thread.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluateRow(double, double, double, double[])
+	 */
+	public void evaluateRow(double y, double x0, double dx, double[] out)
+	{
+		evaluateRow(y, x0, dx, out, out.length, ROW_BUFFERS.get(), 0);
+	}
+
+	/**
+	 * The solutions to this expression for the first <code>length</code> pixels of a row. By default, this evaluates each pixel on its own - subclasses should override it so that it works
+	 * on the whole row at once, using a single temporary row from <code>buffers</code> at <code>level</code> and leaving the levels after it to their subexpressions.
+	 * 
+	 * @param y
+	 *             A value between [-1.0, 1.0] that represents the row's y-position.
+	 * @param x0
+	 *             The x-position of the first pixel in the row.
+	 * @param dx
+	 *             The distance between the x-positions of neighboring pixels.
+	 * @param out
+	 *             An array that receives the solution for every pixel in the row.
+	 * @param length
+	 *             The number of pixels in the row.
+	 * @param buffers
+	 *             Temporary rows that belong to the calling thread.
+	 * @param level
+	 *             The first level of <code>buffers</code> that this expression may use.
+	 */
+	protected void evaluateRow(double y, double x0, double dx, double[] out, int length, RowBuffers buffers, int level)
+	{
+		for(int i = 0; i < length; i++)
+		{
+			out[i] = evaluate(i * dx + x0, y);
+		}
+	}
+
+	/**
+	 * Bounds on the solutions to this expression for every pixel in a rectangle. They hold for what <code>evaluate</code> actually gives, rounding and all, since rounding never turns a
+	 * larger exact result into a smaller one - only sin and cos need to be widened, by as much as <code>TrigonometryParallel</code> can be off.
+	 * 
+	 * @param xLow
+	 *             The lowest x-position in the rectangle.
+	 * @param xHigh
+	 *             The highest x-position in the rectangle.
+	 * @param yLow
+	 *             The lowest y-position in the rectangle.
+	 * @param yHigh
+	 *             The highest y-position in the rectangle.
+	 * @param bounds
+	 *             Receives the lowest solution in position 0 and the highest in position 1.
+	 */
+	public abstract void evaluateInterval(double xLow, double xHigh, double yLow, double yHigh, double[] bounds);
+
 	/**
 	 * Gets a value that help determines the number of arguments it needs when creating subexpressions for this expression.
 	 * 
@@ -83,13 +144,136 @@ public abstract class ExpressionParallel
 	 */
 	public abstract int howManyArguments();
 
+	/**
+	 * Gets the text that a representation of this expression has around its subexpressions.
+	 * 
+	 * @param argument
+	 *             Which subexpression the text comes before, or the number of subexpressions for the text that comes after the last one.
+	 * @return A string, which may be empty.
+	 */
+	protected abstract String getSeparator(int argument);
+
 	/**
 	 * A representation of this expression that is mathematically correct - i.e. using parenthesis to denote precedence and order of operation use and to denote the location of arguments
-	 * for functions.
+	 * for functions. Large expressions are better written with <code>appendTo</code>, which does not need to keep all of the text in memory at once.
 	 * 
 	 * @return A string that represents this expression.
 	 */
-	public abstract String toString();
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder();
+		try
+		{
+			appendTo(s);
+		}
+		catch(IOException ee)
+		{
+			throw new IllegalStateException("A StringBuilder cannot fail to be written to.", ee);
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Writes out the same representation as <code>toString</code>, a piece at a time, without making any strings along the way. It goes through the expression in a single pass,
+	 * keeping track of which subexpression each unfinished expression is up to on a stack, so it takes time in proportion to the length of the text no matter how deep the expression is.
+	 * 
+	 * @param out
+	 *             Where the representation is written.
+	 * @throws IOException
+	 *              If it could not be written.
+	 */
+	public void appendTo(Appendable out) throws IOException
+	{
+		ExpressionParallel[] expressions = new ExpressionParallel[16];
+		int[] next = new int[16];
+		int top = 0;
+
+		expressions[0] = this;
+		next[0] = 0;
+		out.append(getSeparator(0));
+		top++;
+		while(top > 0)
+		{
+			ExpressionParallel e = expressions[top - 1];
+			int argument = next[top - 1];
+			if(argument < e.expr.size())
+			{
+				if(argument > 0)
+				{
+					out.append(e.getSeparator(argument));
+				}
+				next[top - 1]++;
+				if(top == expressions.length)
+				{
+					expressions = Arrays.copyOf(expressions, 2 * top);
+					next = Arrays.copyOf(next, 2 * top);
+				}
+				ExpressionParallel a = e.expr.get(argument);
+				expressions[top] = a;
+				next[top] = 0;
+				top++;
+				out.append(a.getSeparator(0));
+			}
+			else
+			{
+				if(argument > 0)
+				{
+					out.append(e.getSeparator(argument));
+				}
+				top--;
+			}
+		}
+	}
+
+	/**
+	 * The temporary rows for each thread that evaluates rows of pixels.
+	 */
+	private static final ThreadLocal<RowBuffers> ROW_BUFFERS = new ThreadLocal<RowBuffers>()
+		{
+			@Override
+			protected RowBuffers initialValue()
+			{
+				return new RowBuffers();
+			}
+		};
+
+	/**
+	 * RowBuffers holds the temporary rows that expressions need while evaluating a row of pixels - one for each level of the tree that needs one. It is not meant to be shared between
+	 * threads.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	protected static final class RowBuffers
+	{
+		/**
+		 * The temporary rows, by level.
+		 */
+		private double[][] rows = new double[16][];
+
+		/**
+		 * Gets the temporary row for a level, making it if it does not exist or is too short.
+		 * 
+		 * @param level
+		 *             The level of the row.
+		 * @param length
+		 *             The least length that the row must have.
+		 * @return An array that is at least <code>length</code> long.
+		 */
+		public double[] get(int level, int length)
+		{
+			if(level >= rows.length)
+			{
+				rows = Arrays.copyOf(rows, Math.max(level + 1, rows.length * 2));
+			}
+			if(rows[level] == null || rows[level].length < length)
+			{
+				rows[level] = new double[length];
+			}
+			return rows[level];
+		}
+	}
 
 	/**
 	 * Variable represents a mathematical variable - to be replaced with actual values when evaluated as part of a larger expression. It has been designed to work in a parallel fashion.
@@ -127,6 +311,39 @@ public abstract class ExpressionParallel
 			return (name.equals("X")) ? x : y;
 		}
 
+		/**
+		 * The solutions to this expression for a row of pixels. In this case, either the x-position of each pixel or the y-position of the row.
+		 * 
+		 * @see randomartassignment.expression.ExpressionParallel#evaluateRow(double, double, double, double[], int, RowBuffers, int)
+		 */
+		@Override
+		protected void evaluateRow(double y, double x0, double dx, double[] out, int length, RowBuffers buffers, int level)
+		{
+			if(name.equals("X"))
+			{
+				for(int i = 0; i < length; i++)
+				{
+					out[i] = i * dx + x0;
+				}
+			}
+			else
+			{
+				Arrays.fill(out, 0, length, y);
+			}
+		}
+
+		/**
+		 * Bounds on the solutions to this expression for a rectangle of pixels. In this case, the range of either the x-positions or the y-positions.
+		 * 
+		 * @see randomartassignment.expression.ExpressionParallel#evaluateInterval(double, double, double, double, double[])
+		 */
+		@Override
+		public void evaluateInterval(double xLow, double xHigh, double yLow, double yHigh, double[] bounds)
+		{
+			bounds[0] = (name.equals("X")) ? xLow : yLow;
+			bounds[1] = (name.equals("X")) ? xHigh : yHigh;
+		}
+
 		/**
 		 * Gets a value that help determines the number of arguments it needs when creating subexpressions for this expression.
 		 * 
@@ -141,12 +358,12 @@ public abstract class ExpressionParallel
 		}
 
 		/**
-		 * A representation of this expression, it is either "X" or "Y".
+		 * The text of this expression, it is either "X" or "Y".
 		 * 
-		 * @see randomartassignment.expression.ExpressionParallel#toString()
+		 * @see randomartassignment.expression.ExpressionParallel#getSeparator(int)
 		 */
 		@Override
-		public String toString()
+		protected String getSeparator(int argument)
 		{
 			return name;
 		}
@@ -196,6 +413,47 @@ public abstract class ExpressionParallel
 			return product;
 		}
 
+		/**
+		 * The solutions to this expression for a row of pixels. In this case, the rows of all of its subexpressions multiplied together, pixel by pixel.
+		 * 
+		 * @see randomartassignment.expression.ExpressionParallel#evaluateRow(double, double, double, double[], int, RowBuffers, int)
+		 */
+		@Override
+		protected void evaluateRow(double y, double x0, double dx, double[] out, int length, RowBuffers buffers, int level)
+		{
+			double[] row = buffers.get(level, length);
+			Arrays.fill(out, 0, length, 1);
+			for(ExpressionParallel e : expr)
+			{
+				e.evaluateRow(y, x0, dx, row, length, buffers, level + 1);
+				for(int i = 0; i < length; i++)
+				{
+					out[i] *= row[i];
+				}
+			}
+		}
+
+		/**
+		 * Bounds on the solutions to this expression for a rectangle of pixels. In this case, the products are bounded by the lowest and highest products of the bounds of the one before
+		 * and the bounds of the next subexpression, one subexpression at a time.
+		 * 
+		 * @see randomartassignment.expression.ExpressionParallel#evaluateInterval(double, double, double, double, double[])
+		 */
+		@Override
+		public void evaluateInterval(double xLow, double xHigh, double yLow, double yHigh, double[] bounds)
+		{
+			double low = 1, high = 1;
+			for(ExpressionParallel e : expr)
+			{
+				e.evaluateInterval(xLow, xHigh, yLow, yHigh, bounds);
+				double a = low * bounds[0], b = low * bounds[1], c = high * bounds[0], d = high * bounds[1];
+				low = Math.min(Math.min(a, b), Math.min(c, d));
+				high = Math.max(Math.max(a, b), Math.max(c, d));
+			}
+			bounds[0] = low;
+			bounds[1] = high;
+		}
+
 		/**
 		 * Gets a value that help determines the number of arguments it needs when creating subexpressions for this expression.
 		 * 
@@ -210,20 +468,14 @@ public abstract class ExpressionParallel
 		}
 
 		/**
-		 * A representation of this expression that consists each subexpression separated with spaces and "*".
+		 * The text around the subexpressions of this expression, which are separated with spaces and "*".
 		 * 
-		 * @see randomartassignment.expression.ExpressionParallel#toString()
+		 * @see randomartassignment.expression.ExpressionParallel#getSeparator(int)
 		 */
 		@Override
-		public String toString()
+		protected String getSeparator(int argument)
 		{
-			String ret = "";
-			for(ExpressionParallel e : expr)
-			{
-				ret += e.toString() + " * ";
-			}
-			ret = ret.substring(0, ret.length() - 3);
-			return ret;
+			return (argument == 0 || argument == expr.size()) ? "" : " * ";
 		}
 	}
 
@@ -272,6 +524,54 @@ public abstract class ExpressionParallel
 			return total;
 		}
 
+		/**
+		 * The solutions to this expression for a row of pixels. In this case, the rows of all of its subexpressions are added together, pixel by pixel, and then divided by the total
+		 * number of arguments.
+		 * 
+		 * @see randomartassignment.expression.ExpressionParallel#evaluateRow(double, double, double, double[], int, RowBuffers, int)
+		 */
+		@Override
+		protected void evaluateRow(double y, double x0, double dx, double[] out, int length, RowBuffers buffers, int level)
+		{
+			double[] row = buffers.get(level, length);
+			Arrays.fill(out, 0, length, 0);
+			for(ExpressionParallel e : expr)
+			{
+				e.evaluateRow(y, x0, dx, row, length, buffers, level + 1);
+				for(int i = 0; i < length; i++)
+				{
+					out[i] += row[i];
+				}
+			}
+			int size = expr.size();
+			for(int i = 0; i < length; i++)
+			{
+				out[i] /= size;
+			}
+		}
+
+		/**
+		 * Bounds on the solutions to this expression for a rectangle of pixels. In this case, the lowest bounds of all of its subexpressions are added together, as are the highest, and
+		 * both sums are then divided by the total number of arguments.
+		 * 
+		 * @see randomartassignment.expression.ExpressionParallel#evaluateInterval(double, double, double, double, double[])
+		 */
+		@Override
+		public void evaluateInterval(double xLow, double xHigh, double yLow, double yHigh, double[] bounds)
+		{
+			double low = 0, high = 0;
+			for(ExpressionParallel e : expr)
+			{
+				e.evaluateInterval(xLow, xHigh, yLow, yHigh, bounds);
+				low += bounds[0];
+				high += bounds[1];
+			}
+			low /= expr.size();
+			high /= expr.size();
+			bounds[0] = low;
+			bounds[1] = high;
+		}
+
 		/**
 		 * Gets a value that help determines the number of arguments it needs when creating subexpressions for this expression.
 		 * 
@@ -286,20 +586,15 @@ public abstract class ExpressionParallel
 		}
 
 		/**
-		 * A representation of this expression that consists of the function name and then with each subexpression within a set of parenthesis, separated with commas and spaces.
+		 * The text around the subexpressions of this expression, which consists of the function name and then each subexpression within a set of parenthesis, separated with commas and
+		 * spaces.
 		 * 
-		 * @see randomartassignment.expression.ExpressionParallel#toString()
+		 * @see randomartassignment.expression.ExpressionParallel#getSeparator(int)
 		 */
 		@Override
-		public String toString()
+		protected String getSeparator(int argument)
 		{
-			String ret = "avg(";
-			for(ExpressionParallel e : expr)
-			{
-				ret += e.toString() + ", ";
-			}
-			ret = ret.substring(0, ret.length() - 2) + ")";
-			return ret;
+			return (argument == 0) ? "avg(" : (argument == expr.size()) ? ")" : ", ";
 		}
 	}
 
@@ -338,7 +633,31 @@ public abstract class ExpressionParallel
 		@Override
 		public double evaluate(double x, double y)
 		{
-			return Math.sin(Math.PI * expr.get(0).evaluate(x, y));
+			return TrigonometryParallel.sinPi(expr.get(0).evaluate(x, y));
+		}
+
+		/**
+		 * The solutions to this expression for a row of pixels. In this case, the sin of pi times each value of its argument's row.
+		 * 
+		 * @see randomartassignment.expression.ExpressionParallel#evaluateRow(double, double, double, double[], int, RowBuffers, int)
+		 */
+		@Override
+		protected void evaluateRow(double y, double x0, double dx, double[] out, int length, RowBuffers buffers, int level)
+		{
+			expr.get(0).evaluateRow(y, x0, dx, out, length, buffers, level);
+			TrigonometryParallel.sinPi(out, length);
+		}
+
+		/**
+		 * Bounds on the solutions to this expression for a rectangle of pixels. In this case, the bounds of the sin of pi times any value between the bounds of its argument.
+		 * 
+		 * @see randomartassignment.expression.ExpressionParallel#evaluateInterval(double, double, double, double, double[])
+		 */
+		@Override
+		public void evaluateInterval(double xLow, double xHigh, double yLow, double yHigh, double[] bounds)
+		{
+			expr.get(0).evaluateInterval(xLow, xHigh, yLow, yHigh, bounds);
+			TrigonometryParallel.sinPi(bounds[0], bounds[1], bounds);
 		}
 
 		/**
@@ -355,14 +674,14 @@ public abstract class ExpressionParallel
 		}
 
 		/**
-		 * A representation of this expression that consists of the function name, proper use of parenthesis, and the reminder that pi is also being used here.
+		 * The text around the subexpression of this expression, which consists of the function name, proper use of parenthesis, and the reminder that pi is also being used here.
 		 * 
-		 * @see randomartassignment.expression.ExpressionParallel#toString()
+		 * @see randomartassignment.expression.ExpressionParallel#getSeparator(int)
 		 */
 		@Override
-		public String toString()
+		protected String getSeparator(int argument)
 		{
-			return "sin(pi * " + expr.get(0).toString() + ")";
+			return (argument == 0) ? "sin(pi * " : ")";
 		}
 	}
 
@@ -401,7 +720,31 @@ public abstract class ExpressionParallel
 		@Override
 		public double evaluate(double x, double y)
 		{
-			return Math.cos(Math.PI * expr.get(0).evaluate(x, y));
+			return TrigonometryParallel.cosPi(expr.get(0).evaluate(x, y));
+		}
+
+		/**
+		 * The solutions to this expression for a row of pixels. In this case, the cos of pi times each value of its argument's row.
+		 * 
+		 * @see randomartassignment.expression.ExpressionParallel#evaluateRow(double, double, double, double[], int, RowBuffers, int)
+		 */
+		@Override
+		protected void evaluateRow(double y, double x0, double dx, double[] out, int length, RowBuffers buffers, int level)
+		{
+			expr.get(0).evaluateRow(y, x0, dx, out, length, buffers, level);
+			TrigonometryParallel.cosPi(out, length);
+		}
+
+		/**
+		 * Bounds on the solutions to this expression for a rectangle of pixels. In this case, the bounds of the cos of pi times any value between the bounds of its argument.
+		 * 
+		 * @see randomartassignment.expression.ExpressionParallel#evaluateInterval(double, double, double, double, double[])
+		 */
+		@Override
+		public void evaluateInterval(double xLow, double xHigh, double yLow, double yHigh, double[] bounds)
+		{
+			expr.get(0).evaluateInterval(xLow, xHigh, yLow, yHigh, bounds);
+			TrigonometryParallel.cosPi(bounds[0], bounds[1], bounds);
 		}
 
 		/**
@@ -418,14 +761,14 @@ public abstract class ExpressionParallel
 		}
 
 		/**
-		 * A representation of this expression that consists of the function name, proper use of parenthesis, and the reminder that pi is also being used here.
+		 * The text around the subexpression of this expression, which consists of the function name, proper use of parenthesis, and the reminder that pi is also being used here.
 		 * 
-		 * @see randomartassignment.expression.ExpressionParallel#toString()
+		 * @see randomartassignment.expression.ExpressionParallel#getSeparator(int)
 		 */
 		@Override
-		public String toString()
+		protected String getSeparator(int argument)
 		{
-			return "cos(pi * " + expr.get(0).toString() + ")";
+			return (argument == 0) ? "cos(pi * " : ")";
 		}
 	}
 }
@@ -0,0 +1,484 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.Arrays;
+
+import randomartassignment.expression.ExpressionGeneratorParallel.StorageType;
+
+/**
+ * ExpressionParserParallel reads back the expressions that <code>toString</code> writes out, such as "sin(pi * avg(X, Y * X))", which is what every picture keeps of its equations. It
+ * reads a character at a time, without any recursion, and works out each expression as soon as its last argument has been read, so it takes time in proportion to the length of the
+ * text no matter how deep the expression is. Since "X * Y * X" is written the same whether or not one of its products is inside the other, a run of products is always read back as a
+ * single product of all of them (or, for a run of more than 15, a product of the first 15 and the rest, so that it can be kept in arrays) - either way, its <code>toString</code> is exactly
+ * the text that was read, but where the original had products inside of products its value can differ in the last few bits, since they are multiplied in a different order. The
+ * binary form of <code>ExpressionCodecParallel</code> keeps such expressions exactly. It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public final class ExpressionParserParallel
+{
+	/**
+	 * What an expression is inside of.
+	 */
+	private static final int TOP = 0, IN_AVERAGE = 1, IN_SIN = 2, IN_COS = 3;
+
+	/**
+	 * Where the text comes from.
+	 */
+	private final Reader in;
+
+	/**
+	 * The number of characters that have been read.
+	 */
+	private int offset;
+
+	/**
+	 * A character that was read but not used yet, or -2 if there is none.
+	 */
+	private int pending = -2;
+
+	/**
+	 * The expressions that have been read, each one after its arguments, as in <code>ExpressionStoreParallel</code>.
+	 */
+	private int[] codes = new int[1024];
+
+	/**
+	 * The number of expressions that have been read.
+	 */
+	private int n;
+
+	/**
+	 * A constructor.
+	 * 
+	 * @param r
+	 *             Where the text comes from.
+	 */
+	private ExpressionParserParallel(Reader r)
+	{
+		in = r;
+	}
+
+	/**
+	 * Reads an expression.
+	 * 
+	 * @param text
+	 *             The text of the expression.
+	 * @return The expression, as a tree.
+	 * @throws ParseException
+	 *              If the text is not an expression.
+	 */
+	public static ExpressionParallel parse(String text) throws ParseException
+	{
+		try
+		{
+			ExpressionParserParallel p = new ExpressionParserParallel(new StringReader(text));
+			if(!p.read())
+			{
+				throw new ParseException("There is no expression.", 0);
+			}
+			return p.toTree();
+		}
+		catch(IOException ee)
+		{
+			throw new IllegalStateException("A string cannot fail to be read.", ee);
+		}
+	}
+
+	/**
+	 * Reads the next expression from a stream, which ends at the end of its line. Several expressions can be read from the same stream, one line after another.
+	 * 
+	 * @param in
+	 *             Where the text comes from. Only the characters up to and including the end of the line are read.
+	 * @param storage
+	 *             How the expression is kept in memory - keeping it in arrays takes a fraction of the memory for large expressions.
+	 * @return The expression, or null if the stream was already at its end.
+	 * @throws IOException
+	 *              If the stream could not be read.
+	 * @throws ParseException
+	 *              If the line is not an expression.
+	 * @throws IllegalArgumentException
+	 *              If the expression is to be kept in arrays but one of its parts has more arguments than arrays allow.
+	 */
+	public static ExpressionGeneratorParallel parse(Reader in, StorageType storage) throws IOException, ParseException
+	{
+		ExpressionParserParallel p = new ExpressionParserParallel(in);
+		if(!p.read())
+		{
+			return null;
+		}
+		return (storage == StorageType.OBJECTS) ? new ExpressionGeneratorParallel(p.toTree()) : new ExpressionGeneratorParallel(p.toStore(storage == StorageType.OFFHEAP));
+	}
+
+	/**
+	 * Reads a character.
+	 * 
+	 * @return The character, or -1 at the end of the stream.
+	 * @throws IOException
+	 *              If the stream could not be read.
+	 */
+	private int next() throws IOException
+	{
+		if(pending != -2)
+		{
+			int c = pending;
+			pending = -2;
+			return c;
+		}
+		offset++;
+		return in.read();
+	}
+
+	/**
+	 * Reads the next character that is not a space or a tab.
+	 * 
+	 * @return The character, or -1 at the end of the stream.
+	 * @throws IOException
+	 *              If the stream could not be read.
+	 */
+	private int nextToken() throws IOException
+	{
+		int c = next();
+		while(c == ' ' || c == '\t' || c == '\r')
+		{
+			c = next();
+		}
+		return c;
+	}
+
+	/**
+	 * Reads a name, such as "avg" or "X", starting with a character that has already been read.
+	 * 
+	 * @param first
+	 *             The first character of the name.
+	 * @return The name.
+	 * @throws IOException
+	 *              If the stream could not be read.
+	 */
+	private String name(int first) throws IOException
+	{
+		StringBuilder s = new StringBuilder();
+		int c = first;
+		while(Character.isLetter(c))
+		{
+			s.append((char) c);
+			c = next();
+		}
+		pending = c;
+		return s.toString();
+	}
+
+	/**
+	 * Reads the character that has to come next.
+	 * 
+	 * @param expected
+	 *             The character.
+	 * @throws IOException
+	 *              If the stream could not be read.
+	 * @throws ParseException
+	 *              If it was some other character.
+	 */
+	private void expect(char expected) throws IOException, ParseException
+	{
+		int c = nextToken();
+		if(c != expected)
+		{
+			throw error("'" + expected + "'", c);
+		}
+	}
+
+	/**
+	 * Makes the exception for an unexpected character.
+	 * 
+	 * @param expected
+	 *             What should have been there.
+	 * @param c
+	 *             The character that was there instead, or -1 for the end of the line.
+	 * @return The exception.
+	 */
+	private ParseException error(String expected, int c)
+	{
+		return error(expected, c, offset - ((pending != -2) ? 2 : 1));
+	}
+
+	/**
+	 * Makes the exception for an unexpected character that was not the last one read.
+	 * 
+	 * @param expected
+	 *             What should have been there.
+	 * @param c
+	 *             The character that was there instead, or -1 for the end of the line.
+	 * @param at
+	 *             Where it is in the line, counting from 0.
+	 * @return The exception.
+	 */
+	private static ParseException error(String expected, int c, int at)
+	{
+		String found = (c == -1 || c == '\n') ? "the end of the line" : "'" + (char) c + "'";
+		return new ParseException("Expected " + expected + " but found " + found + " at character " + (at + 1) + ".", at);
+	}
+
+	/**
+	 * Adds an expression that has been read.
+	 * 
+	 * @param kind
+	 *             The kind of expression.
+	 * @param arguments
+	 *             The number of arguments it has, which come just before it.
+	 */
+	private void add(int kind, int arguments)
+	{
+		if(n == codes.length)
+		{
+			codes = Arrays.copyOf(codes, 2 * n);
+		}
+		codes[n++] = kind | arguments << ExpressionStoreParallel.ARGUMENTS;
+	}
+
+	/**
+	 * Reads an expression up to the end of its line, keeping track of what each unfinished expression is inside of, and how many arguments and products it has so far, on a stack.
+	 * 
+	 * @return True if an expression was read, false if the stream was already at its end.
+	 * @throws IOException
+	 *              If the stream could not be read.
+	 * @throws ParseException
+	 *              If the line is not an expression.
+	 */
+	private boolean read() throws IOException, ParseException
+	{
+		int[] inside = new int[16];
+		int[] arguments = new int[16];
+		int[] products = new int[16];
+		int top = 0;
+		inside[0] = TOP;
+
+		int c = nextToken();
+		if(c == -1)
+		{
+			return false;
+		}
+
+		while(true)
+		{
+			/* An expression that is an argument or a product. */
+			String word = name(c);
+			if(word.equalsIgnoreCase("X") || word.equalsIgnoreCase("Y"))
+			{
+				add((word.equalsIgnoreCase("X")) ? ExpressionStoreParallel.X : ExpressionStoreParallel.Y, 0);
+				products[top]++;
+			}
+			else if(word.equals("avg") || word.equals("sin") || word.equals("cos"))
+			{
+				expect('(');
+				if(!word.equals("avg"))
+				{
+					c = nextToken();
+					if(!"pi".equals(name(c)))
+					{
+						throw error("\"pi\"", c);
+					}
+					expect('*');
+				}
+
+				if(++top == inside.length)
+				{
+					inside = Arrays.copyOf(inside, 2 * top);
+					arguments = Arrays.copyOf(arguments, 2 * top);
+					products = Arrays.copyOf(products, 2 * top);
+				}
+				inside[top] = (word.equals("avg")) ? IN_AVERAGE : (word.equals("sin")) ? IN_SIN : IN_COS;
+				arguments[top] = 0;
+				products[top] = 0;
+				c = nextToken();
+				continue;
+			}
+			else
+			{
+				if(word.isEmpty())
+				{
+					throw error("X, Y, avg, sin, or cos", next());
+				}
+				throw error("X, Y, avg, sin, or cos", word.charAt(0), offset - 1 - word.length());
+			}
+
+			/* What comes after it finishes any number of expressions. */
+			while(true)
+			{
+				c = nextToken();
+				if(c == '*')
+				{
+					/* A long run of products is split into products of at most MAX_ARGUMENTS, each one being the first of the next - the result is multiplied out in the same order. */
+					if(products[top] == ExpressionStoreParallel.MAX_ARGUMENTS)
+					{
+						add(ExpressionStoreParallel.MULTIPLY, products[top]);
+						products[top] = 1;
+					}
+					break;
+				}
+
+				if(products[top] > 1)
+				{
+					add(ExpressionStoreParallel.MULTIPLY, products[top]);
+				}
+				products[top] = 0;
+				arguments[top]++;
+
+				if(c == ',' && inside[top] == IN_AVERAGE)
+				{
+					break;
+				}
+				else if(c == ')' && inside[top] != TOP && (inside[top] == IN_AVERAGE || arguments[top] == 1))
+				{
+					switch(inside[top])
+					{
+						case IN_AVERAGE:
+							add(ExpressionStoreParallel.AVERAGE, arguments[top]);
+							break;
+						case IN_SIN:
+							add(ExpressionStoreParallel.SIN, 1);
+							break;
+						default:
+							add(ExpressionStoreParallel.COS, 1);
+							break;
+					}
+					top--;
+					products[top]++;
+				}
+				else if((c == -1 || c == '\n') && inside[top] == TOP)
+				{
+					return true;
+				}
+				else
+				{
+					throw error((inside[top] == TOP) ? "'*' or the end of the line" : (inside[top] == IN_AVERAGE) ? "'*', ',', or ')'" : "'*' or ')'", c);
+				}
+			}
+			c = nextToken();
+		}
+	}
+
+	/**
+	 * Builds a tree out of the expressions that were read, each of which comes just after its arguments.
+	 * 
+	 * @return The root of the tree.
+	 */
+	private ExpressionParallel toTree()
+	{
+		ExpressionParallel[] stack = new ExpressionParallel[16];
+		int top = 0;
+		for(int i = 0; i < n; i++)
+		{
+			int count = codes[i] >>> ExpressionStoreParallel.ARGUMENTS;
+			ExpressionParallel e;
+			switch(codes[i] & 7)
+			{
+				case ExpressionStoreParallel.X:
+					e = new ExpressionParallel.Variable("X");
+					break;
+				case ExpressionStoreParallel.Y:
+					e = new ExpressionParallel.Variable("Y");
+					break;
+				case ExpressionStoreParallel.MULTIPLY:
+					e = new ExpressionParallel.Multiply();
+					break;
+				case ExpressionStoreParallel.AVERAGE:
+					e = new ExpressionParallel.Average();
+					break;
+				case ExpressionStoreParallel.SIN:
+					e = new ExpressionParallel.Sin();
+					break;
+				default:
+					e = new ExpressionParallel.Cos();
+					break;
+			}
+			for(int a = top - count; a < top; a++)
+			{
+				e.addArgument(stack[a]);
+			}
+			top -= count;
+
+			if(top == stack.length)
+			{
+				stack = Arrays.copyOf(stack, 2 * top);
+			}
+			stack[top++] = e;
+		}
+		return stack[0];
+	}
+
+	/**
+	 * Puts the expressions that were read into arrays, where each expression comes just before its arguments instead. Going backwards, each expression is reached before its arguments,
+	 * last one first, so each is placed just before the end of the space that is left for the arguments of the expression that it is part of.
+	 * 
+	 * @param offHeap
+	 *             True if the arrays should be kept outside of the Java heap.
+	 * @return The expression.
+	 * @throws IllegalArgumentException
+	 *              If one of the expressions has too many arguments to be kept in arrays.
+	 */
+	private ExpressionStoreParallel toStore(boolean offHeap)
+	{
+		/* The number of expressions that each expression is made of, including itself. */
+		int[] sizes = new int[n];
+		int[] stack = new int[16];
+		int top = 0;
+		for(int i = 0; i < n; i++)
+		{
+			int size = 1;
+			for(int a = codes[i] >>> ExpressionStoreParallel.ARGUMENTS; a > 0; a--)
+			{
+				size += stack[--top];
+			}
+			sizes[i] = size;
+			if(top == stack.length)
+			{
+				stack = Arrays.copyOf(stack, 2 * top);
+			}
+			stack[top++] = size;
+		}
+
+		byte[] prefix = new byte[n];
+		int[] ends = new int[16];
+		int[] left = new int[16];
+		top = 0;
+		for(int i = n - 1; i >= 0; i--)
+		{
+			int position = 0;
+			if(top > 0)
+			{
+				ends[top - 1] -= sizes[i];
+				position = ends[top - 1];
+				if(--left[top - 1] == 0)
+				{
+					top--;
+				}
+			}
+
+			int count = codes[i] >>> ExpressionStoreParallel.ARGUMENTS;
+			if(count > ExpressionStoreParallel.MAX_ARGUMENTS)
+			{
+				throw new IllegalArgumentException("An expression with " + count + " arguments cannot be kept in arrays.");
+			}
+			prefix[position] = (byte) codes[i];
+			if(count > 0)
+			{
+				if(top == ends.length)
+				{
+					ends = Arrays.copyOf(ends, 2 * top);
+					left = Arrays.copyOf(left, 2 * top);
+				}
+				ends[top] = position + sizes[i];
+				left[top] = count;
+				top++;
+			}
+		}
+		return new ExpressionStoreParallel(prefix, n, offHeap);
+	}
+}
@@ -0,0 +1,671 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ExpressionStoreParallel keeps a whole expression in two arrays instead of as a tree of objects: a byte for every expression, holding what kind of expression it is and how many
+ * arguments it has, and an integer for every expression, holding where the expressions that it is made of end. The expressions are in the order that <code>toString</code> writes them
+ * out, so an expression's first argument comes straight after it and each of the others straight after the end of the one before. That takes five bytes per expression, where an
+ * object takes dozens, so much deeper expressions fit in memory - and since the arrays can be kept outside of the Java heap, they do not need to fit in it. The expression is generated,
+ * evaluated, and written out without any recursion, so its depth is not limited by the size of the call stack either. It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public final class ExpressionStoreParallel implements EvaluatorParallel
+{
+	/**
+	 * The kinds of expressions - only the lowest three bits of each byte hold this, the rest hold the number of arguments.
+	 */
+	static final int X = 0, Y = 1, MULTIPLY = 2, AVERAGE = 3, SIN = 4, COS = 5;
+
+	/**
+	 * The number of bits that the number of arguments is shifted by.
+	 */
+	static final int ARGUMENTS = 3;
+
+	/**
+	 * The most arguments that an expression kept in arrays can have, so that its byte stays positive.
+	 */
+	static final int MAX_ARGUMENTS = 15;
+
+	/**
+	 * The kind of expression and number of arguments of every expression, or null if they are kept outside of the Java heap.
+	 */
+	private final byte[] codes;
+
+	/**
+	 * Where every expression ends, or null if they are kept outside of the Java heap.
+	 */
+	private final int[] ends;
+
+	/**
+	 * The kind of expression and number of arguments of every expression, if they are kept outside of the Java heap.
+	 */
+	private final ByteBuffer directCodes;
+
+	/**
+	 * Where every expression ends, if they are kept outside of the Java heap.
+	 */
+	private final IntBuffer directEnds;
+
+	/**
+	 * The number of expressions.
+	 */
+	private final int size;
+
+	/**
+	 * How deep the whole expression goes.
+	 */
+	private final int depth;
+
+	/**
+	 * The number of values that are ever waiting to be used at once while evaluating.
+	 */
+	private final int stackSize;
+
+	/**
+	 * The values that are waiting to be used, for each thread that evaluates single pixels.
+	 */
+	private final ThreadLocal<double[]> stacks = new ThreadLocal<double[]>()
+		{
+			protected double[] initialValue()
+			{
+				return new double[stackSize];
+			}
+		};
+
+	/**
+	 * The rows of values that are waiting to be used, for each thread that evaluates rows.
+	 */
+	private final ThreadLocal<double[][]> rowStacks = new ThreadLocal<double[][]>();
+
+	/**
+	 * A constructor that works out the rest of what is known about an expression from the kinds of its expressions and their numbers of arguments.
+	 * 
+	 * @param c
+	 *             The kind of expression and number of arguments of every expression, in order - at most <code>MAX_ARGUMENTS</code> each.
+	 * @param n
+	 *             The number of expressions.
+	 * @param offHeap
+	 *             True if the arrays should be kept outside of the Java heap.
+	 */
+	ExpressionStoreParallel(byte[] c, int n, boolean offHeap)
+	{
+		size = n;
+		c = Arrays.copyOf(c, n);
+		int[] e = new int[n];
+
+		/* Going backwards, the arguments of every expression have already been gone through, with the first one on top of the stack, which is just like evaluating. */
+		int[] endStack = new int[16];
+		int[] depthStack = new int[16];
+		int top = 0, most = 0;
+		for(int i = n - 1; i >= 0; i--)
+		{
+			int end = i + 1, d = 0;
+			for(int a = c[i] >>> ARGUMENTS; a > 0; a--)
+			{
+				top--;
+				end = endStack[top];
+				d = Math.max(d, depthStack[top]);
+			}
+			e[i] = end;
+
+			if(top == endStack.length)
+			{
+				endStack = Arrays.copyOf(endStack, 2 * top);
+				depthStack = Arrays.copyOf(depthStack, 2 * top);
+			}
+			endStack[top] = end;
+			depthStack[top] = d + 1;
+			top++;
+			most = Math.max(most, top);
+		}
+		depth = depthStack[0];
+		stackSize = most;
+
+		if(offHeap)
+		{
+			if(n > Integer.MAX_VALUE / 4)
+			{
+				throw new IllegalArgumentException("The expression has too many parts (" + n + ") to be kept outside of the Java heap.");
+			}
+			directCodes = ByteBuffer.allocateDirect(n);
+			directCodes.put(c).rewind();
+			directEnds = ByteBuffer.allocateDirect(4 * n).order(ByteOrder.nativeOrder()).asIntBuffer();
+			directEnds.put(e).rewind();
+			codes = null;
+			ends = null;
+		}
+		else
+		{
+			codes = c;
+			ends = e;
+			directCodes = null;
+			directEnds = null;
+		}
+	}
+
+	/**
+	 * Generates an expression from a seed, in exactly the same way as <code>ExpressionGeneratorParallel</code> does, so the same depth and seed give the same expression.
+	 * 
+	 * @param expressionDepth
+	 *             An integer that represents the maximum possible depth of the expression.
+	 * @param seed
+	 *             The seed.
+	 * @param offHeap
+	 *             True if the expression should be kept outside of the Java heap.
+	 * @return The expression.
+	 * @throws IllegalArgumentException
+	 *              If the expression turns out to have too many parts to be kept in arrays.
+	 */
+	public static ExpressionStoreParallel generate(int expressionDepth, long seed, boolean offHeap)
+	{
+		return generate(expressionDepth, new SplittableRandomParallel(seed), offHeap);
+	}
+
+	/**
+	 * Generates an expression from some random values. The expressions that have not been generated yet are kept on a stack, rather than on the call stack, each with its own split of
+	 * the random values, which is made in the same order as when generating a tree.
+	 * 
+	 * @param expressionDepth
+	 *             An integer that represents the maximum possible depth of the expression.
+	 * @param random
+	 *             Where the random values come from.
+	 * @param offHeap
+	 *             True if the expression should be kept outside of the Java heap.
+	 * @return The expression.
+	 * @throws IllegalArgumentException
+	 *              If the expression turns out to have too many parts to be kept in arrays.
+	 */
+	static ExpressionStoreParallel generate(int expressionDepth, SplittableRandomParallel random, boolean offHeap)
+	{
+		byte[] c = new byte[1024];
+		int n = 0;
+
+		List<SplittableRandomParallel> waiting = new ArrayList<SplittableRandomParallel>();
+		int[] waitingDepths = new int[16];
+		waiting.add(random);
+		waitingDepths[0] = expressionDepth;
+		while(!waiting.isEmpty())
+		{
+			int top = waiting.size() - 1;
+			SplittableRandomParallel r = waiting.remove(top);
+			int d = waitingDepths[top];
+
+			/* The random values are used in the same order as in ExpressionGeneratorParallel - see ExpressionType and splitArguments. */
+			int kind, arguments;
+			if(d == 0)
+			{
+				kind = r.nextBoolean() ? X : Y;
+				arguments = 0;
+			}
+			else
+			{
+				switch(r.nextInt(ExpressionGeneratorParallel.ExpressionType.values().length))
+				{
+					case 0:
+						kind = r.nextBoolean() ? X : Y;
+						arguments = 0;
+						break;
+					case 1:
+						kind = MULTIPLY;
+						arguments = r.nextInt(3) + 2;
+						break;
+					case 2:
+						kind = AVERAGE;
+						arguments = r.nextInt(3) + 2;
+						break;
+					case 3:
+						kind = SIN;
+						arguments = 1;
+						break;
+					default:
+						kind = COS;
+						arguments = 1;
+						break;
+				}
+			}
+
+			if(n == c.length)
+			{
+				if(n == Integer.MAX_VALUE - 8)
+				{
+					throw new IllegalArgumentException("The expression has too many parts to be kept in arrays.");
+				}
+				c = Arrays.copyOf(c, (int) Math.min(2L * n, Integer.MAX_VALUE - 8));
+			}
+			c[n++] = (byte) (kind | arguments << ARGUMENTS);
+
+			SplittableRandomParallel[] split = new SplittableRandomParallel[arguments];
+			for(int i = 0; i < arguments; i++)
+			{
+				split[i] = r.split();
+			}
+
+			/* The first argument goes on top, so that it is generated next. */
+			for(int i = arguments - 1; i >= 0; i--)
+			{
+				if(waiting.size() == waitingDepths.length)
+				{
+					waitingDepths = Arrays.copyOf(waitingDepths, 2 * waitingDepths.length);
+				}
+				waitingDepths[waiting.size()] = d - 1;
+				waiting.add(split[i]);
+			}
+		}
+
+		return new ExpressionStoreParallel(c, n, offHeap);
+	}
+
+	/**
+	 * Gets the kind and number of arguments of an expression.
+	 * 
+	 * @param i
+	 *             The position of the expression.
+	 * @return An integer whose lowest three bits are the kind of expression and whose other bits are the number of arguments.
+	 */
+	int code(int i)
+	{
+		return (codes != null) ? codes[i] : directCodes.get(i);
+	}
+
+	/**
+	 * Gets where an expression ends.
+	 * 
+	 * @param i
+	 *             The position of the expression.
+	 * @return An integer that is the position just after the last expression that it is made of.
+	 */
+	private int end(int i)
+	{
+		return (ends != null) ? ends[i] : directEnds.get(i);
+	}
+
+	/**
+	 * The solution to the expression when provided with values for variables. The expressions are gone through backwards, so the arguments of each have always been worked out before it,
+	 * and are waiting on the stack with the first one on top.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluate(double, double)
+	 */
+	@Override
+	public double evaluate(double x, double y)
+	{
+		double[] stack = stacks.get();
+		int top = 0;
+		for(int i = size - 1; i >= 0; i--)
+		{
+			int c = code(i);
+			switch(c & 7)
+			{
+				case X:
+					stack[top++] = x;
+					break;
+				case Y:
+					stack[top++] = y;
+					break;
+				case MULTIPLY:
+				{
+					double product = 1;
+					for(int a = c >>> ARGUMENTS; a > 0; a--)
+					{
+						product *= stack[--top];
+					}
+					stack[top++] = product;
+					break;
+				}
+				case AVERAGE:
+				{
+					int arguments = c >>> ARGUMENTS;
+					double total = 0;
+					for(int a = arguments; a > 0; a--)
+					{
+						total += stack[--top];
+					}
+					total /= arguments;
+					stack[top++] = total;
+					break;
+				}
+				case SIN:
+					stack[top - 1] = TrigonometryParallel.sinPi(stack[top - 1]);
+					break;
+				default:
+					stack[top - 1] = TrigonometryParallel.cosPi(stack[top - 1]);
+					break;
+			}
+		}
+		return stack[0];
+	}
+
+	/**
+	 * Bounds on the solutions to the expression for every pixel in a rectangle, going through the expressions backwards just as for a single pixel, but with a pair of bounds for each.
+	 * They hold for what <code>evaluate</code> actually gives, in the same way as those of <code>ExpressionParallel</code>.
+	 * 
+	 * @param xLow
+	 *             The lowest x-position in the rectangle.
+	 * @param xHigh
+	 *             The highest x-position in the rectangle.
+	 * @param yLow
+	 *             The lowest y-position in the rectangle.
+	 * @param yHigh
+	 *             The highest y-position in the rectangle.
+	 * @param bounds
+	 *             Receives the lowest solution in position 0 and the highest in position 1.
+	 * 
+	 * @see randomartassignment.expression.ExpressionParallel#evaluateInterval(double, double, double, double, double[])
+	 */
+	public void evaluateInterval(double xLow, double xHigh, double yLow, double yHigh, double[] bounds)
+	{
+		double[] lows = new double[stackSize];
+		double[] highs = new double[stackSize];
+		int top = 0;
+		for(int i = size - 1; i >= 0; i--)
+		{
+			int c = code(i);
+			switch(c & 7)
+			{
+				case X:
+					lows[top] = xLow;
+					highs[top++] = xHigh;
+					break;
+				case Y:
+					lows[top] = yLow;
+					highs[top++] = yHigh;
+					break;
+				case MULTIPLY:
+				{
+					double low = 1, high = 1;
+					for(int a = c >>> ARGUMENTS; a > 0; a--)
+					{
+						top--;
+						double p = low * lows[top], q = low * highs[top], r = high * lows[top], s = high * highs[top];
+						low = Math.min(Math.min(p, q), Math.min(r, s));
+						high = Math.max(Math.max(p, q), Math.max(r, s));
+					}
+					lows[top] = low;
+					highs[top++] = high;
+					break;
+				}
+				case AVERAGE:
+				{
+					int arguments = c >>> ARGUMENTS;
+					double low = 0, high = 0;
+					for(int a = arguments; a > 0; a--)
+					{
+						top--;
+						low += lows[top];
+						high += highs[top];
+					}
+					low /= arguments;
+					high /= arguments;
+					lows[top] = low;
+					highs[top++] = high;
+					break;
+				}
+				case SIN:
+					TrigonometryParallel.sinPi(lows[top - 1], highs[top - 1], bounds);
+					lows[top - 1] = bounds[0];
+					highs[top - 1] = bounds[1];
+					break;
+				default:
+					TrigonometryParallel.cosPi(lows[top - 1], highs[top - 1], bounds);
+					lows[top - 1] = bounds[0];
+					highs[top - 1] = bounds[1];
+					break;
+			}
+		}
+		bounds[0] = lows[0];
+		bounds[1] = highs[0];
+	}
+
+	/**
+	 * The solutions to the expression for a whole row of pixels, going through the expressions backwards just as for a single pixel, but with a row of values for each.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluateRow(double, double, double, double[])
+	 */
+	@Override
+	public void evaluateRow(double y, double x0, double dx, double[] out)
+	{
+		int n = out.length;
+		double[][] rows = rowStacks.get();
+		if(rows == null || (rows.length > 0 && rows[0].length != n))
+		{
+			rows = new double[stackSize][n];
+			rowStacks.set(rows);
+		}
+
+		int top = 0;
+		for(int i = size - 1; i >= 0; i--)
+		{
+			int c = code(i);
+			switch(c & 7)
+			{
+				case X:
+				{
+					double[] row = rows[top++];
+					for(int p = 0; p < n; p++)
+					{
+						row[p] = p * dx + x0;
+					}
+					break;
+				}
+				case Y:
+					Arrays.fill(rows[top++], 0, n, y);
+					break;
+				case MULTIPLY:
+				{
+					int arguments = c >>> ARGUMENTS;
+					double[] product = rows[top - arguments];
+					for(int p = 0; p < n; p++)
+					{
+						double v = 1;
+						for(int a = 1; a <= arguments; a++)
+						{
+							v *= rows[top - a][p];
+						}
+						product[p] = v;
+					}
+					top -= arguments - 1;
+					break;
+				}
+				case AVERAGE:
+				{
+					int arguments = c >>> ARGUMENTS;
+					double[] total = rows[top - arguments];
+					for(int p = 0; p < n; p++)
+					{
+						double v = 0;
+						for(int a = 1; a <= arguments; a++)
+						{
+							v += rows[top - a][p];
+						}
+						total[p] = v / arguments;
+					}
+					top -= arguments - 1;
+					break;
+				}
+				case SIN:
+					TrigonometryParallel.sinPi(rows[top - 1], n);
+					break;
+				default:
+					TrigonometryParallel.cosPi(rows[top - 1], n);
+					break;
+			}
+		}
+		System.arraycopy(rows[0], 0, out, 0, n);
+	}
+
+	/**
+	 * Gets the number of expressions that make up the whole expression.
+	 * 
+	 * @return An integer that is at least 1.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets how deep the whole expression goes.
+	 * 
+	 * @return An integer that is 1 for a lone variable.
+	 */
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * Checks whether the arrays are kept outside of the Java heap.
+	 * 
+	 * @return True if they are, false if they are in the Java heap.
+	 */
+	public boolean isOffHeap()
+	{
+		return codes == null;
+	}
+
+	/**
+	 * A representation of the expression that is exactly the same as that of the tree that it would otherwise have been.
+	 * 
+	 * @return A string that represents the expression.
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder();
+		try
+		{
+			appendTo(s);
+		}
+		catch(IOException ee)
+		{
+			throw new IllegalStateException("A StringBuilder cannot fail to be written to.", ee);
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Writes out the same representation as <code>toString</code>, a piece at a time, without making any strings along the way. It is written out by going through the expressions in
+	 * order, keeping track of which argument each unfinished expression is up to on a stack.
+	 * 
+	 * @param s
+	 *             Where the representation is written.
+	 * @throws IOException
+	 *              If it could not be written.
+	 */
+	public void appendTo(Appendable s) throws IOException
+	{
+		int[] expressions = new int[depth];
+		int[] next = new int[depth];
+		int top = 0;
+
+		expressions[0] = 0;
+		next[0] = 1;
+		begin(s, code(0));
+		top++;
+		while(top > 0)
+		{
+			int e = expressions[top - 1];
+			int argument = next[top - 1];
+			if(argument < end(e))
+			{
+				if(argument != e + 1)
+				{
+					s.append(((code(e) & 7) == MULTIPLY) ? " * " : ", ");
+				}
+				next[top - 1] = end(argument);
+				expressions[top] = argument;
+				next[top] = argument + 1;
+				top++;
+				begin(s, code(argument));
+			}
+			else
+			{
+				int kind = code(e) & 7;
+				if(kind == AVERAGE || kind == SIN || kind == COS)
+				{
+					s.append(')');
+				}
+				top--;
+			}
+		}
+	}
+
+	/**
+	 * Works out how many characters <code>toString</code> would give without writing any of them out, since every expression adds the same number of characters for each of its
+	 * arguments.
+	 * 
+	 * @return A long that is the length of the representation of the expression.
+	 */
+	public long getTextLength()
+	{
+		long length = 0;
+		for(int i = 0; i < size; i++)
+		{
+			int c = code(i);
+			int arguments = c >>> ARGUMENTS;
+			switch(c & 7)
+			{
+				case MULTIPLY:
+					length += 3L * (arguments - 1);// " * "
+					break;
+				case AVERAGE:
+					length += 5 + 2L * (arguments - 1);// "avg(", ", ", and ")"
+					break;
+				case SIN:
+				case COS:
+					length += 10;// "sin(pi * " and ")"
+					break;
+				default:
+					length++;
+					break;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Writes out what comes before the arguments of an expression.
+	 * 
+	 * @param s
+	 *             Where it is written.
+	 * @param c
+	 *             The kind and number of arguments of the expression.
+	 * @throws IOException
+	 *              If it could not be written.
+	 */
+	private static void begin(Appendable s, int c) throws IOException
+	{
+		switch(c & 7)
+		{
+			case X:
+				s.append('X');
+				break;
+			case Y:
+				s.append('Y');
+				break;
+			case AVERAGE:
+				s.append("avg(");
+				break;
+			case SIN:
+				s.append("sin(pi * ");
+				break;
+			case COS:
+				s.append("cos(pi * ");
+				break;
+			default:
+				break;
+		}
+	}
+}
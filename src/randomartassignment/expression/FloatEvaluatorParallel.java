@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.util.Arrays;
+
+/**
+ * FloatEvaluatorParallel runs the same postfix program as <code>PostfixEvaluatorParallel</code>, but with floats instead of doubles, and with sines and cosines from the float
+ * polynomial of <code>TrigonometryParallel</code>. Every pixel ends up as one of 256 shades, so the extra precision of a double is rarely seen in the picture, while a row of floats
+ * takes half the memory and the JIT compiler can work on twice as many of them at once. Unlike every other evaluator, the results are not exactly those of the tree - a pixel whose
+ * value is very close to the edge between two shades can end up as the other one, which <code>DriverParallel</code> can count (see its "-x" option). It has been designed to work in
+ * a parallel fashion - the program is never modified and every thread gets its own stack.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public final class FloatEvaluatorParallel implements EvaluatorParallel
+{
+	/**
+	 * The instructions of the program, in postfix order.
+	 */
+	private final byte[] opcodes;
+
+	/**
+	 * The operand of each instruction.
+	 */
+	private final int[] operands;
+
+	/**
+	 * The number of instructions in the program.
+	 */
+	private final int length;
+
+	/**
+	 * Where the slots for shared values begin on the stack.
+	 */
+	private final int slotBase;
+
+	/**
+	 * The total length of the stack, including the slots for shared values.
+	 */
+	private final int stackSize;
+
+	/**
+	 * A stack for each thread that uses this evaluator.
+	 */
+	private final ThreadLocal<float[]> stacks = new ThreadLocal<float[]>()
+		{
+			@Override
+			protected float[] initialValue()
+			{
+				return new float[stackSize];
+			}
+		};
+
+	/**
+	 * A stack of rows for each thread that evaluates rows of pixels with this evaluator.
+	 */
+	private final ThreadLocal<float[][]> rowStacks = new ThreadLocal<float[][]>()
+		{
+			@Override
+			protected float[][] initialValue()
+			{
+				return new float[stackSize][0];
+			}
+		};
+
+	/**
+	 * A constructor that compiles the given expression.
+	 * 
+	 * @param root
+	 *             A fully filled <code>ExpressionParallel</code> tree made only of the expressions known to <code>ExpressionGeneratorParallel</code>.
+	 * @throws IllegalArgumentException
+	 *              If the tree contains an expression that <code>PostfixEvaluatorParallel</code> does not know how to compile, or an expression that is missing arguments.
+	 */
+	public FloatEvaluatorParallel(ExpressionParallel root)
+	{
+		PostfixEvaluatorParallel program = new PostfixEvaluatorParallel(root);
+		opcodes = program.getOpcodes();
+		operands = program.getOperands();
+		length = program.getLength();
+		slotBase = program.getSlotBase();
+		stackSize = program.getStackSize();
+	}
+
+	/**
+	 * The solution to the expression when provided with values for variables, worked out in floats.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluate(double, double)
+	 */
+	@Override
+	public double evaluate(double x, double y)
+	{
+		float[] stack = stacks.get();
+		int sp = 0;
+		for(int pc = 0; pc < length; pc++)
+		{
+			switch(opcodes[pc])
+			{
+				case PostfixEvaluatorParallel.X:
+				{
+					stack[sp++] = (float) x;
+					break;
+				}
+				case PostfixEvaluatorParallel.Y:
+				{
+					stack[sp++] = (float) y;
+					break;
+				}
+				case PostfixEvaluatorParallel.MULTIPLY:
+				{
+					int base = sp - operands[pc];
+					float product = 1;
+					for(int i = base; i < sp; i++)
+					{
+						product *= stack[i];
+					}
+					stack[base] = product;
+					sp = base + 1;
+					break;
+				}
+				case PostfixEvaluatorParallel.AVERAGE:
+				{
+					int base = sp - operands[pc];
+					float total = 0;
+					for(int i = base; i < sp; i++)
+					{
+						total += stack[i];
+					}
+					total /= operands[pc];
+					stack[base] = total;
+					sp = base + 1;
+					break;
+				}
+				case PostfixEvaluatorParallel.SIN:
+				{
+					stack[sp - 1] = TrigonometryParallel.polynomialSinPi(stack[sp - 1]);
+					break;
+				}
+				case PostfixEvaluatorParallel.COS:
+				{
+					stack[sp - 1] = TrigonometryParallel.polynomialCosPi(stack[sp - 1]);
+					break;
+				}
+				case PostfixEvaluatorParallel.LOAD:
+				{
+					stack[sp++] = stack[slotBase + operands[pc]];
+					break;
+				}
+				case PostfixEvaluatorParallel.STORE:
+				{
+					stack[slotBase + operands[pc]] = stack[sp - 1];
+					break;
+				}
+				default:
+				{
+					throw new Error("Unknown opcode " + opcodes[pc] + " - the program has been changed without updating this method.");
+				}
+			}
+		}
+		return stack[0];
+	}
+
+	/**
+	 * The solutions to the expression for a whole row of pixels, running each instruction over a whole row of floats before moving on to the next one. The positions of the pixels are
+	 * worked out in doubles, just as for every other evaluator, and only then turned into floats.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluateRow(double, double, double, double[])
+	 */
+	@Override
+	public void evaluateRow(double y, double x0, double dx, double[] out)
+	{
+		int n = out.length;
+		float[][] rows = rowStacks.get();
+		if(rows[0].length < n)
+		{
+			for(int r = 0; r < stackSize; r++)
+			{
+				rows[r] = new float[n];
+			}
+		}
+
+		int sp = 0;
+		for(int pc = 0; pc < length; pc++)
+		{
+			switch(opcodes[pc])
+			{
+				case PostfixEvaluatorParallel.X:
+				{
+					float[] row = rows[sp++];
+					for(int i = 0; i < n; i++)
+					{
+						row[i] = (float) (i * dx + x0);
+					}
+					break;
+				}
+				case PostfixEvaluatorParallel.Y:
+				{
+					Arrays.fill(rows[sp++], 0, n, (float) y);
+					break;
+				}
+				case PostfixEvaluatorParallel.MULTIPLY:
+				{
+					int base = sp - operands[pc];
+					float[] product = rows[base];
+					if(operands[pc] == 0)
+					{
+						Arrays.fill(product, 0, n, 1);
+					}
+					for(int r = base + 1; r < sp; r++)
+					{
+						float[] row = rows[r];
+						for(int i = 0; i < n; i++)
+						{
+							product[i] *= row[i];
+						}
+					}
+					sp = base + 1;
+					break;
+				}
+				case PostfixEvaluatorParallel.AVERAGE:
+				{
+					int base = sp - operands[pc];
+					float[] total = rows[base];
+					if(operands[pc] == 0)
+					{
+						Arrays.fill(total, 0, n, 0);
+					}
+					for(int r = base + 1; r < sp; r++)
+					{
+						float[] row = rows[r];
+						for(int i = 0; i < n; i++)
+						{
+							total[i] += row[i];
+						}
+					}
+					float size = operands[pc];
+					for(int i = 0; i < n; i++)
+					{
+						total[i] /= size;
+					}
+					sp = base + 1;
+					break;
+				}
+				case PostfixEvaluatorParallel.SIN:
+				{
+					TrigonometryParallel.sinPi(rows[sp - 1], n);
+					break;
+				}
+				case PostfixEvaluatorParallel.COS:
+				{
+					TrigonometryParallel.cosPi(rows[sp - 1], n);
+					break;
+				}
+				case PostfixEvaluatorParallel.LOAD:
+				{
+					System.arraycopy(rows[slotBase + operands[pc]], 0, rows[sp++], 0, n);
+					break;
+				}
+				case PostfixEvaluatorParallel.STORE:
+				{
+					System.arraycopy(rows[sp - 1], 0, rows[slotBase + operands[pc]], 0, n);
+					break;
+				}
+				default:
+				{
+					throw new Error("Unknown opcode " + opcodes[pc] + " - the program has been changed without updating this method.");
+				}
+			}
+		}
+
+		float[] result = rows[0];
+		for(int i = 0; i < n; i++)
+		{
+			out[i] = result[i];
+		}
+	}
+}
@@ -0,0 +1,793 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * PostfixEvaluatorParallel flattens an <code>ExpressionParallel</code> tree into a postfix program (parallel arrays of opcodes and operands) and evaluates it on a small stack of doubles.
+ * This avoids the virtual calls, iterators, and string comparisons that walking the tree costs on every pixel, while doing the exact same arithmetic in the exact same order, so the
+ * results are identical to those of the tree. It has been designed to work in a parallel fashion - the program is never modified after it has been built and every thread gets its own
+ * stack. In order to use any subclasses of ExpressionParallel, make sure to adjust this class.
+ * 
+ * If the expression shares subexpressions (see <code>ExpressionGeneratorParallel(int, boolean)</code>), each shared subexpression is only worked out the first time it is reached, after
+ * which its value is kept in a slot past the end of the stack for the rest of the pixel.
+ * 
+ * The expressions of several channels can also be compiled into a single program that works all of them out in one go, leaving each channel's value on the stack in order. Every
+ * subexpression that is identical to another - whether in the same channel or a different one, and whether or not it was generated to be shared - is then worked out only once.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public final class PostfixEvaluatorParallel implements EvaluatorParallel
+{
+	/**
+	 * Pushes the x-position.
+	 */
+	static final byte X = 0;
+
+	/**
+	 * Pushes the y-position.
+	 */
+	static final byte Y = 1;
+
+	/**
+	 * Replaces the top <code>operand</code> values with their product.
+	 */
+	static final byte MULTIPLY = 2;
+
+	/**
+	 * Replaces the top <code>operand</code> values with their mean.
+	 */
+	static final byte AVERAGE = 3;
+
+	/**
+	 * Replaces the top value, v, with sin(pi * v).
+	 */
+	static final byte SIN = 4;
+
+	/**
+	 * Replaces the top value, v, with cos(pi * v).
+	 */
+	static final byte COS = 5;
+
+	/**
+	 * Pushes the value kept in slot <code>operand</code>.
+	 */
+	static final byte LOAD = 6;
+
+	/**
+	 * Keeps the top value in slot <code>operand</code>, leaving it on the stack.
+	 */
+	static final byte STORE = 7;
+
+	/**
+	 * The instructions of the program, in postfix order.
+	 */
+	private final byte[] opcodes;
+
+	/**
+	 * The operand of each instruction - the number of arguments for <code>MULTIPLY</code> and <code>AVERAGE</code>, the slot for <code>LOAD</code> and <code>STORE</code>, unused
+	 * otherwise.
+	 */
+	private final int[] operands;
+
+	/**
+	 * The number of instructions in the program.
+	 */
+	private final int length;
+
+	/**
+	 * The number of values that the program leaves on the stack - one for each expression that it was compiled from.
+	 */
+	private final int results;
+
+	/**
+	 * The most values that are ever on the stack at once while running the program - the slots for shared values come right after them.
+	 */
+	private final int slotBase;
+
+	/**
+	 * The total length of the stack, including the slots for shared values.
+	 */
+	private final int stackSize;
+
+	/**
+	 * A stack for each thread that uses this evaluator, so that nothing is allocated while evaluating pixels.
+	 */
+	private final ThreadLocal<double[]> stacks;
+
+	/**
+	 * A stack of rows for each thread that evaluates rows of pixels with this evaluator.
+	 */
+	private final ThreadLocal<double[][]> rowStacks;
+
+	/**
+	 * A constructor that compiles the given expression.
+	 * 
+	 * @param root
+	 *             A fully filled <code>ExpressionParallel</code> tree made only of the expressions known to <code>ExpressionGeneratorParallel</code>.
+	 * @throws IllegalArgumentException
+	 *              If the tree contains an expression that this class does not know how to compile, or an expression that is missing arguments.
+	 */
+	public PostfixEvaluatorParallel(ExpressionParallel root)
+	{
+		this(root, Collections.<ExpressionParallel> emptyList());
+	}
+
+	/**
+	 * A constructor that compiles the given expression, except for some of its subexpressions whose values are given ahead of time. The value of <code>inputs.get(i)</code> must be put
+	 * into slot i - that is, index <code>getSlotBase() + i</code> of the stack - before the program is run.
+	 * 
+	 * @param root
+	 *             A fully filled <code>ExpressionParallel</code> tree made only of the expressions known to <code>ExpressionGeneratorParallel</code>.
+	 * @param inputs
+	 *             The subexpressions of <code>root</code> that are not to be compiled.
+	 * @throws IllegalArgumentException
+	 *              If the tree contains an expression that this class does not know how to compile, or an expression that is missing arguments.
+	 */
+	PostfixEvaluatorParallel(ExpressionParallel root, List<ExpressionParallel> inputs)
+	{
+		Compiler c = new Compiler();
+		for(ExpressionParallel input : inputs)
+		{
+			c.slots.put(input, c.slots.size());
+		}
+		c.compile(root);
+
+		opcodes = c.opcodes;
+		operands = c.operands;
+		length = c.length;
+		results = 1;
+		slotBase = c.maxDepth;
+		stackSize = c.maxDepth + c.slots.size();
+
+		stacks = createStacks();
+		rowStacks = createRowStacks();
+	}
+
+	/**
+	 * A constructor that compiles several expressions into a single program, which leaves the value of <code>roots[k]</code> at index k of the stack. Identical subexpressions are only
+	 * worked out once, even if they are different objects.
+	 * 
+	 * @param roots
+	 *             Fully filled <code>ExpressionParallel</code> trees made only of the expressions known to <code>ExpressionGeneratorParallel</code> - usually one for each channel of a
+	 *             picture.
+	 * @throws IllegalArgumentException
+	 *              If a tree contains an expression that this class does not know how to compile, or an expression that is missing arguments.
+	 */
+	PostfixEvaluatorParallel(ExpressionParallel[] roots)
+	{
+		Compiler c = new Compiler();
+		c.merged = new IdentityHashMap<ExpressionParallel, ExpressionParallel>();
+		for(ExpressionParallel root : roots)
+		{
+			c.merge(root);
+		}
+		for(ExpressionParallel root : roots)
+		{
+			c.count(root);
+		}
+		for(ExpressionParallel root : roots)
+		{
+			c.emitExpression(root);
+		}
+
+		opcodes = c.opcodes;
+		operands = c.operands;
+		length = c.length;
+		results = roots.length;
+		slotBase = c.maxDepth;
+		stackSize = c.maxDepth + c.slots.size();
+
+		stacks = createStacks();
+		rowStacks = createRowStacks();
+	}
+
+	/**
+	 * Makes the stacks that belong to each thread.
+	 * 
+	 * @return A <code>ThreadLocal</code> that gives each thread a stack that is <code>stackSize</code> long.
+	 */
+	private ThreadLocal<double[]> createStacks()
+	{
+		return new ThreadLocal<double[]>()
+			{
+				@Override
+				protected double[] initialValue()
+				{
+					return new double[stackSize];
+				}
+			};
+	}
+
+	/**
+	 * Makes the stacks of rows that belong to each thread.
+	 * 
+	 * @return A <code>ThreadLocal</code> that gives each thread <code>stackSize</code> rows, which start out empty.
+	 */
+	private ThreadLocal<double[][]> createRowStacks()
+	{
+		return new ThreadLocal<double[][]>()
+			{
+				@Override
+				protected double[][] initialValue()
+				{
+					return new double[stackSize][0];
+				}
+			};
+	}
+
+	/**
+	 * The solution to the expression when provided with values for variables, using a stack that belongs to the calling thread.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluate(double, double)
+	 */
+	@Override
+	public double evaluate(double x, double y)
+	{
+		return evaluate(x, y, stacks.get());
+	}
+
+	/**
+	 * The solution to the expression when provided with values for variables, using a stack that belongs to the caller.
+	 * 
+	 * @param x
+	 *             A value between [-1.0, 1.0] that represents a pixel's x-position.
+	 * @param y
+	 *             A value between [-1.0, 1.0] that represents a pixel's y-position.
+	 * @param stack
+	 *             An array at least <code>getStackSize()</code> long that no other thread is using.
+	 * @return A double between [-1.0, 1.0].
+	 */
+	public double evaluate(double x, double y, double[] stack)
+	{
+		run(x, y, stack);
+		return stack[0];
+	}
+
+	/**
+	 * Runs the program for a single pixel, leaving the solutions at the bottom of the stack.
+	 * 
+	 * @param x
+	 *             A value between [-1.0, 1.0] that represents a pixel's x-position.
+	 * @param y
+	 *             A value between [-1.0, 1.0] that represents a pixel's y-position.
+	 * @param stack
+	 *             An array at least <code>getStackSize()</code> long that no other thread is using.
+	 */
+	private void run(double x, double y, double[] stack)
+	{
+		int sp = 0;
+		for(int pc = 0; pc < length; pc++)
+		{
+			switch(opcodes[pc])
+			{
+				case X:
+				{
+					stack[sp++] = x;
+					break;
+				}
+				case Y:
+				{
+					stack[sp++] = y;
+					break;
+				}
+				case MULTIPLY:
+				{
+					int base = sp - operands[pc];
+					double product = 1;
+					for(int i = base; i < sp; i++)
+					{
+						product *= stack[i];
+					}
+					stack[base] = product;
+					sp = base + 1;
+					break;
+				}
+				case AVERAGE:
+				{
+					int base = sp - operands[pc];
+					double total = 0;
+					for(int i = base; i < sp; i++)
+					{
+						total += stack[i];
+					}
+					total /= operands[pc];
+					stack[base] = total;
+					sp = base + 1;
+					break;
+				}
+				case SIN:
+				{
+					stack[sp - 1] = TrigonometryParallel.sinPi(stack[sp - 1]);
+					break;
+				}
+				case COS:
+				{
+					stack[sp - 1] = TrigonometryParallel.cosPi(stack[sp - 1]);
+					break;
+				}
+				case LOAD:
+				{
+					stack[sp++] = stack[slotBase + operands[pc]];
+					break;
+				}
+				case STORE:
+				{
+					stack[slotBase + operands[pc]] = stack[sp - 1];
+					break;
+				}
+				default:
+				{
+					throw new Error("Unknown opcode " + opcodes[pc] + " - the program has been changed without updating this method.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * The solutions to the expression for a whole row of pixels, running each instruction over the whole row before moving on to the next one. Every entry on the stack is a row rather
+	 * than a single value, so the loops over them are simple enough for the JIT compiler to vectorize.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluateRow(double, double, double, double[])
+	 */
+	@Override
+	public void evaluateRow(double y, double x0, double dx, double[] out)
+	{
+		evaluateRow(y, x0, dx, out, rowStack(out.length));
+	}
+
+	/**
+	 * Gets the stack of rows that belongs to the calling thread.
+	 * 
+	 * @param n
+	 *             The least length of each row.
+	 * @return An array of <code>getStackSize()</code> rows, each of which is at least <code>n</code> long.
+	 */
+	double[][] rowStack(int n)
+	{
+		double[][] rows = rowStacks.get();
+		if(rows[0].length < n)
+		{
+			for(int r = 0; r < stackSize; r++)
+			{
+				rows[r] = new double[n];
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * The solutions to the expression for a whole row of pixels, using a stack of rows that belongs to the caller.
+	 * 
+	 * @param y
+	 *             A value between [-1.0, 1.0] that represents the row's y-position.
+	 * @param x0
+	 *             The x-position of the first pixel in the row.
+	 * @param dx
+	 *             The distance between the x-positions of neighboring pixels.
+	 * @param out
+	 *             An array that receives the solution for every pixel in the row.
+	 * @param rows
+	 *             <code>getStackSize()</code> rows, each of which is at least as long as <code>out</code>.
+	 */
+	void evaluateRow(double y, double x0, double dx, double[] out, double[][] rows)
+	{
+		run(y, x0, dx, out.length, rows);
+		System.arraycopy(rows[0], 0, out, 0, out.length);
+	}
+
+	/**
+	 * The solutions to every expression that the program was compiled from for a whole row of pixels, using a stack of rows that belongs to the calling thread.
+	 * 
+	 * @param y
+	 *             A value between [-1.0, 1.0] that represents the row's y-position.
+	 * @param x0
+	 *             The x-position of the first pixel in the row.
+	 * @param dx
+	 *             The distance between the x-positions of neighboring pixels.
+	 * @param out
+	 *             An array of rows, all of the same length, which receive the solutions for each expression in order.
+	 */
+	void evaluateRows(double y, double x0, double dx, double[][] out)
+	{
+		int n = out[0].length;
+		double[][] rows = rowStack(n);
+		run(y, x0, dx, n, rows);
+		for(int k = 0; k < results; k++)
+		{
+			System.arraycopy(rows[k], 0, out[k], 0, n);
+		}
+	}
+
+	/**
+	 * Runs the program for a whole row of pixels, leaving the rows of solutions at the bottom of the stack.
+	 * 
+	 * @param y
+	 *             A value between [-1.0, 1.0] that represents the row's y-position.
+	 * @param x0
+	 *             The x-position of the first pixel in the row.
+	 * @param dx
+	 *             The distance between the x-positions of neighboring pixels.
+	 * @param n
+	 *             The number of pixels in the row.
+	 * @param rows
+	 *             <code>getStackSize()</code> rows, each of which is at least <code>n</code> long.
+	 */
+	private void run(double y, double x0, double dx, int n, double[][] rows)
+	{
+		int sp = 0;
+		for(int pc = 0; pc < length; pc++)
+		{
+			switch(opcodes[pc])
+			{
+				case X:
+				{
+					double[] row = rows[sp++];
+					for(int i = 0; i < n; i++)
+					{
+						row[i] = i * dx + x0;
+					}
+					break;
+				}
+				case Y:
+				{
+					Arrays.fill(rows[sp++], 0, n, y);
+					break;
+				}
+				case MULTIPLY:
+				{
+					/* Multiplying by the first argument rather than starting from 1 changes nothing, since 1 * v is exactly v. */
+					int base = sp - operands[pc];
+					double[] product = rows[base];
+					if(operands[pc] == 0)
+					{
+						Arrays.fill(product, 0, n, 1);
+					}
+					for(int r = base + 1; r < sp; r++)
+					{
+						double[] row = rows[r];
+						for(int i = 0; i < n; i++)
+						{
+							product[i] *= row[i];
+						}
+					}
+					sp = base + 1;
+					break;
+				}
+				case AVERAGE:
+				{
+					/* Unlike multiplying, 0 + v is not always v (when v is -0.0), so the sum has to start from 0 just like it does in the tree. */
+					int base = sp - operands[pc];
+					double[] total = rows[base];
+					if(operands[pc] == 0)
+					{
+						Arrays.fill(total, 0, n, 0);
+					}
+					else
+					{
+						for(int i = 0; i < n; i++)
+						{
+							total[i] = 0 + total[i];
+						}
+					}
+					for(int r = base + 1; r < sp; r++)
+					{
+						double[] row = rows[r];
+						for(int i = 0; i < n; i++)
+						{
+							total[i] += row[i];
+						}
+					}
+					int size = operands[pc];
+					for(int i = 0; i < n; i++)
+					{
+						total[i] /= size;
+					}
+					sp = base + 1;
+					break;
+				}
+				case SIN:
+				{
+					TrigonometryParallel.sinPi(rows[sp - 1], n);
+					break;
+				}
+				case COS:
+				{
+					TrigonometryParallel.cosPi(rows[sp - 1], n);
+					break;
+				}
+				case LOAD:
+				{
+					System.arraycopy(rows[slotBase + operands[pc]], 0, rows[sp++], 0, n);
+					break;
+				}
+				case STORE:
+				{
+					System.arraycopy(rows[sp - 1], 0, rows[slotBase + operands[pc]], 0, n);
+					break;
+				}
+				default:
+				{
+					throw new Error("Unknown opcode " + opcodes[pc] + " - the program has been changed without updating this method.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the length of the stack that the program needs.
+	 * 
+	 * @return An integer that is the smallest length of an array that may be given to <code>evaluate(double, double, double[])</code>.
+	 */
+	public int getStackSize()
+	{
+		return stackSize;
+	}
+
+	/**
+	 * Gets where the slots begin on the stack.
+	 * 
+	 * @return An integer that is the index of slot 0 on the stack.
+	 */
+	int getSlotBase()
+	{
+		return slotBase;
+	}
+
+	/**
+	 * Gets the instructions of the program, for the evaluators that run the same program in other ways. The array must not be changed.
+	 * 
+	 * @return An array that is at least <code>getLength()</code> long.
+	 */
+	byte[] getOpcodes()
+	{
+		return opcodes;
+	}
+
+	/**
+	 * Gets the operands of the instructions of the program, for the evaluators that run the same program in other ways. The array must not be changed.
+	 * 
+	 * @return An array that is at least <code>getLength()</code> long.
+	 */
+	int[] getOperands()
+	{
+		return operands;
+	}
+
+	/**
+	 * Gets the number of expressions that the program was compiled from.
+	 * 
+	 * @return An integer that is the number of solutions that the program works out for each pixel.
+	 */
+	int getResults()
+	{
+		return results;
+	}
+
+	/**
+	 * Gets the number of instructions in the program, which is the same as the number of expressions in the tree it was compiled from unless it shares subexpressions.
+	 * 
+	 * @return An integer that is the length of the program.
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Compiler turns a tree into the arrays of the program. It keeps track of how deep the stack gets so that the stacks can be allocated ahead of time, and of which subexpressions are
+	 * used more than once so that they are only worked out once.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	private static final class Compiler
+	{
+		/**
+		 * The instructions emitted so far.
+		 */
+		byte[] opcodes = new byte[64];
+
+		/**
+		 * The operands emitted so far.
+		 */
+		int[] operands = new int[64];
+
+		/**
+		 * The number of instructions emitted so far.
+		 */
+		int length;
+
+		/**
+		 * The number of values that would be on the stack after running the instructions emitted so far.
+		 */
+		int depth;
+
+		/**
+		 * The most values that have been on the stack at once.
+		 */
+		int maxDepth = 1;
+
+		/**
+		 * The number of times each expression is used as an argument, or as the root.
+		 */
+		final IdentityHashMap<ExpressionParallel, Integer> uses = new IdentityHashMap<ExpressionParallel, Integer>();
+
+		/**
+		 * The slot of each shared expression that has already been compiled, and of each input.
+		 */
+		final IdentityHashMap<ExpressionParallel, Integer> slots = new IdentityHashMap<ExpressionParallel, Integer>();
+
+		/**
+		 * If identical expressions are being merged, the first expression that was found to be identical to each one - possibly itself. It is null otherwise.
+		 */
+		IdentityHashMap<ExpressionParallel, ExpressionParallel> merged;
+
+		/**
+		 * What makes expressions identical - the class, the name of a variable, and the merged arguments - for each distinct expression found so far.
+		 */
+		private final HashMap<List<Object>, ExpressionParallel> shapes = new HashMap<List<Object>, ExpressionParallel>();
+
+		/**
+		 * Finds the expression that an expression is merged into, after doing the same for all of its subexpressions.
+		 * 
+		 * @param e
+		 *             The <code>ExpressionParallel</code> to merge.
+		 * @return The first expression that was found to be identical to <code>e</code> - possibly <code>e</code> itself.
+		 */
+		ExpressionParallel merge(ExpressionParallel e)
+		{
+			ExpressionParallel m = merged.get(e);
+			if(m != null)
+			{
+				return m;
+			}
+
+			Object[] shape = new Object[e.expr.size() + 2];
+			shape[0] = e.getClass();
+			shape[1] = (e instanceof ExpressionParallel.Variable) ? ((ExpressionParallel.Variable) e).name : null;
+			for(int i = 0; i < e.expr.size(); i++)
+			{
+				shape[i + 2] = merge(e.expr.get(i));// expressions are only ever equal to themselves, so merged arguments are compared by identity
+			}
+
+			List<Object> key = Arrays.asList(shape);
+			m = shapes.get(key);
+			if(m == null)
+			{
+				shapes.put(key, e);
+				m = e;
+			}
+			merged.put(e, m);
+			return m;
+		}
+
+		/**
+		 * Finds the expression that is compiled in place of an expression.
+		 * 
+		 * @param e
+		 *             An <code>ExpressionParallel</code>.
+		 * @return The expression that <code>e</code> was merged into, or <code>e</code> itself if expressions are not being merged.
+		 */
+		private ExpressionParallel merged(ExpressionParallel e)
+		{
+			return (merged == null) ? e : merged.get(e);
+		}
+
+		/**
+		 * Counts how many times an expression and each of its subexpressions are used.
+		 * 
+		 * @param e
+		 *             The <code>ExpressionParallel</code> to count.
+		 */
+		void count(ExpressionParallel e)
+		{
+			e = merged(e);
+			Integer n = uses.get(e);
+			uses.put(e, (n == null) ? 1 : n + 1);
+			if(n == null && !slots.containsKey(e))
+			{
+				for(ExpressionParallel a : e.expr)
+				{
+					count(a);
+				}
+			}
+		}
+
+		/**
+		 * Emits the instructions for an expression and all of its subexpressions, in postfix order.
+		 * 
+		 * @param root
+		 *             The <code>ExpressionParallel</code> to compile.
+		 */
+		void compile(ExpressionParallel root)
+		{
+			count(root);
+			emitExpression(root);
+		}
+
+		/**
+		 * Emits the instructions for an expression, unless it is shared and has already been emitted, in which case its value is loaded instead.
+		 * 
+		 * @param e
+		 *             The <code>ExpressionParallel</code> to compile.
+		 */
+		void emitExpression(ExpressionParallel e)
+		{
+			e = merged(e);
+			Integer slot = slots.get(e);
+			if(slot != null)
+			{
+				emit(LOAD, slot, 1);
+				return;
+			}
+
+			if(e instanceof ExpressionParallel.Variable)
+			{
+				emit(("X".equals(((ExpressionParallel.Variable) e).name)) ? X : Y, 0, 1);
+			}
+			else if(e instanceof ExpressionParallel.Multiply || e instanceof ExpressionParallel.Average)
+			{
+				for(ExpressionParallel a : e.expr)
+				{
+					emitExpression(a);
+				}
+				emit((e instanceof ExpressionParallel.Multiply) ? MULTIPLY : AVERAGE, e.expr.size(), 1 - e.expr.size());
+			}
+			else if(e instanceof ExpressionParallel.Sin || e instanceof ExpressionParallel.Cos)
+			{
+				if(e.expr.isEmpty())
+				{
+					throw new IllegalArgumentException("\"" + e.getClass().getSimpleName() + "\" is missing its argument.");
+				}
+				emitExpression(e.expr.get(0));
+				emit((e instanceof ExpressionParallel.Sin) ? SIN : COS, 0, 0);
+			}
+			else
+			{
+				throw new IllegalArgumentException("\"" + e.getClass().getName() + "\" is not known to PostfixEvaluatorParallel.");
+			}
+
+			/* Variables are as quick to push as they are to load, so there is no point in keeping them. */
+			if(uses.get(e) > 1 && !(e instanceof ExpressionParallel.Variable))
+			{
+				slot = slots.size();
+				slots.put(e, slot);
+				emit(STORE, slot, 0);
+			}
+		}
+
+		/**
+		 * Appends an instruction to the program.
+		 * 
+		 * @param opcode
+		 *             The instruction.
+		 * @param operand
+		 *             The instruction's operand.
+		 * @param stackChange
+		 *             How many values the instruction adds to (or, if negative, removes from) the stack.
+		 */
+		void emit(byte opcode, int operand, int stackChange)
+		{
+			if(length == opcodes.length)
+			{
+				opcodes = Arrays.copyOf(opcodes, length * 2);
+				operands = Arrays.copyOf(operands, length * 2);
+			}
+			opcodes[length] = opcode;
+			operands[length] = operand;
+			length++;
+
+			depth += stackChange;
+			maxDepth = Math.max(maxDepth, depth);
+		}
+	}
+}
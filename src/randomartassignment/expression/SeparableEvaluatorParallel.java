@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * SeparableEvaluatorParallel takes advantage of subexpressions that only depend on one of the variables, such as sin(pi * cos(pi * Y)) or X * X. When evaluating a row of pixels,
+ * subexpressions that only depend on Y are worked out once for the whole row, and subexpressions that only depend on X are worked out once for the whole picture and kept in a table
+ * that every row reads from. Only the parts of the expression that depend on both are worked out for every pixel, so an expression made up mostly of such subexpressions costs not much
+ * more than the width plus the height of the picture. The results are identical to those of the tree. It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public final class SeparableEvaluatorParallel implements EvaluatorParallel
+{
+	/**
+	 * Marks an expression that depends on X.
+	 */
+	private static final int DEPENDS_ON_X = 1;
+
+	/**
+	 * Marks an expression that depends on Y.
+	 */
+	private static final int DEPENDS_ON_Y = 2;
+
+	/**
+	 * The whole expression, used for evaluating single pixels.
+	 */
+	private final PostfixEvaluatorParallel whole;
+
+	/**
+	 * The parts of the expression that depend on both variables, with the subexpressions that do not being read from slots.
+	 */
+	private final PostfixEvaluatorParallel mixed;
+
+	/**
+	 * The subexpressions that only depend on X - the one in position i goes into slot i of <code>mixed</code>.
+	 */
+	private final PostfixEvaluatorParallel[] xOnly;
+
+	/**
+	 * The subexpressions that only depend on Y - the one in position i goes into slot <code>xOnly.length + i</code> of <code>mixed</code>.
+	 */
+	private final PostfixEvaluatorParallel[] yOnly;
+
+	/**
+	 * The values of the subexpressions that only depend on X for the most recently used row geometry.
+	 */
+	private volatile Table table;
+
+	/**
+	 * A constructor that splits up the given expression.
+	 * 
+	 * @param root
+	 *             A fully filled <code>ExpressionParallel</code> tree made only of the expressions known to <code>ExpressionGeneratorParallel</code>.
+	 * @throws IllegalArgumentException
+	 *              If the tree contains an expression that this class does not know how to compile, or an expression that is missing arguments.
+	 */
+	public SeparableEvaluatorParallel(ExpressionParallel root)
+	{
+		whole = new PostfixEvaluatorParallel(root);
+
+		IdentityHashMap<ExpressionParallel, Integer> dependencies = new IdentityHashMap<ExpressionParallel, Integer>();
+		dependsOn(root, dependencies);
+
+		List<ExpressionParallel> xs = new ArrayList<ExpressionParallel>();
+		List<ExpressionParallel> ys = new ArrayList<ExpressionParallel>();
+		hoist(root, dependencies, xs, ys, new IdentityHashMap<ExpressionParallel, Boolean>());
+
+		xOnly = new PostfixEvaluatorParallel[xs.size()];
+		for(int i = 0; i < xOnly.length; i++)
+		{
+			xOnly[i] = new PostfixEvaluatorParallel(xs.get(i));
+		}
+		yOnly = new PostfixEvaluatorParallel[ys.size()];
+		for(int i = 0; i < yOnly.length; i++)
+		{
+			yOnly[i] = new PostfixEvaluatorParallel(ys.get(i));
+		}
+
+		List<ExpressionParallel> inputs = new ArrayList<ExpressionParallel>(xs);
+		inputs.addAll(ys);
+		mixed = new PostfixEvaluatorParallel(root, inputs);
+	}
+
+	/**
+	 * Works out which variables an expression and each of its subexpressions depend on.
+	 * 
+	 * @param e
+	 *             The expression.
+	 * @param dependencies
+	 *             Receives <code>DEPENDS_ON_X</code>, <code>DEPENDS_ON_Y</code>, or both for every expression.
+	 * @return The variables that <code>e</code> depends on.
+	 */
+	private static int dependsOn(ExpressionParallel e, IdentityHashMap<ExpressionParallel, Integer> dependencies)
+	{
+		Integer known = dependencies.get(e);
+		if(known != null)
+		{
+			return known;
+		}
+
+		int d = 0;
+		if(e instanceof ExpressionParallel.Variable)
+		{
+			d = ("X".equals(((ExpressionParallel.Variable) e).name)) ? DEPENDS_ON_X : DEPENDS_ON_Y;
+		}
+		for(ExpressionParallel a : e.expr)
+		{
+			d |= dependsOn(a, dependencies);
+		}
+		dependencies.put(e, d);
+		return d;
+	}
+
+	/**
+	 * Finds the largest subexpressions that only depend on one variable. Lone variables are left alone, since they are as quick to work out as they are to look up.
+	 * 
+	 * @param e
+	 *             The expression to search.
+	 * @param dependencies
+	 *             The variables that each expression depends on.
+	 * @param xs
+	 *             Receives the subexpressions that only depend on X.
+	 * @param ys
+	 *             Receives the subexpressions that only depend on Y.
+	 * @param visited
+	 *             The expressions that have already been searched.
+	 */
+	private static void hoist(ExpressionParallel e, IdentityHashMap<ExpressionParallel, Integer> dependencies, List<ExpressionParallel> xs, List<ExpressionParallel> ys,
+	          IdentityHashMap<ExpressionParallel, Boolean> visited)
+	{
+		if(visited.put(e, Boolean.TRUE) != null || e instanceof ExpressionParallel.Variable)
+		{
+			return;
+		}
+
+		int d = dependencies.get(e);
+		if(d == (DEPENDS_ON_X | DEPENDS_ON_Y))
+		{
+			for(ExpressionParallel a : e.expr)
+			{
+				hoist(a, dependencies, xs, ys, visited);
+			}
+		}
+		else if(d == DEPENDS_ON_X)
+		{
+			xs.add(e);
+		}
+		else
+		{
+			ys.add(e);
+		}
+	}
+
+	/**
+	 * The solution to the expression when provided with values for variables. With only a single pixel, there is nothing to be gained from splitting up the expression, so the whole
+	 * expression is evaluated.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluate(double, double)
+	 */
+	@Override
+	public double evaluate(double x, double y)
+	{
+		return whole.evaluate(x, y);
+	}
+
+	/**
+	 * The solutions to the expression for a whole row of pixels, looking up the subexpressions that only depend on X, working out the ones that only depend on Y once, and then working
+	 * out the rest for every pixel.
+	 * 
+	 * @see randomartassignment.expression.EvaluatorParallel#evaluateRow(double, double, double, double[])
+	 */
+	@Override
+	public void evaluateRow(double y, double x0, double dx, double[] out)
+	{
+		int n = out.length;
+		Table t = table;
+		if(t == null || t.x0 != x0 || t.dx != dx || (t.values.length > 0 && t.values[0].length != n))
+		{
+			t = new Table(x0, dx, n);
+			table = t;
+		}
+
+		double[][] rows = mixed.rowStack(n);
+		int slot = mixed.getSlotBase();
+		for(int i = 0; i < xOnly.length; i++)
+		{
+			System.arraycopy(t.values[i], 0, rows[slot++], 0, n);
+		}
+		for(int i = 0; i < yOnly.length; i++)
+		{
+			Arrays.fill(rows[slot++], 0, n, yOnly[i].evaluate(x0, y));
+		}
+		mixed.evaluateRow(y, x0, dx, out, rows);
+	}
+
+	/**
+	 * Gets the number of subexpressions that only depend on X.
+	 * 
+	 * @return An integer that is the number of tables that are kept.
+	 */
+	public int getXOnlyCount()
+	{
+		return xOnly.length;
+	}
+
+	/**
+	 * Gets the number of subexpressions that only depend on Y.
+	 * 
+	 * @return An integer that is the number of values that are worked out once per row.
+	 */
+	public int getYOnlyCount()
+	{
+		return yOnly.length;
+	}
+
+	/**
+	 * Table holds the values of every subexpression that only depends on X for every pixel of a row. It is never changed after it has been made, so rows can share it freely - at worst,
+	 * two threads that start at the same time both make one.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	private final class Table
+	{
+		/**
+		 * The x-position of the first pixel.
+		 */
+		final double x0;
+
+		/**
+		 * The distance between the x-positions of neighboring pixels.
+		 */
+		final double dx;
+
+		/**
+		 * The value of each subexpression for each pixel.
+		 */
+		final double[][] values;
+
+		/**
+		 * A constructor that works out the table.
+		 * 
+		 * @param start
+		 *             The x-position of the first pixel.
+		 * @param step
+		 *             The distance between the x-positions of neighboring pixels.
+		 * @param n
+		 *             The number of pixels.
+		 */
+		Table(double start, double step, int n)
+		{
+			x0 = start;
+			dx = step;
+			values = new double[xOnly.length][n];
+			for(int i = 0; i < xOnly.length; i++)
+			{
+				xOnly[i].evaluateRow(0, start, step, values[i]);
+			}
+		}
+	}
+}
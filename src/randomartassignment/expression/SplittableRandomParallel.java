@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SplittableRandomParallel returns random values from a seed, in the same way as <code>java.util.SplittableRandom</code> (the SplitMix algorithm). Besides giving values, it can be
+ * split into a new, independent one, which gives values of its own. Splitting is what makes it useful for generating expressions in parallel: every subexpression is given its own
+ * split, made in a fixed order, so that the expression depends only on the seed and not on which thread generated which part of it or when. One of these must not be used by more
+ * than one thread at a time, but splits can be handed to other threads freely.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public final class SplittableRandomParallel
+{
+	/**
+	 * The amount that the seed is increased by, unless it was split off with another.
+	 */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * Where new seeds come from when none is given.
+	 */
+	private static final AtomicLong SEEDS = new AtomicLong(mix64(System.currentTimeMillis()) ^ mix64(System.nanoTime()));
+
+	/**
+	 * The current seed, which is increased by <code>gamma</code> for every value.
+	 */
+	private long seed;
+
+	/**
+	 * The amount that the seed is increased by - always odd.
+	 */
+	private final long gamma;
+
+	/**
+	 * A constructor that accepts a seed. Two of these that are made with the same seed give the same values and make the same splits.
+	 * 
+	 * @param s
+	 *             The seed.
+	 */
+	public SplittableRandomParallel(long s)
+	{
+		this(s, GOLDEN_GAMMA);
+	}
+
+	/**
+	 * A constructor that is used for splitting.
+	 * 
+	 * @param s
+	 *             The seed.
+	 * @param g
+	 *             The amount that the seed is increased by - it must be odd.
+	 */
+	private SplittableRandomParallel(long s, long g)
+	{
+		seed = s;
+		gamma = g;
+	}
+
+	/**
+	 * Makes up a new seed that is very unlikely to have been made up before, for when no seed is given. It should be recorded if the values that it gives might need to be repeated.
+	 * 
+	 * @return A long that can be used as a seed.
+	 */
+	public static long newSeed()
+	{
+		return mix64(SEEDS.getAndAdd(2 * GOLDEN_GAMMA));
+	}
+
+	/**
+	 * Gives a random long.
+	 * 
+	 * @return A long, with every value equally likely.
+	 */
+	public long nextLong()
+	{
+		return mix64(seed += gamma);
+	}
+
+	/**
+	 * Gives a random integer that is less than a bound.
+	 * 
+	 * @param bound
+	 *             An integer greater than 0.
+	 * @return An integer between [0, bound), with every value equally likely.
+	 */
+	public int nextInt(int bound)
+	{
+		if(bound <= 0)
+		{
+			throw new IllegalArgumentException("The bound must be greater than 0.");
+		}
+
+		int r = mix32(seed += gamma);
+		int m = bound - 1;
+		if((bound & m) == 0)
+		{
+			return r & m;
+		}
+
+		/* Tries again whenever r falls in the incomplete range at the top, which would make some values more likely than others. */
+		int u = r >>> 1;
+		while(u + m - (r = u % bound) < 0)
+		{
+			u = mix32(seed += gamma) >>> 1;
+		}
+		return r;
+	}
+
+	/**
+	 * Gives a random boolean.
+	 * 
+	 * @return True or false, each equally likely.
+	 */
+	public boolean nextBoolean()
+	{
+		return mix32(seed += gamma) < 0;
+	}
+
+	/**
+	 * Splits off a new one of these, which gives values that have nothing to do with the values of this one. The split depends only on how many values this one has given and split
+	 * off before it.
+	 * 
+	 * @return A new <code>SplittableRandomParallel</code>.
+	 */
+	public SplittableRandomParallel split()
+	{
+		return new SplittableRandomParallel(nextLong(), mixGamma(seed += gamma));
+	}
+
+	/**
+	 * Scrambles the bits of a long.
+	 * 
+	 * @param z
+	 *             The long.
+	 * @return A long whose bits each depend on all of the bits of <code>z</code>.
+	 */
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Scrambles the bits of a long into an integer.
+	 * 
+	 * @param z
+	 *             The long.
+	 * @return An integer whose bits each depend on all of the bits of <code>z</code>.
+	 */
+	private static int mix32(long z)
+	{
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	/**
+	 * Scrambles the bits of a long into an amount to increase a seed by, which must be odd and should not have too regular a pattern of bits.
+	 * 
+	 * @param z
+	 *             The long.
+	 * @return An odd long.
+	 */
+	private static long mixGamma(long z)
+	{
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		return (Long.bitCount(z ^ (z >>> 1)) < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.expression;
+
+/**
+ * TrigonometryParallel works out sin(pi * v) and cos(pi * v), which is what every <code>Sin</code> and <code>Cos</code> expression does and what most of the time spent evaluating an
+ * expression goes into. Since v is always between [-1.0, 1.0] (every expression gives a value in that range), these do not need the general purpose argument reduction of
+ * <code>Math.sin</code> and <code>Math.cos</code>, so faster but less precise ways of working them out are available as well. It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public final class TrigonometryParallel
+{
+	/**
+	 * A list of the ways that sin(pi * v) and cos(pi * v) can be worked out.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	public enum Precision
+	{
+		/**
+		 * Uses <code>Math.sin</code> and <code>Math.cos</code> - the results are exactly those that the program has always given.
+		 */
+		EXACT(1e-15)
+		{
+			double sinPi(double v)
+			{
+				return Math.sin(Math.PI * v);
+			}
+
+			double cosPi(double v)
+			{
+				return Math.cos(Math.PI * v);
+			}
+
+			void sinPi(double[] row, int length)
+			{
+				for(int i = 0; i < length; i++)
+				{
+					row[i] = Math.sin(Math.PI * row[i]);
+				}
+			}
+
+			void cosPi(double[] row, int length)
+			{
+				for(int i = 0; i < length; i++)
+				{
+					row[i] = Math.cos(Math.PI * row[i]);
+				}
+			}
+		},
+
+		/**
+		 * Uses a polynomial that is within about 1e-13 of the exact value.
+		 */
+		POLYNOMIAL(1e-12)
+		{
+			double sinPi(double v)
+			{
+				return polynomialSinPi(v);
+			}
+
+			double cosPi(double v)
+			{
+				return polynomialCosPi(v);
+			}
+
+			void sinPi(double[] row, int length)
+			{
+				for(int i = 0; i < length; i++)
+				{
+					row[i] = polynomialSinPi(row[i]);
+				}
+			}
+
+			void cosPi(double[] row, int length)
+			{
+				for(int i = 0; i < length; i++)
+				{
+					row[i] = polynomialCosPi(row[i]);
+				}
+			}
+		},
+
+		/**
+		 * Looks the value up in a table, interpolating between its entries - this is within about 2e-8 of the exact value, far less than the 2/255 that separates two shades of a
+		 * color.
+		 */
+		TABLE(1e-7)
+		{
+			double sinPi(double v)
+			{
+				return tableSinPi(v);
+			}
+
+			double cosPi(double v)
+			{
+				return tableCosPi(v);
+			}
+
+			void sinPi(double[] row, int length)
+			{
+				for(int i = 0; i < length; i++)
+				{
+					row[i] = tableSinPi(row[i]);
+				}
+			}
+
+			void cosPi(double[] row, int length)
+			{
+				for(int i = 0; i < length; i++)
+				{
+					row[i] = tableCosPi(row[i]);
+				}
+			}
+		};
+
+		/**
+		 * How far the results can be from the exact value, at most - a little more than what each one is within, to be safe.
+		 */
+		private final double error;
+
+		/**
+		 * A constructor.
+		 * 
+		 * @param e
+		 *             How far the results can be from the exact value, at most.
+		 */
+		private Precision(double e)
+		{
+			error = e;
+		}
+
+		/**
+		 * Gets how far the results can be from the exact value, at most.
+		 * 
+		 * @return A small positive double.
+		 */
+		public double getError()
+		{
+			return error;
+		}
+
+		/**
+		 * Works out sin(pi * v).
+		 * 
+		 * @param v
+		 *             A value, usually between [-1.0, 1.0].
+		 * @return A double between [-1.0, 1.0].
+		 */
+		abstract double sinPi(double v);
+
+		/**
+		 * Works out cos(pi * v).
+		 * 
+		 * @param v
+		 *             A value, usually between [-1.0, 1.0].
+		 * @return A double between [-1.0, 1.0].
+		 */
+		abstract double cosPi(double v);
+
+		/**
+		 * Replaces every value, v, in a row with sin(pi * v).
+		 * 
+		 * @param row
+		 *             The values.
+		 * @param length
+		 *             The number of values to replace.
+		 */
+		abstract void sinPi(double[] row, int length);
+
+		/**
+		 * Replaces every value, v, in a row with cos(pi * v).
+		 * 
+		 * @param row
+		 *             The values.
+		 * @param length
+		 *             The number of values to replace.
+		 */
+		abstract void cosPi(double[] row, int length);
+	}
+
+	/**
+	 * The coefficients of the polynomial p such that sin(pi * t) is t * p(t * t) for t between [-0.5, 0.5], fitted at Chebyshev nodes.
+	 */
+	private static final double S0 = 3.141592653589635, S1 = -5.167712779988035, S2 = 2.550164035909779, S3 = -0.5992644339807254, S4 = 0.08214479498396235,
+	          S5 = -0.007364006506969782, S6 = 4.474933934823933E-4;
+
+	/**
+	 * The coefficients of the same polynomial, for working it out with floats.
+	 */
+	private static final float F0 = (float) S0, F1 = (float) S1, F2 = (float) S2, F3 = (float) S3, F4 = (float) S4, F5 = (float) S5, F6 = (float) S6;
+
+	/**
+	 * The number of steps in the table, which covers t between [0.0, 0.5].
+	 */
+	private static final int STEPS = 4096;
+
+	/**
+	 * The values of sin(pi * t) at each step of the table, along with the difference to the next step.
+	 */
+	private static final double[] TABLE = new double[2 * (STEPS + 1)];
+
+	static
+	{
+		for(int i = 0; i <= STEPS; i++)
+		{
+			TABLE[2 * i] = Math.sin(Math.PI * 0.5 * i / STEPS);
+		}
+		for(int i = 0; i < STEPS; i++)
+		{
+			TABLE[2 * i + 1] = TABLE[2 * i + 2] - TABLE[2 * i];
+		}
+	}
+
+	/**
+	 * The way that sin(pi * v) and cos(pi * v) are currently worked out.
+	 */
+	private static volatile Precision precision = Precision.EXACT;
+
+	/**
+	 * This class only has static methods.
+	 */
+	private TrigonometryParallel()
+	{
+	}
+
+	/**
+	 * Gets the way that sin(pi * v) and cos(pi * v) are currently worked out.
+	 * 
+	 * @return The current <code>Precision</code>.
+	 */
+	public static Precision getPrecision()
+	{
+		return precision;
+	}
+
+	/**
+	 * Changes the way that sin(pi * v) and cos(pi * v) are worked out. This should be done before any evaluators are set up - in particular, the bytecode evaluator uses whatever the
+	 * precision was when it was generated.
+	 * 
+	 * @param p
+	 *             The new <code>Precision</code>.
+	 */
+	public static void setPrecision(Precision p)
+	{
+		precision = p;
+	}
+
+	/**
+	 * Works out sin(pi * v) with the current precision.
+	 * 
+	 * @param v
+	 *             A value, usually between [-1.0, 1.0].
+	 * @return A double between [-1.0, 1.0].
+	 */
+	public static double sinPi(double v)
+	{
+		return precision.sinPi(v);
+	}
+
+	/**
+	 * Works out cos(pi * v) with the current precision.
+	 * 
+	 * @param v
+	 *             A value, usually between [-1.0, 1.0].
+	 * @return A double between [-1.0, 1.0].
+	 */
+	public static double cosPi(double v)
+	{
+		return precision.cosPi(v);
+	}
+
+	/**
+	 * Replaces every value, v, in a row with sin(pi * v) with the current precision.
+	 * 
+	 * @param row
+	 *             The values.
+	 * @param length
+	 *             The number of values to replace.
+	 */
+	public static void sinPi(double[] row, int length)
+	{
+		precision.sinPi(row, length);
+	}
+
+	/**
+	 * Replaces every value, v, in a row with cos(pi * v) with the current precision.
+	 * 
+	 * @param row
+	 *             The values.
+	 * @param length
+	 *             The number of values to replace.
+	 */
+	public static void cosPi(double[] row, int length)
+	{
+		precision.cosPi(row, length);
+	}
+
+	/**
+	 * Replaces every value, v, in a row of floats with sin(pi * v), worked out with a polynomial in floats whatever the current precision is - none of them are any more precise than
+	 * a float can hold.
+	 * 
+	 * @param row
+	 *             The values.
+	 * @param length
+	 *             The number of values to replace.
+	 */
+	public static void sinPi(float[] row, int length)
+	{
+		for(int i = 0; i < length; i++)
+		{
+			row[i] = polynomialSinPi(row[i]);
+		}
+	}
+
+	/**
+	 * Replaces every value, v, in a row of floats with cos(pi * v), worked out with a polynomial in floats whatever the current precision is.
+	 * 
+	 * @param row
+	 *             The values.
+	 * @param length
+	 *             The number of values to replace.
+	 */
+	public static void cosPi(float[] row, int length)
+	{
+		for(int i = 0; i < length; i++)
+		{
+			row[i] = polynomialCosPi(row[i]);
+		}
+	}
+
+	/**
+	 * Works out bounds on sin(pi * v), with the current precision, for every v between two values.
+	 * 
+	 * @param low
+	 *             The lowest value of v.
+	 * @param high
+	 *             The highest value of v.
+	 * @param bounds
+	 *             Receives the lowest result in position 0 and the highest in position 1.
+	 */
+	public static void sinPi(double low, double high, double[] bounds)
+	{
+		bound(low, high, 0.5, true, bounds);
+	}
+
+	/**
+	 * Works out bounds on cos(pi * v), with the current precision, for every v between two values.
+	 * 
+	 * @param low
+	 *             The lowest value of v.
+	 * @param high
+	 *             The highest value of v.
+	 * @param bounds
+	 *             Receives the lowest result in position 0 and the highest in position 1.
+	 */
+	public static void cosPi(double low, double high, double[] bounds)
+	{
+		bound(low, high, 0.0, false, bounds);
+	}
+
+	/**
+	 * Works out bounds on sin(pi * v) or cos(pi * v) for every v between two values. Between a peak and a trough, the exact function only ever goes one way, so its values are
+	 * between those at the two ends - and any way of working it out is within <code>getError()</code> of it, so widening by twice that covers whatever the results actually are.
+	 * Where there is a peak or a trough in between (or close enough to one that rounding might matter), 1 or -1 is a bound instead.
+	 * 
+	 * @param low
+	 *             The lowest value of v.
+	 * @param high
+	 *             The highest value of v.
+	 * @param peak
+	 *             Where the first peak at or after 0 is - 0.5 for sin and 0 for cos. Troughs are 1 after each peak, and peaks are 2 apart.
+	 * @param sine
+	 *             Whether the function is sin rather than cos.
+	 * @param bounds
+	 *             Receives the lowest result in position 0 and the highest in position 1.
+	 */
+	private static void bound(double low, double high, double peak, boolean sine, double[] bounds)
+	{
+		Precision p = precision;
+		double lowest = -1, highest = 1;
+		if(Double.isNaN(low) || Double.isNaN(high))// so is every result, and bounds of [-1, 1] would hide that
+		{
+			lowest = highest = Double.NaN;
+		}
+		else if(high - low < 2)
+		{
+			double a = (sine) ? p.sinPi(low) : p.cosPi(low);
+			double b = (sine) ? p.sinPi(high) : p.cosPi(high);
+			lowest = Math.min(a, b);
+			highest = Math.max(a, b);
+
+			double margin = 1e-9;
+			if(peak + 2 * Math.ceil((low - margin - peak) / 2) <= high + margin)// the first peak after low
+			{
+				highest = 1;
+			}
+			if(peak + 1 + 2 * Math.ceil((low - margin - peak - 1) / 2) <= high + margin)// the first trough after low
+			{
+				lowest = -1;
+			}
+		}
+		bounds[0] = lowest - 2 * p.getError();
+		bounds[1] = highest + 2 * p.getError();
+	}
+
+	/**
+	 * Brings a value into [-1.0, 1.0] without changing sin(pi * v) or cos(pi * v), which is only ever needed if the value was not already there.
+	 * 
+	 * @param v
+	 *             A value.
+	 * @return A double between [-1.0, 1.0].
+	 */
+	private static double reduce(double v)
+	{
+		return (v >= -1 && v <= 1) ? v : v - 2 * Math.rint(v * 0.5);
+	}
+
+	/**
+	 * Works out sin(pi * v) with a polynomial.
+	 * 
+	 * @param v
+	 *             A value, usually between [-1.0, 1.0].
+	 * @return A double between [-1.0, 1.0].
+	 */
+	public static double polynomialSinPi(double v)
+	{
+		v = reduce(v);
+
+		/* sin(pi * v) = sin(pi * (1 - v)), which brings v into [-0.5, 0.5] - the subtraction is exact here. */
+		double t = (v > 0.5) ? 1 - v : (v < -0.5) ? -1 - v : v;
+		double t2 = t * t;
+		return t * (S0 + t2 * (S1 + t2 * (S2 + t2 * (S3 + t2 * (S4 + t2 * (S5 + t2 * S6))))));
+	}
+
+	/**
+	 * Works out cos(pi * v) with a polynomial.
+	 * 
+	 * @param v
+	 *             A value, usually between [-1.0, 1.0].
+	 * @return A double between [-1.0, 1.0].
+	 */
+	public static double polynomialCosPi(double v)
+	{
+		/* cos(pi * v) = sin(pi * (0.5 - |v|)), and 0.5 - |v| is already in [-0.5, 0.5]. */
+		double t = 0.5 - Math.abs(reduce(v));
+		double t2 = t * t;
+		return t * (S0 + t2 * (S1 + t2 * (S2 + t2 * (S3 + t2 * (S4 + t2 * (S5 + t2 * S6))))));
+	}
+
+	/**
+	 * Works out sin(pi * v) with a polynomial in floats, which is within about 2e-7 of the exact value.
+	 * 
+	 * @param v
+	 *             A value, usually between [-1.0, 1.0].
+	 * @return A float between [-1.0, 1.0].
+	 */
+	public static float polynomialSinPi(float v)
+	{
+		if(!(v >= -1 && v <= 1))
+		{
+			v -= 2 * (float) Math.rint(v * 0.5f);
+		}
+
+		float t = (v > 0.5f) ? 1 - v : (v < -0.5f) ? -1 - v : v;
+		float t2 = t * t;
+		return t * (F0 + t2 * (F1 + t2 * (F2 + t2 * (F3 + t2 * (F4 + t2 * (F5 + t2 * F6))))));
+	}
+
+	/**
+	 * Works out cos(pi * v) with a polynomial in floats, which is within about 2e-7 of the exact value.
+	 * 
+	 * @param v
+	 *             A value, usually between [-1.0, 1.0].
+	 * @return A float between [-1.0, 1.0].
+	 */
+	public static float polynomialCosPi(float v)
+	{
+		if(!(v >= -1 && v <= 1))
+		{
+			v -= 2 * (float) Math.rint(v * 0.5f);
+		}
+
+		float t = 0.5f - Math.abs(v);
+		float t2 = t * t;
+		return t * (F0 + t2 * (F1 + t2 * (F2 + t2 * (F3 + t2 * (F4 + t2 * (F5 + t2 * F6))))));
+	}
+
+	/**
+	 * Works out sin(pi * v) with the table.
+	 * 
+	 * @param v
+	 *             A value, usually between [-1.0, 1.0].
+	 * @return A double between [-1.0, 1.0].
+	 */
+	public static double tableSinPi(double v)
+	{
+		v = reduce(v);
+
+		double t = (v > 0.5) ? 1 - v : (v < -0.5) ? -1 - v : v;
+		double value = lookUp(Math.abs(t));
+		return (t < 0) ? -value : value;
+	}
+
+	/**
+	 * Works out cos(pi * v) with the table.
+	 * 
+	 * @param v
+	 *             A value, usually between [-1.0, 1.0].
+	 * @return A double between [-1.0, 1.0].
+	 */
+	public static double tableCosPi(double v)
+	{
+		double t = 0.5 - Math.abs(reduce(v));
+		double value = lookUp(Math.abs(t));
+		return (t < 0) ? -value : value;
+	}
+
+	/**
+	 * Interpolates sin(pi * t) from the table.
+	 * 
+	 * @param t
+	 *             A value between [0.0, 0.5].
+	 * @return A double between [0.0, 1.0].
+	 */
+	private static double lookUp(double t)
+	{
+		double position = t * (2 * STEPS);
+		int i = Math.min((int) position, STEPS - 1);
+		return TABLE[2 * i] + (position - i) * TABLE[2 * i + 1];
+	}
+}
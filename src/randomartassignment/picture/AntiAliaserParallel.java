@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+
+/**
+ * AntiAliaserParallel smooths out the jagged edges and speckles of a finished picture. Rather than making the whole picture several times larger and shrinking it back down, it only
+ * looks closer at the pixels that differ from one of their neighbors by more than a few shades, working out the expressions at a grid of points spread over each of them and giving
+ * it the average. Most of a picture is smooth, so only a small part of it is looked at more closely - and however busy the picture is, the number of extra points is capped, with the
+ * pixels that differ the most going first. Which pixels are looked at is decided from the picture as it was, so the result does not depend on the number of threads. It has been
+ * designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class AntiAliaserParallel
+{
+	/**
+	 * By how many shades a pixel has to differ from one of its neighbors to be looked at more closely.
+	 */
+	static final int THRESHOLD = 8;
+
+	/**
+	 * The most extra points that are worked out for each pixel of the picture, on average.
+	 */
+	static final double BUDGET = 4.0;
+
+	/**
+	 * The expressions for each channel of the picture.
+	 */
+	private final ExpressionGeneratorParallel[] e;
+
+	/**
+	 * The width of the picture.
+	 */
+	private final int width;
+
+	/**
+	 * The height of the picture.
+	 */
+	private final int height;
+
+	/**
+	 * The color values of the picture, row by row.
+	 */
+	private final byte[] pixels;
+
+	/**
+	 * The number of points along each side of a pixel that is looked at more closely.
+	 */
+	private final int samples;
+
+	/**
+	 * The number of threads that look at pixels.
+	 */
+	private final int threads;
+
+	/**
+	 * Where the threads that look at pixels come from. It is not shut down, so that it can be used again for the next picture.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * Where the time that was taken is recorded.
+	 */
+	private final RenderMetricsParallel metrics;
+
+	/**
+	 * A constructor.
+	 * 
+	 * @param generators
+	 *             The expressions for each channel of the picture - one for grayscale, three (red, green, blue) for color.
+	 * @param w
+	 *             The width of the picture.
+	 * @param h
+	 *             The height of the picture.
+	 * @param p
+	 *             The color values of the picture, row by row, which are smoothed where they are.
+	 * @param n
+	 *             The number of points along each side of a pixel that is looked at more closely, so that n * n points are worked out for it.
+	 * @param t
+	 *             The number of threads that look at pixels.
+	 * @param pool
+	 *             Where the threads that look at pixels come from - it should have at least <code>t</code> threads.
+	 * @param m
+	 *             Where the time that was taken is recorded.
+	 */
+	AntiAliaserParallel(ExpressionGeneratorParallel[] generators, int w, int h, byte[] p, int n, int t, ExecutorService pool, RenderMetricsParallel m)
+	{
+		e = generators;
+		width = w;
+		height = h;
+		pixels = p;
+		samples = Math.max(1, n);
+		threads = Math.max(1, t);
+		this.pool = pool;
+		metrics = m;
+	}
+
+	/**
+	 * Smooths the picture, looking more closely at the pixels that differ from their neighbors by more than <code>THRESHOLD</code> shades, as long as no more than
+	 * <code>BUDGET</code> extra points per pixel are worked out.
+	 * 
+	 * @return The number of pixels that were looked at more closely.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while waiting for the pixels.
+	 */
+	int smooth() throws InterruptedException
+	{
+		return smooth(THRESHOLD, (long) (BUDGET * width * height));
+	}
+
+	/**
+	 * Smooths the picture, looking more closely at the pixels that differ from their neighbors by more than a number of shades.
+	 * 
+	 * @param threshold
+	 *             By how many shades a pixel has to differ from one of its neighbors to be looked at more closely.
+	 * @param budget
+	 *             The most extra points that are worked out for the whole picture.
+	 * @return The number of pixels that were looked at more closely.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while waiting for the pixels.
+	 */
+	int smooth(int threshold, long budget) throws InterruptedException
+	{
+		final byte[] contrast = new byte[width * height];// by how many shades each pixel differs from its neighbors, at most
+		int[] histogram = new int[256];
+		for(int j = 0; j < height; j++)
+		{
+			for(int i = 0; i < width; i++)
+			{
+				int c = contrast(j, i);
+				contrast[j * width + i] = (byte) c;
+				histogram[c]++;
+			}
+		}
+
+		/* The pixels that differ the most are looked at first, so the cutoff is raised until all of the pixels above it fit into the budget. */
+		long allowed = budget / ((long) samples * samples);
+		int cutoff = Math.max(0, threshold) + 1;
+		long chosen = 0;
+		for(int c = cutoff; c < 256; c++)
+		{
+			chosen += histogram[c];
+		}
+		while(cutoff < 256 && chosen > allowed)
+		{
+			chosen -= histogram[cutoff++];
+		}
+		if(chosen == 0)
+		{
+			return 0;
+		}
+
+		final int lowest = cutoff;
+		final int channels = e.length;
+		final double xinterval = 2.0 / (width - 1);// the minus one is so that the end result is [-1,1] and not [-1,1)
+		final double yinterval = 2.0 / (height - 1);
+		final AtomicInteger next = new AtomicInteger();
+
+		List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+		for(int t = 0; t < threads; t++)
+		{
+			/* An anonymous inner class that keeps looking at the chosen pixels of rows until there are none left. The points are spread evenly over the pixel, around where it was worked out. */
+			workers.add(new Callable<Void>()
+				{
+					public Void call()
+					{
+						int j;
+						while((j = next.getAndIncrement()) < height)
+						{
+							long before = System.nanoTime();
+							for(int i = 0; i < width; i++)
+							{
+								if((contrast[j * width + i] & 0xff) < lowest)
+								{
+									continue;
+								}
+
+								double x = i * xinterval - 1.0;
+								double y = j * yinterval - 1.0;
+								for(int k = 0; k < channels; k++)
+								{
+									double sum = 0;
+									for(int b = 0; b < samples; b++)
+									{
+										double dy = ((b + 0.5) / samples - 0.5) * yinterval;
+										for(int a = 0; a < samples; a++)
+										{
+											sum += e[k].evaluateExpression(x + ((a + 0.5) / samples - 0.5) * xinterval, y + dy);
+										}
+									}
+									pixels[(j * width + i) * channels + k] = (byte) DriverParallel.quantize(sum / (samples * samples));
+								}
+							}
+							metrics.addEvaluation(System.nanoTime() - before);
+						}
+						return null;
+					}
+				});
+		}
+
+		try
+		{
+			for(Future<Void> f : pool.invokeAll(workers))
+			{
+				f.get();
+			}
+		}
+		catch(ExecutionException ee)
+		{
+			if(ee.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) ee.getCause();
+			}
+			throw (Error) ee.getCause();
+		}
+		return (int) chosen;
+	}
+
+	/**
+	 * Works out by how many shades a pixel differs from the neighbors to its left, right, top, and bottom, in whichever channel it differs the most.
+	 * 
+	 * @param j
+	 *             The row of the pixel.
+	 * @param i
+	 *             The column of the pixel.
+	 * @return An integer between [0, 255].
+	 */
+	private int contrast(int j, int i)
+	{
+		int channels = e.length;
+		int at = (j * width + i) * channels;
+		int most = 0;
+		for(int k = 0; k < channels; k++)
+		{
+			int v = pixels[at + k] & 0xff;
+			if(i > 0)
+			{
+				most = Math.max(most, Math.abs(v - (pixels[at - channels + k] & 0xff)));
+			}
+			if(i < width - 1)
+			{
+				most = Math.max(most, Math.abs(v - (pixels[at + channels + k] & 0xff)));
+			}
+			if(j > 0)
+			{
+				most = Math.max(most, Math.abs(v - (pixels[at - width * channels + k] & 0xff)));
+			}
+			if(j < height - 1)
+			{
+				most = Math.max(most, Math.abs(v - (pixels[at + width * channels + k] & 0xff)));
+			}
+		}
+		return most;
+	}
+}
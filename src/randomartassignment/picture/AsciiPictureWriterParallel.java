@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+
+/**
+ * AsciiPictureWriterParallel saves a picture as a PGM (grayscale) or PPM (color) file that is filled with human readable values, with the equations that made it at the end. These are
+ * used because of that ease of creation and reading. Since these files are very large, it is advised that you convert them into something like a JP(E)G.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class AsciiPictureWriterParallel implements PictureWriterParallel
+{
+	/**
+	 * Used to write to the file.
+	 */
+	private final PrintWriter printer;
+
+	/**
+	 * The number of color values in a row.
+	 */
+	private final int rowLength;
+
+	/**
+	 * The expressions whose equations are written at the end of the file.
+	 */
+	private final ExpressionGeneratorParallel[] equations;
+
+	/**
+	 * A constructor that creates the file and writes its header.
+	 * 
+	 * @param path
+	 *             The path of the file.
+	 * @param width
+	 *             The width of the picture.
+	 * @param height
+	 *             The height of the picture.
+	 * @param channels
+	 *             1 for a grayscale picture, 3 for a color one.
+	 * @param eq
+	 *             The expressions that made the picture, one for each channel.
+	 * @throws IOException
+	 *              If the file could not be created.
+	 */
+	AsciiPictureWriterParallel(String path, int width, int height, int channels, ExpressionGeneratorParallel[] eq) throws IOException
+	{
+		printer = new PrintWriter(new BufferedWriter(new FileWriter(path)));
+		rowLength = width * channels;
+		equations = eq;
+
+		printer.println((channels == 1) ? "P2" : "P3");
+		printer.println(width + " " + height);
+		printer.println(255);
+	}
+
+	/**
+	 * Saves some rows of the picture, one line per row.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#writeRows(int, byte[], int, int)
+	 */
+	@Override
+	public void writeRows(int firstRow, byte[] samples, int offset, int rows)
+	{
+		for(int j = 0; j < rows; j++)
+		{
+			for(int i = offset + j * rowLength; i < offset + (j + 1) * rowLength; i++)
+			{
+				printer.print((samples[i] & 0xff) + " ");
+			}
+			printer.println();
+		}
+	}
+
+	/**
+	 * The rows of the file are written one after another, so they must be saved in order.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#allowsAnyOrder()
+	 */
+	@Override
+	public boolean allowsAnyOrder()
+	{
+		return false;
+	}
+
+	/**
+	 * Writes the equations at the end of the file, straight from the expressions so that they never have to be kept as text, and closes it.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		for(ExpressionGeneratorParallel e : equations)
+		{
+			printer.print("# ");
+			e.appendTo(printer);
+			printer.println();
+		}
+
+		printer.flush();
+		printer.close();
+		if(printer.checkError())
+		{
+			throw new IOException("The picture could not be written.");
+		}
+	}
+}
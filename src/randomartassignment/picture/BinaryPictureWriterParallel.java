@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+
+/**
+ * BinaryPictureWriterParallel saves a picture as a binary PGM (grayscale) or PPM (color) file, which holds a single byte per color value instead of up to four characters, with the
+ * equations that made it as comments in the header. Since every row is the same size and the header is written first, the file is made its full size up front and each row is written
+ * straight to where it belongs, so rows may be saved in any order by any number of threads at once. It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class BinaryPictureWriterParallel implements PictureWriterParallel
+{
+	/**
+	 * The file.
+	 */
+	private final RandomAccessFile file;
+
+	/**
+	 * Used to write to the file - writing at a given position does not change any shared state, so threads can write at the same time.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The number of color values in a row.
+	 */
+	private final int rowLength;
+
+	/**
+	 * The size of the header, which is where the first row starts.
+	 */
+	private final long headerLength;
+
+	/**
+	 * A constructor that creates the file, writes its header, and makes it the size that it will be once the picture has been saved.
+	 * 
+	 * @param path
+	 *             The path of the file.
+	 * @param width
+	 *             The width of the picture.
+	 * @param height
+	 *             The height of the picture.
+	 * @param channels
+	 *             1 for a grayscale picture, 3 for a color one.
+	 * @param eq
+	 *             The expressions that made the picture, one for each channel.
+	 * @throws IOException
+	 *              If the file could not be created.
+	 */
+	BinaryPictureWriterParallel(String path, int width, int height, int channels, ExpressionGeneratorParallel[] eq) throws IOException
+	{
+		rowLength = width * channels;
+
+		/* The length of the header is worked out ahead of time, so that the equations can be written straight from the expressions instead of being kept as text. */
+		String start = ((channels == 1) ? "P5" : "P6") + "\n";
+		String end = width + " " + height + "\n" + 255 + "\n";
+		long length = start.length() + end.length();
+		for(ExpressionGeneratorParallel e : eq)
+		{
+			length += e.getTextLength() + 3;// "# " and a new line
+		}
+		headerLength = length;
+
+		file = new RandomAccessFile(path, "rw");
+		try
+		{
+			file.setLength(0);
+			channel = file.getChannel();
+
+			/* The writer is not closed, since that would close the channel as well. */
+			Writer header = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), Charset.forName("US-ASCII")));
+			header.write(start);
+			for(ExpressionGeneratorParallel e : eq)
+			{
+				header.write("# ");
+				e.appendTo(header);
+				header.write('\n');
+			}
+			header.write(end);
+			header.flush();
+			if(channel.position() != headerLength)
+			{
+				throw new IOException("The header of the picture was not the length that it should have been.");
+			}
+			file.setLength(headerLength + (long) rowLength * height);
+		}
+		catch(IOException ee)
+		{
+			file.close();
+			throw ee;
+		}
+	}
+
+	/**
+	 * Saves some rows of the picture at their place in the file.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#writeRows(int, byte[], int, int)
+	 */
+	@Override
+	public void writeRows(int firstRow, byte[] samples, int offset, int rows) throws IOException
+	{
+		ByteBuffer bytes = ByteBuffer.wrap(samples, offset, rows * rowLength);
+		long position = headerLength + (long) firstRow * rowLength - offset;// so that the position of the buffer can be added to it
+		while(bytes.hasRemaining())
+		{
+			channel.write(bytes, position + bytes.position());
+		}
+	}
+
+	/**
+	 * Every row has its own place in the file, so they can be saved in any order.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#allowsAnyOrder()
+	 */
+	@Override
+	public boolean allowsAnyOrder()
+	{
+		return true;
+	}
+
+	/**
+	 * Closes the file.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
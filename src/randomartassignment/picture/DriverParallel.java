@@ -4,16 +4,45 @@
 
 package randomartassignment.picture;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
+import randomartassignment.expression.ExpressionCodecParallel;
 import randomartassignment.expression.ExpressionGeneratorParallel;
+import randomartassignment.expression.ExpressionGeneratorParallel.EvaluatorType;
+import randomartassignment.expression.ExpressionGeneratorParallel.StorageType;
+import randomartassignment.expression.ExpressionParserParallel;
+import randomartassignment.expression.SplittableRandomParallel;
+import randomartassignment.expression.TrigonometryParallel;
+import randomartassignment.expression.TrigonometryParallel.Precision;
 
 /**
  * DriverParallel creates images based off of randomly generated mathematical expressions. It has been designed to work in a parallel fashion.
@@ -37,19 +66,29 @@ public final class DriverParallel
 	private static ExpressionGeneratorParallel[] e;
 
 	/**
-	 * The raw values generated by the expressions - its values are between [-1.0, 1.0].
+	 * The color values of the picture, a row after another, with the channels of each pixel next to each other - its values are between [0, 255].
 	 */
-	private static double[][][] raw;
+	private static byte[] pixels;
 
 	/**
-	 * The actual color values when converted from the raw values - its values are between [0, 255].
+	 * The number of rows in each band when saving a whole picture in bands.
 	 */
-	private static int[][][] colorvals;
+	private static final int SAVE_BAND = 64;
 
 	/**
-	 * Used for showing how much work is left.
+	 * The most color values that a picture can have to be made all at once, since they are kept in a single array - larger pictures have to be made in bands.
 	 */
-	private static volatile int counter;
+	private static final long MAX_SAMPLES = Integer.MAX_VALUE - 8;
+
+	/**
+	 * How often, in milliseconds, the time and how much work is done are printed out.
+	 */
+	private static final int REPORT_INTERVAL = 1000;
+
+	/**
+	 * Used for showing how much work is left and how long each part of the work took.
+	 */
+	private static RenderMetricsParallel metrics;
 
 	/**
 	 * A value used to help determine how long the program has been running.
@@ -61,17 +100,287 @@ public final class DriverParallel
 	 */
 	private static int milli, sec, min, hr;
 
+	/**
+	 * The threads that make whole pictures - they are kept from one picture to the next.
+	 */
+	private static ForkJoinPool rowPool;
+
+	/**
+	 * The threads that make pictures in bands.
+	 */
+	private static ExecutorService bandPool;
+
+	/**
+	 * The number of threads in <code>bandPool</code>.
+	 */
+	private static int bandThreads;
+
 	/**
 	 * Used to tell when the program is fully finished.
 	 */
-	private static boolean notFinished;
+	private static volatile boolean notFinished;
+
+	/**
+	 * Converts a raw value into a color value.
+	 * 
+	 * @param raw
+	 *             A value between [-1.0, 1.0] that was generated by an expression.
+	 * @return An integer between [0, 255].
+	 */
+	static int quantize(double raw)
+	{
+		return (int) ((raw + 1.0) * 255 / 2.0);
+	}
 
 	/**
-	 * Increments the counter value to tell when a thread has finished its assigned work.
+	 * Makes a row of the picture, evaluating every channel's expression and converting the results into color values straight away, so that the raw values only ever take up a single
+	 * row for each channel. The channels are evaluated together if they were compiled together (see <code>ExpressionGeneratorParallel.setEvaluator</code>).
+	 * 
+	 * @param generators
+	 *             The expressions for each channel of the picture.
+	 * @param j
+	 *             The number of the row.
+	 * @param xinterval
+	 *             The distance between the x-positions of neighboring pixels.
+	 * @param yinterval
+	 *             The distance between the y-positions of neighboring rows.
+	 * @param raw
+	 *             Somewhere to put the raw values - a row for each channel, as long as the width of the picture.
+	 * @param out
+	 *             Receives the color values of the row, with the channels of each pixel next to each other.
+	 * @param offset
+	 *             Where in <code>out</code> the row starts.
+	 * @param m
+	 *             Where the row and the time that it took are recorded.
 	 */
-	private static synchronized void increaseCounter()
+	static void makeRow(ExpressionGeneratorParallel[] generators, int j, double xinterval, double yinterval, double[][] raw, byte[] out, int offset, RenderMetricsParallel m)
 	{
-		counter++;
+		int channels = generators.length;
+		int width = raw[0].length;
+		long before = System.nanoTime();
+		// converts the expressions into values between [-1.0, 1.0], the intervals represent the "distance" between pixels
+		ExpressionGeneratorParallel.evaluateRows(generators, j * yinterval - 1.0, -1.0, xinterval, raw);
+		long between = System.nanoTime();
+		for(int i = 0, s = offset; i < width; i++)
+		{
+			for(int k = 0; k < channels; k++)
+			{
+				out[s++] = (byte) quantize(raw[k][i]);
+			}
+		}
+		m.addEvaluation(between - before);
+		m.addQuantization(System.nanoTime() - between);
+		m.addRow();
+	}
+
+	/**
+	 * Saves the whole picture, in bands by different threads at the same time if the writer allows it, or all at once otherwise.
+	 * 
+	 * @param writer
+	 *             Where the picture is saved. It is not closed.
+	 * @param rowLength
+	 *             The number of color values in a row.
+	 * @param height
+	 *             The height of the picture.
+	 * @param pool
+	 *             The threads that save the bands.
+	 * @throws IOException
+	 *              If the picture could not be saved.
+	 */
+	private static void save(PictureWriterParallel writer, int rowLength, int height, ExecutorService pool) throws IOException
+	{
+		if(writer.allowsAnyOrder())
+		{
+			saveInBands(writer, rowLength, height, pool);
+		}
+		else
+		{
+			long before = System.nanoTime();
+			writer.writeRows(0, pixels, 0, height);
+			metrics.addWrite(System.nanoTime() - before);
+		}
+	}
+
+	/**
+	 * Makes the picture coarse to fine, saving a preview after every level but the last. Pressing CTRL+C while it is being made cancels it at the next row instead of stopping the
+	 * program straight away, so that the last preview is left whole.
+	 * 
+	 * @param progressive
+	 *             What makes the picture, into <code>pixels</code>.
+	 * @param width
+	 *             The width of the picture.
+	 * @param height
+	 *             The height of the picture.
+	 * @param pool
+	 *             The threads that save the previews.
+	 * @param preview
+	 *             The path of the file that the previews are saved to, each one replacing the one before it.
+	 * @param format
+	 *             The kind of file that the previews are saved as.
+	 * @param verbose
+	 *             Whether or not to print out each level as it is finished.
+	 * @return True if the picture was finished, false if it was cancelled - in which case the last preview is left where it is.
+	 * @throws IOException
+	 *              If a preview could not be saved.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while the picture was being made.
+	 */
+	private static boolean makeProgressively(final ProgressiveRendererParallel progressive, int width, int height, ExecutorService pool, String preview, PictureFormatParallel format,
+	          boolean verbose) throws IOException, InterruptedException
+	{
+		final boolean[] finished = new boolean[1];
+
+		/* An anonymous inner class that cancels the picture when the program is told to stop, and then waits for the level that was being made to be given up. */
+		Thread canceller = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					progressive.cancel();
+					synchronized(finished)
+					{
+						while(!finished[0])
+						{
+							try
+							{
+								finished.wait();
+							}
+							catch(InterruptedException ee)
+							{
+								return;
+							}
+						}
+					}
+				}
+			});
+		Runtime.getRuntime().addShutdownHook(canceller);
+
+		try
+		{
+			while(progressive.hasNextLevel())
+			{
+				int step = progressive.nextLevel();
+				if(step == 1 || progressive.isCancelled())
+				{
+					break;
+				}
+
+				PictureWriterParallel writer = format.create(preview, width, height, e.length, e);
+				save(writer, width * e.length, height, pool);
+				writer.close();
+				if(verbose)
+				{
+					System.out.println("Saved the preview with one pixel out of every " + step + " by " + step + " square...");
+				}
+			}
+			if(progressive.isCancelled())
+			{
+				/* This is printed before the hook is let go, since the program stops as soon as it is. */
+				System.out.println("Stopped making the picture - the last preview is in " + preview);
+				return false;
+			}
+			return true;
+		}
+		finally
+		{
+			synchronized(finished)
+			{
+				finished[0] = true;
+				finished.notifyAll();
+			}
+			try
+			{
+				Runtime.getRuntime().removeShutdownHook(canceller);
+			}
+			catch(IllegalStateException ee)
+			{
+				// the JVM is already stopping, and the hook is what is letting it
+			}
+		}
+	}
+
+	/**
+	 * Saves the picture a band of rows at a time, with several bands being saved at once - some kinds of files, such as PNG files, take a while to save, but allow bands to be saved
+	 * in any order. Each band is saved straight from where it is in the picture, without being copied.
+	 * 
+	 * @param writer
+	 *             Where the picture is saved.
+	 * @param rowLength
+	 *             The number of color values in a row.
+	 * @param height
+	 *             The height of the picture.
+	 * @param pool
+	 *             The threads that save bands.
+	 * @throws IOException
+	 *              If the writer could not save a band.
+	 */
+	private static void saveInBands(final PictureWriterParallel writer, final int rowLength, final int height, ExecutorService pool) throws IOException
+	{
+		List<Future<Void>> saved = new ArrayList<Future<Void>>();
+		for(int j = 0; j < height; j += SAVE_BAND)
+		{
+			/* An anonymous inner class that saves a band of the picture by itself. */
+			final int first = j;
+			final int rows = Math.min(SAVE_BAND, height - j);
+			saved.add(pool.submit(new Callable<Void>()
+				{
+					public Void call() throws IOException
+					{
+						long before = System.nanoTime();
+						writer.writeRows(first, pixels, first * rowLength, rows);
+						metrics.addWrite(System.nanoTime() - before);
+						return null;
+					}
+				}));
+		}
+		try
+		{
+			for(Future<Void> f : saved)
+			{
+				f.get();
+			}
+		}
+		catch(InterruptedException ee)
+		{
+			throw new InterruptedIOException("Interrupted while saving the picture.");
+		}
+		catch(ExecutionException ee)
+		{
+			if(ee.getCause() instanceof IOException)
+			{
+				throw (IOException) ee.getCause();
+			}
+			else if(ee.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) ee.getCause();
+			}
+			throw (Error) ee.getCause();
+		}
+	}
+
+	/**
+	 * Writes out the metrics of the picture as a line of JSON.
+	 * 
+	 * @param location
+	 *             The path of the file to write them to, or "-" to print them out instead. If the file already exists, the line is added to the end of it, so that the metrics of many
+	 *             pictures can be kept in one file.
+	 * @throws IOException
+	 *              If the file could not be written to.
+	 */
+	private static void writeMetrics(String location) throws IOException
+	{
+		if("-".equals(location))
+		{
+			System.out.println(metrics.toJson());
+			return;
+		}
+
+		PrintWriter printer = new PrintWriter(new BufferedWriter(new FileWriter(location, true)));
+		printer.println(metrics.toJson());
+		printer.close();
+		if(printer.checkError())
+		{
+			throw new IOException("The metrics could not be written to " + location + ".");
+		}
 	}
 
 	/**
@@ -92,31 +401,458 @@ public final class DriverParallel
 	}
 
 	/**
-	 * A method that states which portion of the image is currently being worked on for use in "debugging" output.
+	 * Creates an image based off of randomly generated mathematical statements.
 	 * 
-	 * @param matrixNum
-	 *             A number that states which matrix is currently being worked on, since each matrix represents a color, it can be used to determine what is being worked on.
-	 * @param grayscale
-	 *             A boolean stating if the grayscale flag is on.
-	 * @return A string representing which portion of the image is currently being worked on by a thread.
+	 * @param args
+	 *             "-d 'int'": Changes the depth. "-w 'int'": Changes the width of the image. "-h 'int'": Changes the height of the image. "-l 'String'": Changes the location where the
+	 *             image is saved (make sure that the directory ends with a /). "-n 'String'": Changes the name of the image (make sure that the name starts with a /). "-c": Makes a color
+	 *             image as opposed to a grayscale one. "-v": Prints out a lot of debugging statements, particularly ones that determine the percentage of the work completed and the total
+	 *             time that the application has been running. "-e 'String'": Changes how the expressions are evaluated (one of the names in
+	 *             <code>ExpressionGeneratorParallel.EvaluatorType</code>, such as "tree", "postfix", "separable", "bytecode", or "float"). "-r": Reuses identical subexpressions instead of
+	 *             generating them over and over again, which saves memory and, with the postfix evaluator, time. "-p 'String'": Changes how sines and cosines are worked out (one of the
+	 *             names in <code>TrigonometryParallel.Precision</code>: "exact", "polynomial", or "table"). "-g": Uses the expression of "Grayscale check.png" instead of a random one, so
+	 *             that the picture can be compared against it. "-b 'int'": Makes the picture in bands of that many rows, saving each band as soon as it is finished, so that the whole
+	 *             picture never has to be in memory at once. "-o 'String'": Changes the kind of file that the picture is saved as (one of the names in
+	 *             <code>PictureFormatParallel</code>, "ascii", "binary", "png", "jpeg", or "bmp"). "-j 'int'": Changes the number of threads
+	 *             that make the picture, which is the number of processors by default. "-m 'String'": Writes out how long each part of making the picture took,
+	 *             along with other metrics, as a line of JSON that is added to the end of the given file ("-" prints it out instead). "-s 'long'":
+	 *             Generates the expressions from the given seed, so that the same depth and seed always make the same picture. "-t 'String'": Changes how the expressions are kept
+	 *             in memory (one of the names in <code>ExpressionGeneratorParallel.StorageType</code>: "objects", "arrays", or "offheap") - the arrays allow much larger depths, but are
+	 *             always worked out in doubles, so "-e float" cannot be used with them. "-f 'String'": Makes the picture from the expressions in the given file (see
+	 *             <code>readExpressions</code>) instead of generating them. "-k 'String'": Saves the expressions in the given file in the binary form of
+	 *             <code>ExpressionCodecParallel</code>, so that "-f" can read them back. "-q 'int'": Makes the picture coarse to fine, starting with every pixel whose row and column are
+	 *             multiples of the given number and halving it until every pixel is made, saving a preview after each level (see <code>ProgressiveRendererParallel</code>). "-a 'int'":
+	 *             Smooths out the edges of the picture by working out a grid of that many by that many points over each pixel that differs sharply from its neighbors (see
+	 *             <code>AntiAliaserParallel</code>). "-z 'int'": Fills in the flat parts of the picture without working them out, trying tiles that many pixels on a side and splitting
+	 *             them into quarters wherever they are not flat (see <code>QuadtreeRendererParallel</code>). "-x 'int'": Instead of making a picture, works out the pictures of that many
+	 *             seeds in a row, starting from the one given with "-s", both in doubles and in floats, and prints how many pixels differ (see <code>FloatValidatorParallel</code>). "-i
+	 *             'String'": Makes one picture for every line of the given file ("-" reads them from the standard input instead), one after another, each line holding any of these
+	 *             arguments - the rest of the arguments apply to every picture unless a line changes them. "-u 'int'": Serves pictures over HTTP on the given port of this computer (see
+	 *             <code>RenderServiceParallel</code>) instead of making one - only "-j" and "-l", which then gives the directory that the pictures are kept in, may be given with it.
 	 */
-	private static String getColor(int matrixNum, boolean grayscale)
+	public static void main(String[] args)
 	{
-		if(grayscale)
-			return "gray";
-		else
-			switch(matrixNum)
-			{
-				case 0:
-					return "red";
-				case 1:
-					return "green";
-				case 2:
-					return "blue";
+		String jobs = null;// where the lines of a batch are read from, if anywhere
+		int port = -1;// the port that pictures are served on, if they are
+		List<String> defaults = new ArrayList<String>();
+		for(int x = 0; x < args.length; x++)
+		{
+			switch(args[x])
+			{
+				case "-i":
+				{
+					if(x + 1 < args.length)
+					{
+						jobs = args[++x];
+					}
+					break;
+				}
+				case "-u":
+				{
+					int u;
+					try
+					{
+						u = Integer.parseInt(args[x + 1]);
+						x++;
+					}
+					catch(NumberFormatException ee)
+					{
+						u = port;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						u = port;
+					}
+					port = u;
+					break;
+				}
 				default:
-					throw new Error(
-					          "Unexpected number of matrices - implies either some sort of unconceivable error or the code that applies to matrixNum/numMatrices has been changed without updating this method.");
+				{
+					defaults.add(args[x]);
+					break;
+				}
+			}
+		}
+
+		try
+		{
+			if(port >= 0)
+			{
+				if(jobs != null)
+				{
+					throw new IllegalArgumentException("\"-i\" cannot be used with \"-u\".");
+				}
+				serve(port, defaults);
+			}
+			else if(jobs == null)
+			{
+				makePicture(args);
+			}
+			else
+			{
+				makePictures(jobs, defaults);
+			}
+		}
+		catch(IOException e1)
+		{
+			e1.printStackTrace();
+			System.exit(1);
+		}
+		catch(InterruptedException e1)
+		{
+			e1.printStackTrace();
+			System.exit(1);
+		}
+		catch(IllegalArgumentException e1)
+		{
+			System.err.println(e1.getMessage());
+			System.exit(1);
+		}
+		finally
+		{
+			shutdownPools();
+		}
+	}
+
+	/**
+	 * Serves pictures over HTTP until the program is stopped (see <code>RenderServiceParallel</code>). Every other option decides something that the request for each picture decides
+	 * instead, so only the ones that apply to the server as a whole may be given.
+	 * 
+	 * @param port
+	 *             The port to listen on.
+	 * @param options
+	 *             The rest of the arguments. "-j 'int'": Changes the number of threads that make each picture, which is the number of processors by default. "-l 'String'": Changes the
+	 *             directory that the pictures are kept in, which is RandomArtAssignmentPictures/cache in the home directory by default.
+	 * @throws IOException
+	 *              If the server could not be started.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while serving.
+	 * @throws IllegalArgumentException
+	 *              If any other option is given, since it would have no effect.
+	 */
+	private static void serve(int port, List<String> options) throws IOException, InterruptedException
+	{
+		int threads = Runtime.getRuntime().availableProcessors();
+		String location = System.getProperty("user.home") + "/RandomArtAssignmentPictures/cache/";
+		for(int x = 0; x < options.size(); x++)
+		{
+			switch(options.get(x))
+			{
+				case "-j":
+				{
+					int t;
+					try
+					{
+						t = Integer.parseInt(options.get(x + 1));
+						x++;
+					}
+					catch(NumberFormatException ee)
+					{
+						t = threads;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						t = threads;
+					}
+					threads = (t > 0) ? t : threads;
+					break;
+				}
+				case "-l":
+				{
+					if(x + 1 < options.size())
+					{
+						location = options.get(++x);
+					}
+					break;
+				}
+				default:
+				{
+					throw new IllegalArgumentException("\"" + options.get(x) + "\" cannot be used with \"-u\" - only \"-j\" and \"-l\" apply to the pictures that are served.");
+				}
+			}
+		}
+		RenderServiceParallel.serve(port, threads, new File(location));
+	}
+
+	/**
+	 * Makes one picture for every line of a batch, one after another, in this JVM - so the code that makes them has already been compiled by the time that most of them are made, and
+	 * the threads and the array that holds the picture are kept from one picture to the next. A picture that could not be made is reported and skipped. If the JVM is told to stop
+	 * (such as with CTRL+C), the picture that is being made is finished first, and no more are started.
+	 * 
+	 * @param jobs
+	 *             The path of the file that holds the lines, or "-" to read them from the standard input. Each line holds the arguments of a picture, separated by spaces; a line that
+	 *             starts with # is skipped, while an empty line makes a picture with only the defaults.
+	 * @param defaults
+	 *             The arguments that come before those of every line.
+	 * @throws IOException
+	 *              If the lines could not be read.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while a picture was being made.
+	 */
+	private static void makePictures(String jobs, List<String> defaults) throws IOException, InterruptedException
+	{
+		final Object lock = new Object();
+		final boolean[] state = new boolean[2];// whether a picture is being made, and whether the JVM is stopping
+		final boolean verbose = defaults.contains("-v");
+
+		/* An anonymous inner class that, when the JVM is told to stop, waits for the picture that is being made to be finished. */
+		Thread stopper = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					synchronized(lock)
+					{
+						state[1] = true;
+						if(state[0])
+						{
+							System.out.println("Stopping once the current picture is finished...");
+						}
+						while(state[0])
+						{
+							try
+							{
+								lock.wait();
+							}
+							catch(InterruptedException ee)
+							{
+								return;
+							}
+						}
+					}
+				}
+			});
+		Runtime.getRuntime().addShutdownHook(stopper);
+
+		BufferedReader reader = new BufferedReader(("-".equals(jobs)) ? new InputStreamReader(System.in) : new FileReader(jobs));
+		try
+		{
+			int made = 0;
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if(line.startsWith("#"))
+				{
+					continue;
+				}
+
+				List<String> arguments = new ArrayList<String>(defaults);
+				if(!line.isEmpty())
+				{
+					arguments.addAll(Arrays.asList(line.split("\\s+")));
+				}
+
+				synchronized(lock)
+				{
+					if(state[1])
+					{
+						break;
+					}
+					state[0] = true;
+				}
+				try
+				{
+					makePicture(arguments.toArray(new String[arguments.size()]));
+					made++;
+				}
+				catch(IOException ee)
+				{
+					ee.printStackTrace();
+				}
+				catch(RuntimeException ee)
+				{
+					ee.printStackTrace();
+				}
+				finally
+				{
+					synchronized(lock)
+					{
+						state[0] = false;
+						lock.notifyAll();
+					}
+				}
+
+				if(verbose)
+				{
+					System.out.println("Made " + made + ((made == 1) ? " picture..." : " pictures..."));
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+			try
+			{
+				Runtime.getRuntime().removeShutdownHook(stopper);
+			}
+			catch(IllegalStateException ee)
+			{
+				// the JVM is already stopping, and the hook is what is letting it
+			}
+		}
+	}
+
+	/**
+	 * Gets the threads that make whole pictures, keeping them from one picture to the next as long as the number of threads stays the same.
+	 * 
+	 * @param threads
+	 *             The number of threads.
+	 * @return A <code>ForkJoinPool</code> with that many threads.
+	 */
+	private static ForkJoinPool getRowPool(int threads)
+	{
+		if(rowPool == null || rowPool.getParallelism() != threads)
+		{
+			if(rowPool != null)
+			{
+				rowPool.shutdown();
 			}
+			rowPool = new ForkJoinPool(threads);
+		}
+		return rowPool;
+	}
+
+	/**
+	 * Gets the threads that make pictures in bands, keeping them from one picture to the next as long as the number of threads stays the same. Several pictures may be made with them
+	 * at once.
+	 * 
+	 * @param threads
+	 *             The number of threads.
+	 * @return An <code>ExecutorService</code> with that many threads.
+	 */
+	static synchronized ExecutorService getBandPool(int threads)
+	{
+		if(bandPool == null || bandThreads != threads)
+		{
+			if(bandPool != null)
+			{
+				bandPool.shutdown();
+			}
+			bandPool = Executors.newFixedThreadPool(threads);
+			bandThreads = threads;
+		}
+		return bandPool;
+	}
+
+	/**
+	 * Lets the threads that make pictures end, so that the JVM can stop.
+	 */
+	private static synchronized void shutdownPools()
+	{
+		if(rowPool != null)
+		{
+			rowPool.shutdown();
+			rowPool = null;
+		}
+		if(bandPool != null)
+		{
+			bandPool.shutdown();
+			bandPool = null;
+		}
+	}
+
+	/**
+	 * Reads the expressions of a picture from a file, which may hold them in the binary form of <code>ExpressionCodecParallel</code>, or as text, one expression per line. The text may
+	 * also be a picture that this program made - the expressions at the end of an ASCII picture, in the header of a binary picture, and in the tEXt chunks of a PNG picture are all
+	 * found.
+	 * 
+	 * @param path
+	 *             The path of the file.
+	 * @param storage
+	 *             How the expressions are kept in memory.
+	 * @return One expression for a grayscale picture, or three (red, green, blue) for a color one.
+	 * @throws IOException
+	 *              If the file could not be read, or does not hold one or three expressions.
+	 */
+	static ExpressionGeneratorParallel[] readExpressions(String path, StorageType storage) throws IOException
+	{
+		byte[] file = Files.readAllBytes(Paths.get(path));
+		if(ExpressionCodecParallel.isEncoded(file, file.length))
+		{
+			return checkChannels(ExpressionCodecParallel.read(new BufferedInputStream(new ByteArrayInputStream(file)), storage), path);
+		}
+
+		List<String> texts = new ArrayList<String>();
+		boolean picture = false;// whether or not lines that are not expressions are skipped
+		if(file.length > PngPictureWriterParallel.SIGNATURE.length && Arrays.equals(Arrays.copyOf(file, PngPictureWriterParallel.SIGNATURE.length), PngPictureWriterParallel.SIGNATURE))
+		{
+			/* Every chunk is its length, its type, its data, and a checksum - the data of a tEXt chunk is a keyword, a zero, and then the text. */
+			for(int at = PngPictureWriterParallel.SIGNATURE.length; at + 8 <= file.length;)
+			{
+				int length = (file[at] & 0xFF) << 24 | (file[at + 1] & 0xFF) << 16 | (file[at + 2] & 0xFF) << 8 | (file[at + 3] & 0xFF);
+				if(length < 0 || at + 12L + length > file.length)
+				{
+					break;
+				}
+				String type = new String(file, at + 4, 4, StandardCharsets.ISO_8859_1);
+				if("tEXt".equals(type))
+				{
+					String chunk = new String(file, at + 8, length, StandardCharsets.ISO_8859_1);
+					int zero = chunk.indexOf(0);
+					if(zero >= 0 && chunk.substring(0, zero).toLowerCase().endsWith("equation"))
+					{
+						texts.add(chunk.substring(zero + 1));
+					}
+				}
+				at += 12 + length;
+			}
+		}
+		else
+		{
+			/* A picture holds its expressions in lines that start with "# " - anything else in it, such as a line of values, is not an expression. */
+			picture = file.length > 1 && file[0] == 'P' && file[1] >= '1' && file[1] <= '6';
+			for(String line : new String(file, StandardCharsets.ISO_8859_1).split("\n"))
+			{
+				if(picture && !line.startsWith("# "))
+				{
+					continue;
+				}
+				line = (line.startsWith("# ")) ? line.substring(2) : line;
+				if(!line.trim().isEmpty())
+				{
+					texts.add(line);
+				}
+			}
+		}
+
+		List<ExpressionGeneratorParallel> e = new ArrayList<ExpressionGeneratorParallel>();
+		for(String text : texts)
+		{
+			try
+			{
+				e.add(ExpressionParserParallel.parse(new StringReader(text), storage));
+			}
+			catch(ParseException ee)
+			{
+				/* In a picture, a comment that is not an expression is skipped; anywhere else, every line has to be one. */
+				if(picture)
+				{
+					continue;
+				}
+				throw new IOException("An expression in \"" + path + "\" could not be read: " + ee.getMessage(), ee);
+			}
+		}
+		return checkChannels(e.toArray(new ExpressionGeneratorParallel[e.size()]), path);
+	}
+
+	/**
+	 * Makes sure that a picture can be made from the expressions that were read from a file.
+	 * 
+	 * @param e
+	 *             The expressions.
+	 * @param path
+	 *             The path of the file, for the message if it cannot.
+	 * @return The same expressions.
+	 * @throws IOException
+	 *              If there are not one or three of them.
+	 */
+	private static ExpressionGeneratorParallel[] checkChannels(ExpressionGeneratorParallel[] e, String path) throws IOException
+	{
+		if(e.length != 1 && e.length != 3)
+		{
+			throw new IOException("\"" + path + "\" holds " + e.length + " expressions, but a picture needs one or three.");
+		}
+		return e;
 	}
 
 	/**
@@ -126,9 +862,33 @@ public final class DriverParallel
 	 *             "-d 'int'": Changes the depth. "-w 'int'": Changes the width of the image. "-h 'int'": Changes the height of the image. "-l 'String'": Changes the location where the
 	 *             image is saved (make sure that the directory ends with a /). "-n 'String'": Changes the name of the image (make sure that the name starts with a /). "-c": Makes a color
 	 *             image as opposed to a grayscale one. "-v": Prints out a lot of debugging statements, particularly ones that determine the percentage of the work completed and the total
-	 *             time that the application has been running.
+	 *             time that the application has been running. "-e 'String'": Changes how the expressions are evaluated (one of the names in
+	 *             <code>ExpressionGeneratorParallel.EvaluatorType</code>, such as "tree", "postfix", "separable", "bytecode", or "float"). "-r": Reuses identical subexpressions instead of
+	 *             generating them over and over again, which saves memory and, with the postfix evaluator, time. "-p 'String'": Changes how sines and cosines are worked out (one of the
+	 *             names in <code>TrigonometryParallel.Precision</code>: "exact", "polynomial", or "table"). "-g": Uses the expression of "Grayscale check.png" instead of a random one, so
+	 *             that the picture can be compared against it. "-b 'int'": Makes the picture in bands of that many rows, saving each band as soon as it is finished, so that the whole
+	 *             picture never has to be in memory at once. "-o 'String'": Changes the kind of file that the picture is saved as (one of the names in
+	 *             <code>PictureFormatParallel</code>, "ascii", "binary", "png", "jpeg", or "bmp"). "-j 'int'": Changes the number of threads
+	 *             that make the picture, which is the number of processors by default. "-m 'String'": Writes out how long each part of making the picture took,
+	 *             along with other metrics, as a line of JSON that is added to the end of the given file ("-" prints it out instead). "-s 'long'":
+	 *             Generates the expressions from the given seed, so that the same depth and seed always make the same picture. "-t 'String'": Changes how the expressions are kept
+	 *             in memory (one of the names in <code>ExpressionGeneratorParallel.StorageType</code>: "objects", "arrays", or "offheap") - the arrays allow much larger depths, but are
+	 *             always worked out in doubles, so "-e float" cannot be used with them. "-f 'String'": Makes the picture from the expressions in the given file (see
+	 *             <code>readExpressions</code>) instead of generating them. "-k 'String'": Saves the expressions in the given file in the binary form of
+	 *             <code>ExpressionCodecParallel</code>, so that "-f" can read them back. "-q 'int'": Makes the picture coarse to fine, starting with every pixel whose row and column are
+	 *             multiples of the given number and halving it until every pixel is made, saving a preview after each level (see <code>ProgressiveRendererParallel</code>). "-a 'int'":
+	 *             Smooths out the edges of the picture by working out a grid of that many by that many points over each pixel that differs sharply from its neighbors (see
+	 *             <code>AntiAliaserParallel</code>). "-z 'int'": Fills in the flat parts of the picture without working them out, trying tiles that many pixels on a side and splitting
+	 *             them into quarters wherever they are not flat (see <code>QuadtreeRendererParallel</code>). "-x 'int'": Instead of making a picture, works out the pictures of that many
+	 *             seeds in a row, starting from the one given with "-s", both in doubles and in floats, and prints how many pixels differ (see <code>FloatValidatorParallel</code>).
+	 * @throws IOException
+	 *              If the expressions could not be read or saved, or the picture or its metrics could not be saved.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while the picture was being made.
+	 * @throws IllegalArgumentException
+	 *              If "-e float" is given along with expressions that are kept in arrays, or if "-q", "-a", or "-z" is given for a picture that is too large to be made all at once.
 	 */
-	public static void main(String[] args)
+	private static void makePicture(String[] args) throws IOException, InterruptedException
 	{
 		// Stuff for checking out how long it takes for the program to run
 		start = now = System.nanoTime();
@@ -149,6 +909,22 @@ public final class DriverParallel
 		boolean hasLocation = false;// hasLocation (given by user)
 		String filename = null;
 		boolean hasFilename = false;// hasFilename (given by user)
+		EvaluatorType evaluatorType = EvaluatorType.TREE;// how the expressions are evaluated
+		boolean reuse = false;// whether or not identical subexpressions are shared
+		Precision precision = Precision.EXACT;// how sines and cosines are worked out
+		boolean grayscaleTest = false;// whether or not to use the expression from "Grayscale check.png"
+		int bandHeight = 0;// rows per band when streaming, or 0 to make the whole picture at once
+		PictureFormatParallel format = PictureFormatParallel.ASCII;// the kind of file that the picture is saved as
+		int threads = Runtime.getRuntime().availableProcessors();// the number of threads that make the picture
+		String metricsLocation = null;// where the metrics of the picture are written, if anywhere
+		long seed = SplittableRandomParallel.newSeed();// the seed that the expressions are generated from
+		StorageType storage = StorageType.OBJECTS;// how the expressions are kept in memory
+		String expressionsLocation = null;// where the expressions are read from, if they are not generated
+		String savedLocation = null;// where the expressions are saved in binary, if anywhere
+		int coarsest = 0;// the step of the first level when making the picture coarse to fine, or 0 to make it all at once
+		int antialiasing = 0;// the number of points along each side of a pixel that is smoothed, or 0 to not smooth any
+		int quadtree = 0;// the number of pixels on a side of the largest tiles whose flat parts are filled in, or 0 to work out every pixel
+		int validations = 0;// the number of seeds whose pictures are compared in doubles and in floats instead of making a picture, if any
 
 		for(int x = 0; x < args.length; x++)
 		{
@@ -157,95 +933,341 @@ public final class DriverParallel
 			{
 				case "-d":
 				{
-					int d;
+					int d;
+					try
+					{
+						d = Integer.parseInt(args[x + 1]);
+					}
+					catch(NumberFormatException ee)
+					{
+						d = depth;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						d = depth;
+					}
+					depth = d;
+					break;
+				}
+				case "-w":
+				{
+					int w;
+					try
+					{
+						w = Integer.parseInt(args[x + 1]);
+					}
+					catch(NumberFormatException ee)
+					{
+						w = width;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						w = width;
+					}
+					width = w;
+					break;
+				}
+				case "-h":
+				{
+					int h;
+					try
+					{
+						h = Integer.parseInt(args[x + 1]);
+					}
+					catch(NumberFormatException ee)
+					{
+						h = height;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						h = height;
+					}
+					height = h;
+					break;
+				}
+				case "-c":
+				{
+					doingGrayscale = false;
+					numMatrices = 3;
+					break;
+				}
+				case "-v":
+				{
+					verbose = true;
+					break;
+				}
+				case "-l":
+				{
+					try
+					{
+						pictureLocation = args[x + 1];
+						hasLocation = true;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						pictureLocation = null;
+						hasLocation = false;
+					}
+					break;
+				}
+				case "-n":
+				{
+					try
+					{
+						filename = args[x + 1];
+						hasFilename = true;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						filename = null;
+						hasFilename = false;
+					}
+					break;
+				}
+				case "-r":
+				{
+					reuse = true;
+					break;
+				}
+				case "-p":
+				{
+					Precision p;
+					try
+					{
+						p = Precision.valueOf(args[x + 1].toUpperCase());
+					}
+					catch(IllegalArgumentException ee)
+					{
+						p = precision;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						p = precision;
+					}
+					precision = p;
+					break;
+				}
+				case "-b":
+				{
+					int b;
+					try
+					{
+						b = Integer.parseInt(args[x + 1]);
+					}
+					catch(NumberFormatException ee)
+					{
+						b = bandHeight;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						b = bandHeight;
+					}
+					bandHeight = b;
+					break;
+				}
+				case "-o":
+				{
+					PictureFormatParallel f;
+					try
+					{
+						f = PictureFormatParallel.valueOf(args[x + 1].toUpperCase());
+					}
+					catch(IllegalArgumentException ee)
+					{
+						f = format;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						f = format;
+					}
+					format = f;
+					break;
+				}
+				case "-j":
+				{
+					int t;
+					try
+					{
+						t = Integer.parseInt(args[x + 1]);
+					}
+					catch(NumberFormatException ee)
+					{
+						t = threads;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						t = threads;
+					}
+					threads = (t > 0) ? t : threads;
+					break;
+				}
+				case "-m":
+				{
+					String m;
+					try
+					{
+						m = args[x + 1];
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						m = metricsLocation;
+					}
+					metricsLocation = m;
+					break;
+				}
+				case "-s":
+				{
+					long s;
+					try
+					{
+						s = Long.parseLong(args[x + 1]);
+					}
+					catch(NumberFormatException ee)
+					{
+						s = seed;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						s = seed;
+					}
+					seed = s;
+					break;
+				}
+				case "-t":
+				{
+					StorageType t;
 					try
 					{
-						d = Integer.parseInt(args[x + 1]);
+						t = StorageType.valueOf(args[x + 1].toUpperCase());
 					}
-					catch(NumberFormatException ee)
+					catch(IllegalArgumentException ee)
 					{
-						d = depth;
+						t = storage;
 					}
 					catch(IndexOutOfBoundsException ee)
 					{
-						d = depth;
+						t = storage;
 					}
-					depth = d;
+					storage = t;
 					break;
 				}
-				case "-w":
+				case "-g":
+				{
+					grayscaleTest = true;
+					break;
+				}
+				case "-f":
 				{
-					int w;
 					try
 					{
-						w = Integer.parseInt(args[x + 1]);
+						expressionsLocation = args[x + 1];
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						expressionsLocation = null;
+					}
+					break;
+				}
+				case "-q":
+				{
+					int q;
+					try
+					{
+						q = Integer.parseInt(args[x + 1]);
 					}
 					catch(NumberFormatException ee)
 					{
-						w = width;
+						q = coarsest;
 					}
 					catch(IndexOutOfBoundsException ee)
 					{
-						w = width;
+						q = coarsest;
 					}
-					width = w;
+					coarsest = Math.max(0, q);
 					break;
 				}
-				case "-h":
+				case "-a":
 				{
-					int h;
+					int a;
 					try
 					{
-						h = Integer.parseInt(args[x + 1]);
+						a = Integer.parseInt(args[x + 1]);
 					}
 					catch(NumberFormatException ee)
 					{
-						h = height;
+						a = antialiasing;
 					}
 					catch(IndexOutOfBoundsException ee)
 					{
-						h = height;
+						a = antialiasing;
 					}
-					height = h;
+					antialiasing = Math.max(0, a);
 					break;
 				}
-				case "-c":
+				case "-z":
 				{
-					doingGrayscale = false;
-					numMatrices = 3;
+					int z;
+					try
+					{
+						z = Integer.parseInt(args[x + 1]);
+					}
+					catch(NumberFormatException ee)
+					{
+						z = quadtree;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						z = quadtree;
+					}
+					quadtree = Math.max(0, z);
 					break;
 				}
-				case "-v":
+				case "-x":
 				{
-					verbose = true;
+					int v;
+					try
+					{
+						v = Integer.parseInt(args[x + 1]);
+					}
+					catch(NumberFormatException ee)
+					{
+						v = validations;
+					}
+					catch(IndexOutOfBoundsException ee)
+					{
+						v = validations;
+					}
+					validations = Math.max(0, v);
 					break;
 				}
-				case "-l":
+				case "-k":
 				{
 					try
 					{
-						pictureLocation = args[x + 1];
-						hasLocation = true;
+						savedLocation = args[x + 1];
 					}
 					catch(IndexOutOfBoundsException ee)
 					{
-						pictureLocation = null;
-						hasLocation = false;
+						savedLocation = null;
 					}
 					break;
 				}
-				case "-n":
+				case "-e":
 				{
+					EvaluatorType t;
 					try
 					{
-						filename = args[x + 1];
-						hasFilename = true;
+						t = EvaluatorType.valueOf(args[x + 1].toUpperCase());
+					}
+					catch(IllegalArgumentException ee)
+					{
+						t = evaluatorType;
 					}
 					catch(IndexOutOfBoundsException ee)
 					{
-						filename = null;
-						hasFilename = false;
+						t = evaluatorType;
 					}
+					evaluatorType = t;
 					break;
 				}
 				default:
@@ -258,8 +1280,9 @@ public final class DriverParallel
 		final double xinterval = 2.0 / (width - 1);// the minus one is so that the end result is [-1,1] and not [-1,1)
 		final double yinterval = 2.0 / (height - 1);
 
-		final int timeinterval = (int) (0.00172 * (width * height) + 0.89912 * Math.sqrt(width * height) + 191.84353);
 		final boolean verbose_ = verbose;// for use in anonymous inner classes without making verbose static
+		metrics = new RenderMetricsParallel(width, height);
+		metrics.register();
 
 		/* An anonymous inner class that prints out how long the program has been executing. */
 		Thread timer = new Thread(new Runnable()
@@ -270,7 +1293,7 @@ public final class DriverParallel
 					{
 						try
 						{
-							Thread.sleep(timeinterval);
+							Thread.sleep(REPORT_INTERVAL);
 						}
 						catch(InterruptedException e)
 						{
@@ -281,276 +1304,353 @@ public final class DriverParallel
 							now = System.nanoTime();
 							setTime(now - start);
 
-							System.out.format("TIME: %d:%02d:%02d:%03d\n", hr, min, sec, milli);
+							System.out.format("TIME: %d:%02d:%02d:%03d | Finished: %d%% | %.0f pixels per second\n", hr, min, sec, milli,
+							          (int) ((metrics.getRowsFinished() / ((double) metrics.getRows())) * 100), metrics.getPixelsPerSecond());
 						}
 					}
 				}
 			});
 		timer.start();
 
-		counter = 0;// counter for displaying percentage complete in output, maximum is what it is out of
-		int maximum = height * ((doingGrayscale) ? 1 : 3);
-
-		if(verbose)
-		{
-			System.out.println("Started program and accepted parameters...");
-			System.out.println((doingGrayscale) ? "Making equation..." : "Making equations...");
-		}
-
-		e = new ExpressionGeneratorParallel[numMatrices];
-		for(int a = 0; a < numMatrices; a++)
-			e[a] = new ExpressionGeneratorParallel(depth);
-
-		String[] equation = new String[numMatrices];
-		for(int a = 0; a < numMatrices; a++)
-		{
-			equation[a] = e[a].toString();
-			// commented out because this often takes a really long time to print if they are too large and so they cause everything to crash
-			// if(verbose)
-			// {
-			// System.out.println("This is equation " + a + ": " + equation[a]);
-			// }
-		}
-
-		// upper-level manager for threads
-		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()*2);
-
-		// contains the values from [-1.0, 1.0]
-		raw = new double[numMatrices][height][width];
-
-		if(verbose)
+		try
 		{
-			System.out.println("Created equations...\nSetting up raw matrix...");
-		}
+			if(verbose)
+			{
+				System.out.println("Started program and accepted parameters...");
+				System.out.println((doingGrayscale) ? "Making equation..." : "Making equations...");
+			}
 
-		for(int k = 0; k < numMatrices; k++)
-		{
-			// stuff for printing out where we are
-			String color = getColor(k, doingGrayscale);
+			TrigonometryParallel.setPrecision(precision);// must be done before the evaluators are set up
 
-			for(int j = 0; j < height; j++)
+			if(validations > 0)
 			{
 				if(verbose)
 				{
-					if(j % 100 == 0)
-					{
-						System.out.println("Setting up making of row " + j + " out of " + height + " in the " + color + " raw matrix... | Finished: "
-						          + (int) ((counter / ((double) maximum)) * 100) + "%");
-					}
+					System.out.println("Comparing the pictures of " + validations + " seeds in doubles and in floats, starting from the seed " + seed + "...");
 				}
+				FloatValidatorParallel.validate(validations, seed, depth, numMatrices, width, height, reuse, threads, getBandPool(threads), System.out);
+				return;
+			}
 
-				/* An anonymous inner class that finishes working on a row of the image by itself. This one works on evaluating the raw expression. It takes the longest time to finish. */
-				final int w = width, jj = j, kk = k;
-				pool.execute(new Runnable()
-					{
-						public void run()
-						{
-							// converts the expression into a value between [-1.0, 1.0], the intervals represent the "distance" between pixels
-							for(int i = 0; i < w; i++)
-							{
-								raw[kk][jj][i] = e[kk].evaluateExpression(i * xinterval - 1.0, jj * yinterval - 1.0);
-							}
-							increaseCounter();
-						}
-
-					});
+			if(evaluatorType == EvaluatorType.FLOAT && storage != StorageType.OBJECTS && !grayscaleTest)
+			{
+				throw new IllegalArgumentException("\"-e float\" cannot be used with \"-t " + storage.toString().toLowerCase()
+				          + "\", since expressions kept in arrays are always worked out in doubles.");
 			}
-		}
 
-		if(verbose)
-		{
-			System.out.println("Making raw matrix...");
-		}
+			boolean generated = !grayscaleTest && expressionsLocation == null;// whether or not the seed made the expressions
+			if(verbose && generated)
+			{
+				System.out.println("Using the seed " + seed + "...");
+			}
 
-		pool.shutdown();// reminds it to send everything off to be executed and then close down
-		while(!pool.isTerminated())// while jobs aren't finished - this is the part of the program that takes the longest
-		{
-			try
+			long generationStart = System.nanoTime();
+			if(expressionsLocation != null)
 			{
-				Thread.sleep(timeinterval);
-				if(verbose)
+				e = readExpressions(expressionsLocation, storage);
+				numMatrices = e.length;
+				doingGrayscale = numMatrices == 1;
+			}
+			else if(grayscaleTest)
+			{
+				e = new ExpressionGeneratorParallel[numMatrices];
+				for(int a = 0; a < numMatrices; a++)
 				{
-					now = System.nanoTime();
-					setTime(now - start);
-
-					System.out.println("Still making raw matrix... " + (int) ((counter / ((double) maximum)) * 100) + "%");
+					e[a] = ExpressionGeneratorParallel.grayscaleTest();
 				}
 			}
-			catch(InterruptedException ie)
+			else
 			{
+				e = ExpressionGeneratorParallel.generate(numMatrices, depth, reuse, seed, storage);// the channels are generated at the same time
 			}
-		}
+			ExpressionGeneratorParallel.setEvaluator(e, evaluatorType);
+			metrics.setGeneration(System.nanoTime() - generationStart, e);
+			metrics.setSetting("seed", (generated) ? seed : null);
+			metrics.setSetting("threads", threads);
+			metrics.setSetting("storage", (grayscaleTest) ? null : storage);
 
-		counter = 0;// reset for the next set of work
+			if(savedLocation != null)
+			{
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(savedLocation));
+				try
+				{
+					ExpressionCodecParallel.write(e, out);
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+			/* A picture that is too large for a single array can only be made in bands, which the options that need the whole picture cannot be used with. */
+			if((long) height * width * numMatrices > MAX_SAMPLES && !(bandHeight > 0 && coarsest == 0 && antialiasing == 0 && quadtree == 0))
+			{
+				if(coarsest > 0 || antialiasing > 0 || quadtree > 0)
+				{
+					throw new IllegalArgumentException("A picture of " + width + " by " + height + " is too large to be kept in memory all at once, as \"-q\", \"-a\", and \"-z\" need - "
+					          + "leave them out so that it can be made in bands (see \"-b\"), or make it smaller.");
+				}
+				bandHeight = SAVE_BAND;
+				if(verbose)
+				{
+					System.out.println("The picture is too large to be kept in memory all at once, so it is being made in bands of " + bandHeight + " rows, as with \"-b\"...");
+				}
+			}
 
-		if(verbose)
-		{
-			System.out.println("Setting up picture matrix...");
-		}
+			metrics.setSetting("evaluator", evaluatorType);
+			metrics.setSetting("precision", precision);
+			metrics.setSetting("format", format);
+			metrics.setSetting("bandHeight", bandHeight);
+			metrics.setSetting("progressive", coarsest);
+			metrics.setSetting("antialiasing", antialiasing);
+			metrics.setSetting("quadtree", quadtree);
 
-		pool = Executors.newCachedThreadPool();// if problem with too many threads, make it a newFixedThreadPool(int num) - for TJ, num should be 150
+			/* PGM is grayscale, PPM is color - see PictureFormatParallel. The file is worked out ahead of time since, when streaming, it is written while the picture is being made. */
 
-		colorvals = new int[numMatrices][height][width];// contains the actual color values
+			if(!hasLocation)
+			{
+				pictureLocation = String.format(System.getProperty("user.home") + "/RandomArtAssignmentPictures/%d/%02d/%02d/", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+				          calendar.get(Calendar.DATE));
+			}
 
-		for(int k = 0; k < numMatrices; k++)
-		{
-			String color = getColor(k, doingGrayscale);
+			String filetype = format.getExtension(numMatrices);
+			File file = null;
+			try
+			{
+				file = new File(pictureLocation);
+			}
+			catch(NullPointerException ee)
+			{
+				file = new File("~");
+			}
 
-			if(verbose)
+			if(!hasFilename)
 			{
-				System.out.println("Working on the " + color + " matrix...");
+				filename = String.format("/%02d-%02d-%02d-%03d", calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND),
+				          calendar.get(Calendar.MILLISECOND));
 			}
+			file.mkdirs();// make the file location and any folders that might be necessary
+			String path = file.getPath() + filename + filetype;
 
-			for(int j = 0; j < height; j++)
+			metrics.startRender();
+			if(bandHeight > 0 && coarsest == 0 && antialiasing == 0 && quadtree == 0)
 			{
 				if(verbose)
 				{
-					if(j % 100 == 0)
+					System.out.println("Created equations...\nMaking picture in bands of " + bandHeight + " rows...");
+				}
+
+				PictureWriterParallel writer = format.create(path, width, height, numMatrices, e);
+				new StreamingRendererParallel(e, width, height, bandHeight, threads, getBandPool(threads), metrics).render(writer);
+				if(verbose)
+				{
+					System.out.println("Finishing the file...");
+				}
+				writer.close();
+				metrics.finishRender();
+			}
+			else
+			{
+				// upper-level manager for threads - idle threads steal work from busy ones, so rows that take longer than others do not hold everything up
+				ForkJoinPool pool = getRowPool(threads);
+
+				// contains the actual color values - the array of the last picture is used again if it is large enough
+				int length = height * width * numMatrices;// no larger than MAX_SAMPLES, which was checked above
+				if(pixels == null || pixels.length < length)
+				{
+					pixels = null;// lets the old array be collected before the new one is made
+					pixels = new byte[length];
+				}
+
+				if(coarsest > 0)
+				{
+					String preview = file.getPath() + filename + "-preview" + filetype;
+					if(verbose)
 					{
-						System.out.println("Setting up making row " + j + " out of " + height + " in the " + color + " picture matrix... | Finished: "
-						          + (int) ((counter / ((double) maximum)) * 100) + "%");
+						System.out.println("Created equations...\nMaking picture coarse to fine with " + threads + " threads, saving previews to " + preview + "...");
 					}
+
+					ExecutorService bands = getBandPool(threads);
+					if(!makeProgressively(new ProgressiveRendererParallel(e, width, height, pixels, coarsest, threads, bands, metrics), width, height, bands, preview, format, verbose))
+					{
+						return;
+					}
+					new File(preview).delete();// the picture itself is about to take its place
 				}
+				else if(quadtree > 0)
+				{
+					if(verbose)
+					{
+						System.out.println("Created equations...\nMaking picture with " + threads + " threads, filling in flat tiles of up to " + quadtree + " pixels on a side...");
+					}
 
-				/* An anonymous inner class that finishes working on a row of the image by itself. This one works on converting the raw values into actual color values. */
-				final int jj = j;
-				final int kk = k;
-				final int ww = width;
-				pool.execute(new Runnable()
+					long filled = new QuadtreeRendererParallel(e, width, height, pixels, quadtree, threads, getBandPool(threads), metrics).render();
+					metrics.setSetting("filledValues", filled);
+					if(verbose)
 					{
-						public void run()
-						{
-							for(int i = 0; i < ww; i++)
-							{
-								colorvals[kk][jj][i] = (int) ((raw[kk][jj][i] + 1.0) * 255 / 2.0);
-							}
-							increaseCounter();
-						}
-					});
-			}
-		}
+						System.out.println("Filled in " + filled + " out of " + (long) length + " color values without working them out...");
+					}
+				}
+				else
+				{
+					if(verbose)
+					{
+						System.out.println("Created equations...\nMaking picture with " + threads + " threads...");
+					}
 
-		if(verbose)
-		{
-			System.out.println("Making picture matrix...");
-		}
+					pool.invoke(new RowsTask(0, height, width, xinterval, yinterval));// this is the part of the program that takes the longest
+				}
+
+				if(antialiasing > 0)
+				{
+					if(verbose)
+					{
+						System.out.println("Smoothing picture...");
+					}
+
+					int smoothed = new AntiAliaserParallel(e, width, height, pixels, antialiasing, threads, getBandPool(threads), metrics).smooth();
+					metrics.setSetting("smoothedPixels", smoothed);
+					if(verbose)
+					{
+						System.out.println("Smoothed " + smoothed + " out of " + width * height + " pixels...");
+					}
+				}
 
-		pool.shutdown();
-		while(!pool.isTerminated())
-		{
-			try
-			{
-				Thread.sleep(timeinterval);
 				if(verbose)
 				{
-					now = System.nanoTime();
-					setTime(now - start);
+					System.out.println("Saving picture...");
+				}
+
+				PictureWriterParallel writer = format.create(path, width, height, numMatrices, e);
+				save(writer, width * numMatrices, height, pool);
 
-					System.out.println("Still making picture matrix... " + (int) ((counter / ((double) maximum)) * 100) + "%");
+				if(verbose)
+				{
+					System.out.println("Finishing the file...");
 				}
-			}
-			catch(InterruptedException ie)
-			{
+				writer.close();
+				metrics.finishRender();
 			}
 		}
-
-		if(verbose)
+		finally
 		{
-			System.out.println("Making picture...");
+			/* Makes sure that the final verbose statement, if verbose is true, is the final amount of code executed. */
+			notFinished = false;
+			timer.interrupt();// wakes the timer up instead of waiting for it to finish sleeping
+			timer.join();
+			metrics.unregister();
 		}
 
-		/*
-		 * PGM is grayscale, PPM is color - They are filled with human readable values. These are used because of that ease of creation and reading, also, I did not wish to implement a way
-		 * to make a more compact image. Since these files are very large, it is advised that you convert them into something like a JP(E)G.
-		 */
-
-		if(!hasLocation)
+		if(verbose)
 		{
-			pictureLocation = String.format(System.getProperty("user.home") + "/RandomArtAssignmentPictures/%d/%02d/%02d/", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
-			          calendar.get(Calendar.DATE));
-		}
+			now = System.nanoTime();
+			setTime(now - start);
 
-		String filetype = (doingGrayscale) ? ".pgm" : ".ppm";
-		File file = null;
-		try
-		{
-			file = new File(pictureLocation);
-		}
-		catch(NullPointerException ee)
-		{
-			file = new File("~");
+			System.out.format("Finished... %d:%02d:%02d:%03d\n", hr, min, sec, milli);
 		}
 
-		if(!hasFilename)
+		if(metricsLocation != null)
 		{
-			filename = String.format("/%02d-%02d-%02d-%03d", calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND),
-			          calendar.get(Calendar.MILLISECOND));
+			writeMetrics(metricsLocation);
 		}
-		file.mkdirs();// make the file location and any folders that might be necessary
-		PrintWriter printer = null;
-		try
-		{
-			printer = new PrintWriter(new BufferedWriter(new FileWriter(file.getPath() + filename + filetype)));
-		}
-		catch(IOException e1)
+	}
+
+	/**
+	 * RowsTask makes some rows of the picture. Rather than splitting the picture into a fixed number of pieces, it keeps handing half of its rows off to be stolen by idle threads
+	 * for as long as there are not already plenty of tasks waiting to be stolen, and then makes the rest of its rows itself - so there are many small tasks where rows are expensive
+	 * or uneven and few large ones where they are not.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	private static final class RowsTask extends RecursiveAction
+	{
+		/**
+		 * Used for serialization, which this class never needs.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The number of tasks that may be waiting to be stolen before a task stops handing off rows.
+		 */
+		private static final int SURPLUS = 3;
+
+		/**
+		 * The first row to make.
+		 */
+		private final int first;
+
+		/**
+		 * The row after the last row to make.
+		 */
+		private final int last;
+
+		/**
+		 * The width of the picture.
+		 */
+		private final int width;
+
+		/**
+		 * The distance between the x-positions of neighboring pixels.
+		 */
+		private final double xinterval;
+
+		/**
+		 * The distance between the y-positions of neighboring rows.
+		 */
+		private final double yinterval;
+
+		/**
+		 * A constructor.
+		 * 
+		 * @param f
+		 *             The first row to make.
+		 * @param l
+		 *             The row after the last row to make.
+		 * @param w
+		 *             The width of the picture.
+		 * @param xi
+		 *             The distance between the x-positions of neighboring pixels.
+		 * @param yi
+		 *             The distance between the y-positions of neighboring rows.
+		 */
+		RowsTask(int f, int l, int w, double xi, double yi)
 		{
-			e1.printStackTrace();
-			System.exit(1);
+			first = f;
+			last = l;
+			width = w;
+			xinterval = xi;
+			yinterval = yi;
 		}
-		printer.println((doingGrayscale) ? "P2" : "P3");
-		printer.println(width + " " + height);
-		printer.println(255);
 
-		for(int j = 0; j < height; j++)
+		/**
+		 * Makes the rows, handing some of them off first.
+		 * 
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		@Override
+		protected void compute()
 		{
-			if(verbose)
+			List<RowsTask> handedOff = new ArrayList<RowsTask>();
+			int end = last;
+			while(end - first > 1 && getSurplusQueuedTaskCount() <= SURPLUS)
 			{
-				if(j % 100 == 0)
-				{
-					System.out.println("Making row " + j + " out of " + height + " of the picture...");
-				}
+				int middle = (first + end) >>> 1;
+				RowsTask t = new RowsTask(middle, end, width, xinterval, yinterval);
+				t.fork();
+				handedOff.add(t);
+				end = middle;
 			}
 
-			for(int i = 0; i < width; i++)
+			double[][] raw = new double[e.length][width];
+			for(int j = first; j < end; j++)
 			{
-				for(int k = 0; k < numMatrices; k++)
-				{
-					printer.print(colorvals[k][j][i] + " ");
-				}
+				makeRow(e, j, xinterval, yinterval, raw, pixels, j * width * e.length, metrics);
 			}
-			printer.println();
-		}
 
-		for(String s : equation)
-		{
-			if(verbose)
+			for(int i = handedOff.size() - 1; i >= 0; i--)
 			{
-				System.out.println("Printing an equation at the end of the file...");
+				handedOff.get(i).join();
 			}
-
-			printer.println("# " + s);
-		}
-
-		printer.flush();
-		printer.close();
-
-		/* Makes sure that the final verbose statement, if verbose is true, is the final amount of code executed. */
-		notFinished = false;
-		try
-		{
-			timer.join();
-		}
-		catch(InterruptedException e1)
-		{
-			e1.printStackTrace();
-		}
-
-		if(verbose)
-		{
-			now = System.nanoTime();
-			setTime(now - start);
-
-			System.out.format("Finished... %d:%02d:%02d:%03d\n", hr, min, sec, milli);
 		}
 	}
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+import randomartassignment.expression.ExpressionGeneratorParallel.EvaluatorType;
+
+/**
+ * FloatValidatorParallel checks how much difference working in floats makes to pictures. For each of a number of seeds, it works out every pixel of the picture with the postfix
+ * evaluator both in doubles and in floats, and reports how many pixels come out differently, by how many shades at most, and how long each took. Nothing is saved. It has been
+ * designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class FloatValidatorParallel
+{
+	/**
+	 * This class only has static methods.
+	 */
+	private FloatValidatorParallel()
+	{
+	}
+
+	/**
+	 * Compares the pictures made in doubles and in floats for some seeds in a row, printing a line for each seed and one for all of them together.
+	 * 
+	 * @param samples
+	 *             The number of seeds.
+	 * @param seed
+	 *             The first seed - the rest follow it, one after another.
+	 * @param depth
+	 *             The maximum depth of the expressions.
+	 * @param channels
+	 *             The number of channels of the pictures - one for grayscale, three for color.
+	 * @param width
+	 *             The width of the pictures.
+	 * @param height
+	 *             The height of the pictures.
+	 * @param reuse
+	 *             True if identical subexpressions should be shared.
+	 * @param threads
+	 *             The number of threads that work out the pixels.
+	 * @param pool
+	 *             Where the threads that work out the pixels come from - it should have at least <code>threads</code> threads.
+	 * @param out
+	 *             Where the results are printed.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while waiting for the pixels.
+	 */
+	static void validate(int samples, long seed, int depth, int channels, final int width, final int height, boolean reuse, int threads, ExecutorService pool, PrintStream out)
+	          throws InterruptedException
+	{
+		long pixels = (long) width * height;
+		long differentPixels = 0, differentValues = 0;
+		int most = 0;
+		long doubleTime = 0, floatTime = 0;
+		for(int n = 0; n < samples; n++)
+		{
+			long s = seed + n;
+			final ExpressionGeneratorParallel[] exact = ExpressionGeneratorParallel.generate(channels, depth, reuse, s);
+			ExpressionGeneratorParallel.setEvaluator(exact, EvaluatorType.POSTFIX);
+			final ExpressionGeneratorParallel[] single = ExpressionGeneratorParallel.generate(channels, depth, reuse, s);
+			ExpressionGeneratorParallel.setEvaluator(single, EvaluatorType.FLOAT);
+
+			final double xinterval = 2.0 / (width - 1);// the minus one is so that the end result is [-1,1] and not [-1,1)
+			final double yinterval = 2.0 / (height - 1);
+			final AtomicInteger next = new AtomicInteger();
+			final long[][] counts = new long[threads][5];// the pixels and values that differ, the most shades that any value differs by, and the time taken in doubles and in floats
+
+			List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+			for(int t = 0; t < threads; t++)
+			{
+				final long[] count = counts[t];
+
+				/* An anonymous inner class that keeps comparing rows until there are none left. */
+				workers.add(new Callable<Void>()
+					{
+						public Void call()
+						{
+							double[][] a = new double[exact.length][width];
+							double[][] b = new double[exact.length][width];
+							int j;
+							while((j = next.getAndIncrement()) < height)
+							{
+								long before = System.nanoTime();
+								ExpressionGeneratorParallel.evaluateRows(exact, j * yinterval - 1.0, -1.0, xinterval, a);
+								long between = System.nanoTime();
+								ExpressionGeneratorParallel.evaluateRows(single, j * yinterval - 1.0, -1.0, xinterval, b);
+								count[3] += between - before;
+								count[4] += System.nanoTime() - between;
+
+								for(int i = 0; i < width; i++)
+								{
+									boolean differs = false;
+									for(int k = 0; k < a.length; k++)
+									{
+										int difference = Math.abs(DriverParallel.quantize(a[k][i]) - DriverParallel.quantize(b[k][i]));
+										if(difference > 0)
+										{
+											differs = true;
+											count[1]++;
+											count[2] = Math.max(count[2], difference);
+										}
+									}
+									if(differs)
+									{
+										count[0]++;
+									}
+								}
+							}
+							return null;
+						}
+					});
+			}
+
+			try
+			{
+				for(Future<Void> f : pool.invokeAll(workers))
+				{
+					f.get();
+				}
+			}
+			catch(ExecutionException ee)
+			{
+				if(ee.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException) ee.getCause();
+				}
+				throw (Error) ee.getCause();
+			}
+
+			long[] total = new long[5];
+			for(long[] count : counts)
+			{
+				total[0] += count[0];
+				total[1] += count[1];
+				total[2] = Math.max(total[2], count[2]);
+				total[3] += count[3];
+				total[4] += count[4];
+			}
+			out.format("Seed %d: %d out of %d pixels (%.4f%%) differ, %d color values by at most %d shade(s) - %.3f seconds in doubles, %.3f in floats\n", s, total[0], pixels,
+			          100.0 * total[0] / pixels, total[1], total[2], total[3] / 1e9, total[4] / 1e9);
+
+			differentPixels += total[0];
+			differentValues += total[1];
+			most = Math.max(most, (int) total[2]);
+			doubleTime += total[3];
+			floatTime += total[4];
+		}
+
+		out.format("All %d seeds: %d out of %d pixels (%.4f%%) differ, %d color values by at most %d shade(s) - %.3f seconds in doubles, %.3f in floats\n", samples, differentPixels,
+		          pixels * samples, 100.0 * differentPixels / (pixels * samples), differentValues, most, doubleTime / 1e9, floatTime / 1e9);
+	}
+}
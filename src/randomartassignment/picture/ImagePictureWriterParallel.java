@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * ImagePictureWriterParallel saves a picture in any kind of file that <code>ImageIO</code> knows how to write, such as JPEG or BMP. The color values are already in the order that a
+ * <code>BufferedImage</code> keeps them in, so the array that holds them is used as the image's data as it is, rather than being copied into a new image pixel by pixel - when the
+ * whole picture is handed over at once, it is never copied at all. The files do not hold the equations that made the picture, since these kinds of files have nowhere to put them.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class ImagePictureWriterParallel implements PictureWriterParallel
+{
+	/**
+	 * The most color values that a picture can have, since <code>ImageIO</code> needs all of them in a single array.
+	 */
+	static final long MAX_SAMPLES = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The file.
+	 */
+	private final File file;
+
+	/**
+	 * The name that <code>ImageIO</code> knows the kind of file by, such as "jpeg".
+	 */
+	private final String formatName;
+
+	/**
+	 * The width of the picture.
+	 */
+	private final int width;
+
+	/**
+	 * The height of the picture.
+	 */
+	private final int height;
+
+	/**
+	 * The number of color values in a pixel.
+	 */
+	private final int channels;
+
+	/**
+	 * The color values of the picture, which are either the ones that were handed over, or a copy of them if they were handed over a few rows at a time.
+	 */
+	private byte[] samples;
+
+	/**
+	 * The number of rows that have been saved so far.
+	 */
+	private int rowsSaved;
+
+	/**
+	 * A constructor. Nothing is written to the file until the whole picture has been saved, since <code>ImageIO</code> writes a picture all at once.
+	 * 
+	 * @param path
+	 *             The path of the file.
+	 * @param formatName
+	 *             The name that <code>ImageIO</code> knows the kind of file by, such as "jpeg" or "bmp".
+	 * @param w
+	 *             The width of the picture.
+	 * @param h
+	 *             The height of the picture.
+	 * @param c
+	 *             1 for a grayscale picture, 3 for a color one.
+	 * @throws IOException
+	 *              If the picture has more than <code>MAX_SAMPLES</code> color values, so it could not be kept in memory to be saved.
+	 */
+	ImagePictureWriterParallel(String path, String formatName, int w, int h, int c) throws IOException
+	{
+		if((long) w * h * c > MAX_SAMPLES)
+		{
+			throw new IOException("A picture of " + w + " by " + h + " is too large to be saved as " + formatName + ", which needs all of it in memory at once - "
+			          + "try \"-o png\" or \"-o binary\".");
+		}
+		file = new File(path);
+		this.formatName = formatName;
+		width = w;
+		height = h;
+		channels = c;
+	}
+
+	/**
+	 * Keeps some rows of the picture until it is finished. If they are the whole picture, the array itself is kept, so it must not be changed until the picture has been closed.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#writeRows(int, byte[], int, int)
+	 */
+	@Override
+	public void writeRows(int firstRow, byte[] samples, int offset, int rows) throws IOException
+	{
+		int rowLength = width * channels;
+		if(firstRow == 0 && offset == 0 && rows == height && this.samples == null)
+		{
+			this.samples = samples;
+		}
+		else
+		{
+			if(this.samples == null)
+			{
+				this.samples = new byte[height * rowLength];
+			}
+			System.arraycopy(samples, offset, this.samples, firstRow * rowLength, rows * rowLength);
+		}
+		rowsSaved += rows;
+	}
+
+	/**
+	 * The picture is only written once all of it is there, but rows are copied into a single array as they are saved, which only one thread should do at a time.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#allowsAnyOrder()
+	 */
+	@Override
+	public boolean allowsAnyOrder()
+	{
+		return false;
+	}
+
+	/**
+	 * Writes the picture to the file.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if(rowsSaved != height)
+		{
+			throw new IOException("Only " + rowsSaved + " out of " + height + " rows of the picture were saved.");
+		}
+		if(!ImageIO.write(wrap(samples, width, height, channels), formatName, file))
+		{
+			throw new IOException("There is nothing that can save a picture with " + channels + " channel(s) as " + formatName + ".");
+		}
+	}
+
+	/**
+	 * Makes a <code>BufferedImage</code> whose data is an array of color values, without copying them - changing the array changes the image.
+	 * 
+	 * @param samples
+	 *             The color values, a row after another, with the channels of each pixel next to each other - anything past the end of the last row is ignored.
+	 * @param width
+	 *             The width of the picture.
+	 * @param height
+	 *             The height of the picture.
+	 * @param channels
+	 *             1 for a grayscale picture, 3 (red, green, blue) for a color one.
+	 * @return A <code>BufferedImage</code> that is backed by <code>samples</code>.
+	 */
+	static BufferedImage wrap(byte[] samples, int width, int height, int channels)
+	{
+		int[] offsets = new int[channels];
+		for(int k = 0; k < channels; k++)
+		{
+			offsets[k] = k;
+		}
+		DataBuffer buffer = new DataBufferByte(samples, width * height * channels);
+		WritableRaster raster = Raster.createInterleavedRaster(buffer, width, height, width * channels, channels, offsets, null);
+		ColorSpace space = ColorSpace.getInstance((channels == 1) ? ColorSpace.CS_GRAY : ColorSpace.CS_sRGB);
+		ComponentColorModel model = new ComponentColorModel(space, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+		return new BufferedImage(model, raster, false, null);
+	}
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PictureCacheParallel keeps finished pictures so that they never have to be made twice - the most recently used ones in memory, and many more in files in a directory. Both are
+ * limited in size, and when either grows too large, the pictures that have gone unused the longest are forgotten first. The times that the files were last used are kept as the times
+ * that they were last modified, so the cache carries on where it left off when the program is started again. Only pictures that are small enough to be kept in memory are ever read
+ * into it - the rest are sent straight from their files. It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class PictureCacheParallel
+{
+	/**
+	 * The extension of pictures that are still being made - they are not part of the cache yet.
+	 */
+	private static final String PART = ".part";
+
+	/**
+	 * The directory that the files are kept in.
+	 */
+	private final File directory;
+
+	/**
+	 * The most bytes that are kept in memory.
+	 */
+	private final long memoryLimit;
+
+	/**
+	 * The most bytes that are kept in files.
+	 */
+	private final long diskLimit;
+
+	/**
+	 * The pictures that are kept in memory, from the one that has gone unused the longest to the one that was used last.
+	 */
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+	/**
+	 * The number of bytes kept in memory.
+	 */
+	private long memorySize;
+
+	/**
+	 * The sizes of the pictures that are kept in files, from the one that has gone unused the longest to the one that was used last.
+	 */
+	private final LinkedHashMap<String, Long> disk = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	/**
+	 * The number of bytes kept in files.
+	 */
+	private long diskSize;
+
+	/**
+	 * A constructor that picks up the pictures that are already in the directory.
+	 * 
+	 * @param dir
+	 *             The directory that the files are kept in. It is created if it does not exist yet.
+	 * @param memoryBytes
+	 *             The most bytes that are kept in memory.
+	 * @param diskBytes
+	 *             The most bytes that are kept in files.
+	 * @throws IOException
+	 *              If the directory could not be created.
+	 */
+	PictureCacheParallel(File dir, long memoryBytes, long diskBytes) throws IOException
+	{
+		directory = dir;
+		memoryLimit = memoryBytes;
+		diskLimit = diskBytes;
+
+		directory.mkdirs();
+		File[] files = directory.listFiles(new FileFilter()
+			{
+				public boolean accept(File f)
+				{
+					return f.isFile();
+				}
+			});
+		if(files == null)
+		{
+			throw new IOException("The cache could not be kept in " + directory + ".");
+		}
+
+		/* An anonymous inner class that puts the files that were used longest ago first. */
+		Arrays.sort(files, new Comparator<File>()
+			{
+				public int compare(File a, File b)
+				{
+					return Long.compare(a.lastModified(), b.lastModified());
+				}
+			});
+		for(File f : files)
+		{
+			if(f.getName().endsWith(PART))
+			{
+				f.delete();// left over from a picture that was never finished
+			}
+			else
+			{
+				disk.put(f.getName(), f.length());
+				diskSize += f.length();
+			}
+		}
+		trim();
+	}
+
+	/**
+	 * Gets a picture, if it is kept, from memory if possible and from its file otherwise.
+	 * 
+	 * @param name
+	 *             The name of the picture, which is also the name of its file.
+	 * @return The picture, which must be closed once it has been sent, or null if it is not kept.
+	 * @throws IOException
+	 *              If the file could not be read.
+	 */
+	Picture get(String name) throws IOException
+	{
+		synchronized(this)
+		{
+			byte[] bytes = memory.get(name);
+			if(bytes != null)
+			{
+				disk.get(name);// it has been used, as far as the files are concerned too
+				return new Picture(bytes);
+			}
+			if(disk.get(name) == null)
+			{
+				return null;
+			}
+		}
+
+		File f = new File(directory, name);
+		RandomAccessFile file;
+		try
+		{
+			file = new RandomAccessFile(f, "r");
+		}
+		catch(FileNotFoundException ee)
+		{
+			/* Someone else deleted the file, so it is not kept anymore. */
+			synchronized(this)
+			{
+				Long size = disk.remove(name);
+				if(size != null)
+				{
+					diskSize -= size;
+				}
+			}
+			return null;
+		}
+		f.setLastModified(System.currentTimeMillis());
+		return open(name, file);
+	}
+
+	/**
+	 * Makes a file for a picture to be saved in before it is kept.
+	 * 
+	 * @param name
+	 *             The name of the picture.
+	 * @return A new, empty file in the directory, which does not count as kept until it is given to <code>put</code>.
+	 * @throws IOException
+	 *              If the file could not be created.
+	 */
+	File createPart(String name) throws IOException
+	{
+		return File.createTempFile(name + "-", PART, directory);
+	}
+
+	/**
+	 * Keeps a picture that has been saved.
+	 * 
+	 * @param name
+	 *             The name of the picture, which becomes the name of its file.
+	 * @param part
+	 *             The file from <code>createPart</code> that the picture was saved in.
+	 * @return The picture, which must be closed once it has been sent.
+	 * @throws IOException
+	 *              If the file could not be read or renamed.
+	 */
+	Picture put(String name, File part) throws IOException
+	{
+		File f = new File(directory, name);
+		RandomAccessFile file;
+
+		synchronized(this)
+		{
+			f.delete();// there may be an older copy if the same picture was made twice at once
+			if(!part.renameTo(f))
+			{
+				throw new IOException("The picture could not be kept as " + f + ".");
+			}
+
+			/* The file is opened before any others are forgotten, so it can still be sent even if it is forgotten itself before then. */
+			file = new RandomAccessFile(f, "r");
+			long length = file.length();
+			Long old = disk.put(name, length);
+			diskSize += length - ((old == null) ? 0 : old);
+			trim();
+		}
+		return open(name, file);
+	}
+
+	/**
+	 * Gets a picture that is kept in a file, reading it into memory and keeping it there if it is small enough, or leaving it in the file otherwise.
+	 * 
+	 * @param name
+	 *             The name of the picture.
+	 * @param file
+	 *             The picture's file, opened for reading - it is closed, or handed to the picture to be closed later.
+	 * @return The picture.
+	 * @throws IOException
+	 *              If the file could not be read.
+	 */
+	private Picture open(String name, RandomAccessFile file) throws IOException
+	{
+		long length = file.length();
+		if(length > memoryLimit / 4)
+		{
+			return new Picture(file, length);
+		}
+
+		try
+		{
+			byte[] bytes = new byte[(int) length];
+			file.readFully(bytes);
+			synchronized(this)
+			{
+				remember(name, bytes);
+			}
+			return new Picture(bytes);
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	/**
+	 * Keeps a picture in memory, if it is not too large to be worth it, forgetting others if there is no longer room for them. It should only be called while synchronized on this.
+	 * 
+	 * @param name
+	 *             The name of the picture.
+	 * @param bytes
+	 *             The bytes of the picture's file.
+	 */
+	private void remember(String name, byte[] bytes)
+	{
+		byte[] old = memory.remove(name);
+		if(old != null)
+		{
+			memorySize -= old.length;
+		}
+
+		if(bytes.length <= memoryLimit / 4)
+		{
+			memory.put(name, bytes);
+			memorySize += bytes.length;
+		}
+
+		Iterator<Map.Entry<String, byte[]>> i = memory.entrySet().iterator();
+		while(memorySize > memoryLimit && i.hasNext())
+		{
+			memorySize -= i.next().getValue().length;
+			i.remove();
+		}
+	}
+
+	/**
+	 * Deletes the files that have gone unused the longest until the rest fit in the limit, although the one that was used last is always kept. It should only be called while
+	 * synchronized on this, or from the constructor.
+	 */
+	private void trim()
+	{
+		Iterator<Map.Entry<String, Long>> i = disk.entrySet().iterator();
+		while(diskSize > diskLimit && disk.size() > 1)
+		{
+			Map.Entry<String, Long> eldest = i.next();
+			new File(directory, eldest.getKey()).delete();
+			diskSize -= eldest.getValue();
+			i.remove();
+		}
+	}
+
+	/**
+	 * Picture is a picture that is kept, ready to be sent - either its bytes, if it is kept in memory, or its open file otherwise, which can still be read even if it is forgotten in
+	 * the meantime.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	static final class Picture
+	{
+		/**
+		 * The bytes of the picture's file, or null if it is sent from the file itself.
+		 */
+		private final byte[] bytes;
+
+		/**
+		 * The picture's file, or null if it is sent from memory.
+		 */
+		private final RandomAccessFile file;
+
+		/**
+		 * The number of bytes in the picture's file.
+		 */
+		private final long length;
+
+		/**
+		 * A constructor for a picture that is kept in memory.
+		 * 
+		 * @param b
+		 *             The bytes of the picture's file.
+		 */
+		Picture(byte[] b)
+		{
+			bytes = b;
+			file = null;
+			length = b.length;
+		}
+
+		/**
+		 * A constructor for a picture that is sent from its file.
+		 * 
+		 * @param f
+		 *             The picture's file, opened for reading, which is closed along with the picture.
+		 * @param l
+		 *             The number of bytes in the file.
+		 */
+		Picture(RandomAccessFile f, long l)
+		{
+			bytes = null;
+			file = f;
+			length = l;
+		}
+
+		/**
+		 * Gets the size of the picture.
+		 * 
+		 * @return The number of bytes in the picture's file.
+		 */
+		long getLength()
+		{
+			return length;
+		}
+
+		/**
+		 * Sends the whole picture, straight from its file if it is not kept in memory, so that it never has to be read into memory.
+		 * 
+		 * @param out
+		 *             Where the picture is sent. It is not closed.
+		 * @throws IOException
+		 *              If the picture could not be read or sent.
+		 */
+		void sendTo(OutputStream out) throws IOException
+		{
+			if(bytes != null)
+			{
+				out.write(bytes);
+				return;
+			}
+
+			FileChannel channel = file.getChannel();
+			WritableByteChannel target = Channels.newChannel(out);
+			long position = 0;
+			while(position < length)
+			{
+				long sent = channel.transferTo(position, length - position, target);
+				if(sent <= 0)
+				{
+					throw new IOException("The picture's file ended after " + position + " out of " + length + " bytes.");
+				}
+				position += sent;
+			}
+		}
+
+		/**
+		 * Closes the picture's file, if it has one.
+		 * 
+		 * @throws IOException
+		 *              If the file could not be closed.
+		 */
+		void close() throws IOException
+		{
+			if(file != null)
+			{
+				file.close();
+			}
+		}
+	}
+}
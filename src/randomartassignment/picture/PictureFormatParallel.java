@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.io.IOException;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+
+/**
+ * A list of the kinds of files that a picture can be saved as.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+enum PictureFormatParallel
+{
+	/**
+	 * A PGM or PPM file that is filled with human readable values, with the equations at the end.
+	 */
+	ASCII
+	{
+		PictureWriterParallel create(String path, int width, int height, int channels, ExpressionGeneratorParallel[] eq) throws IOException
+		{
+			return new AsciiPictureWriterParallel(path, width, height, channels, eq);
+		}
+
+		String getExtension(int channels)
+		{
+			return (channels == 1) ? ".pgm" : ".ppm";
+		}
+
+		String getContentType(int channels)
+		{
+			return (channels == 1) ? "image/x-portable-graymap" : "image/x-portable-pixmap";
+		}
+	},
+
+	/**
+	 * A PGM or PPM file that holds a byte for each color value, with the equations in the header.
+	 */
+	BINARY
+	{
+		PictureWriterParallel create(String path, int width, int height, int channels, ExpressionGeneratorParallel[] eq) throws IOException
+		{
+			return new BinaryPictureWriterParallel(path, width, height, channels, eq);
+		}
+
+		String getExtension(int channels)
+		{
+			return (channels == 1) ? ".pgm" : ".ppm";
+		}
+
+		String getContentType(int channels)
+		{
+			return (channels == 1) ? "image/x-portable-graymap" : "image/x-portable-pixmap";
+		}
+	},
+
+	/**
+	 * A PNG file, with the equations in tEXt chunks.
+	 */
+	PNG
+	{
+		PictureWriterParallel create(String path, int width, int height, int channels, ExpressionGeneratorParallel[] eq) throws IOException
+		{
+			return new PngPictureWriterParallel(path, width, height, channels, eq);
+		}
+
+		String getExtension(int channels)
+		{
+			return ".png";
+		}
+
+		String getContentType(int channels)
+		{
+			return "image/png";
+		}
+	},
+
+	/**
+	 * A JPEG file, which is small but loses a little detail, without the equations.
+	 */
+	JPEG
+	{
+		PictureWriterParallel create(String path, int width, int height, int channels, ExpressionGeneratorParallel[] eq) throws IOException
+		{
+			return new ImagePictureWriterParallel(path, "jpeg", width, height, channels);
+		}
+
+		String getExtension(int channels)
+		{
+			return ".jpg";
+		}
+
+		String getContentType(int channels)
+		{
+			return "image/jpeg";
+		}
+	},
+
+	/**
+	 * A BMP file, which holds a byte for each color value, without the equations.
+	 */
+	BMP
+	{
+		PictureWriterParallel create(String path, int width, int height, int channels, ExpressionGeneratorParallel[] eq) throws IOException
+		{
+			return new ImagePictureWriterParallel(path, "bmp", width, height, channels);
+		}
+
+		String getExtension(int channels)
+		{
+			return ".bmp";
+		}
+
+		String getContentType(int channels)
+		{
+			return "image/bmp";
+		}
+	};
+
+	/**
+	 * Creates the file and the writer that saves a picture to it.
+	 * 
+	 * @param path
+	 *             The path of the file, including its extension.
+	 * @param width
+	 *             The width of the picture.
+	 * @param height
+	 *             The height of the picture.
+	 * @param channels
+	 *             1 for a grayscale picture, 3 for a color one.
+	 * @param eq
+	 *             The expressions that made the picture, one for each channel, which are written out as equations.
+	 * @return A <code>PictureWriterParallel</code> for the file.
+	 * @throws IOException
+	 *              If the file could not be created, or the picture is too large to be saved as this kind of file.
+	 */
+	abstract PictureWriterParallel create(String path, int width, int height, int channels, ExpressionGeneratorParallel[] eq) throws IOException;
+
+	/**
+	 * Gets the extension of files of this kind.
+	 * 
+	 * @param channels
+	 *             1 for a grayscale picture, 3 for a color one.
+	 * @return A string that starts with a '.'.
+	 */
+	abstract String getExtension(int channels);
+
+	/**
+	 * Gets the media type of files of this kind, for sending them over HTTP.
+	 * 
+	 * @param channels
+	 *             1 for a grayscale picture, 3 for a color one.
+	 * @return A string such as "image/png".
+	 */
+	abstract String getContentType(int channels);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.io.IOException;
+
+/**
+ * PictureWriterParallel is anything that saves the color values of a picture to a file. The color values are handed to it a few rows at a time, with the values of each pixel's colors
+ * next to each other (red, green, blue for color pictures) and the pixels in order from left to right, so that the whole picture never needs to be in memory at once.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+interface PictureWriterParallel
+{
+	/**
+	 * Saves some rows of the picture.
+	 * 
+	 * @param firstRow
+	 *             The number of the first row, counting from the top starting at 0.
+	 * @param samples
+	 *             The color values of the rows, each between [0, 255] - anything before the first row or past the end of the last row is ignored, so this may be the whole picture.
+	 * @param offset
+	 *             Where the first row starts in <code>samples</code>.
+	 * @param rows
+	 *             The number of rows.
+	 * @throws IOException
+	 *              If the rows could not be saved.
+	 */
+	void writeRows(int firstRow, byte[] samples, int offset, int rows) throws IOException;
+
+	/**
+	 * Checks if <code>writeRows</code> may be called for rows in any order, and from many threads at once. If not, it must be called for each row in order from top to bottom, by one
+	 * thread at a time.
+	 * 
+	 * @return True if the rows may be saved in any order, false if they must be saved in order.
+	 */
+	boolean allowsAnyOrder();
+
+	/**
+	 * Finishes saving the picture, once every row has been saved.
+	 * 
+	 * @throws IOException
+	 *              If the picture could not be finished.
+	 */
+	void close() throws IOException;
+}
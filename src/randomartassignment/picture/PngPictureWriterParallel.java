@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+
+/**
+ * PngPictureWriterParallel saves a picture as a PNG file, with the equations that made it in tEXt chunks. The slow part of saving a PNG file is filtering and compressing the rows, so
+ * every band of rows that is handed to it is filtered and compressed on its own by the thread that hands it over, at the same time as the other bands. Each compressed band ends on a
+ * byte boundary without ending the compressed data, so the bands are written one after another as they become available and together make up a single valid stream, much like pigz
+ * does. It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class PngPictureWriterParallel implements PictureWriterParallel
+{
+	/**
+	 * The bytes that every PNG file starts with.
+	 */
+	static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+
+	/**
+	 * The largest prime number less than 65536, which checksums are worked out modulo.
+	 */
+	private static final int BASE = 65521;
+
+	/**
+	 * The names of the tEXt chunks that the equations go in, for grayscale and color pictures.
+	 */
+	private static final String[][] KEYWORDS = { {"Equation"}, {"Red equation", "Green equation", "Blue equation"}};
+
+	/**
+	 * Used to write to the file.
+	 */
+	private final DataOutputStream out;
+
+	/**
+	 * The number of color values in a pixel.
+	 */
+	private final int channels;
+
+	/**
+	 * The number of color values in a row.
+	 */
+	private final int rowLength;
+
+	/**
+	 * The height of the picture.
+	 */
+	private final int height;
+
+	/**
+	 * The compressed bands that cannot be written yet because a band above them has not been, by the number of their first row.
+	 */
+	private final TreeMap<Integer, Band> waiting = new TreeMap<Integer, Band>();
+
+	/**
+	 * The first row that has not been written yet.
+	 */
+	private int nextRow;
+
+	/**
+	 * The checksum of every filtered row that has been written so far.
+	 */
+	private long checksum = 1;
+
+	/**
+	 * A constructor that creates the file and writes everything that comes before the rows.
+	 * 
+	 * @param path
+	 *             The path of the file.
+	 * @param width
+	 *             The width of the picture.
+	 * @param h
+	 *             The height of the picture.
+	 * @param c
+	 *             1 for a grayscale picture, 3 for a color one.
+	 * @param eq
+	 *             The expressions that made the picture, one for each channel.
+	 * @throws IOException
+	 *              If the file could not be created.
+	 */
+	PngPictureWriterParallel(String path, int width, int h, int c, ExpressionGeneratorParallel[] eq) throws IOException
+	{
+		channels = c;
+		rowLength = width * c;
+		height = h;
+
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+		out.write(SIGNATURE);
+
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, h);
+		header[8] = 8;// bits per color value
+		header[9] = (byte) ((c == 1) ? 0 : 2);// grayscale or red, green, blue
+		writeChunk("IHDR", header, header.length);
+
+		String[] keywords = KEYWORDS[(c == 1) ? 0 : 1];
+		Charset latin = Charset.forName("ISO-8859-1");
+		for(int k = 0; k < eq.length; k++)
+		{
+			/* The equation is written straight from the expression, with the checksum worked out as it goes, so that it never has to be kept as text. */
+			byte[] name = keywords[k].getBytes(latin);
+			long length = name.length + 1 + eq[k].getTextLength();
+			if(length > Integer.MAX_VALUE)
+			{
+				continue;// a chunk cannot hold it, so it is left out
+			}
+
+			CRC32 crc = new CRC32();
+			out.writeInt((int) length);
+			CheckedOutputStream checked = new CheckedOutputStream(out, crc);// not closed, since that would close the file as well
+			checked.write("tEXt".getBytes(latin));
+			checked.write(name);
+			checked.write(0);
+			Writer text = new BufferedWriter(new OutputStreamWriter(checked, latin));
+			eq[k].appendTo(text);
+			text.flush();
+			out.writeInt((int) crc.getValue());
+		}
+
+		writeChunk("IDAT", new byte[] {0x78, (byte) 0x9c}, 2);// the start of the compressed data
+	}
+
+	/**
+	 * Filters and compresses some rows of the picture, and then writes them along with any bands below them that were waiting for them.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#writeRows(int, byte[], int, int)
+	 */
+	@Override
+	public void writeRows(int firstRow, byte[] samples, int offset, int rows) throws IOException
+	{
+		Band band = new Band(samples, offset, rows);
+		synchronized(waiting)
+		{
+			waiting.put(firstRow, band);
+			while(!waiting.isEmpty() && waiting.firstKey() == nextRow)
+			{
+				Band b = waiting.remove(nextRow);
+				writeChunk("IDAT", b.data, b.length);
+				checksum = combine(checksum, b.checksum, b.filteredLength);
+				nextRow += b.rows;
+			}
+		}
+	}
+
+	/**
+	 * Bands are compressed on their own and put in order before they are written, so they can be handed over in any order.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#allowsAnyOrder()
+	 */
+	@Override
+	public boolean allowsAnyOrder()
+	{
+		return true;
+	}
+
+	/**
+	 * Ends the compressed data and the file.
+	 * 
+	 * @see randomartassignment.picture.PictureWriterParallel#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			synchronized(waiting)
+			{
+				if(nextRow != height)
+				{
+					throw new IOException("Only " + nextRow + " out of " + height + " rows of the picture were saved.");
+				}
+
+				/* An empty final block, which ends the compressed data, followed by the checksum of what was compressed. */
+				byte[] end = {0x03, 0x00, 0, 0, 0, 0};
+				putInt(end, 2, (int) checksum);
+				writeChunk("IDAT", end, end.length);
+				writeChunk("IEND", end, 0);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes a chunk of the file.
+	 * 
+	 * @param type
+	 *             The four letter type of the chunk.
+	 * @param data
+	 *             What goes in the chunk.
+	 * @param length
+	 *             The number of bytes of <code>data</code> to use.
+	 * @throws IOException
+	 *              If the chunk could not be written.
+	 */
+	private void writeChunk(String type, byte[] data, int length) throws IOException
+	{
+		byte[] name = type.getBytes(Charset.forName("US-ASCII"));
+		CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(data, 0, length);
+
+		out.writeInt(length);
+		out.write(name);
+		out.write(data, 0, length);
+		out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Puts an integer into an array, most significant byte first.
+	 * 
+	 * @param a
+	 *             The array.
+	 * @param position
+	 *             Where the integer goes.
+	 * @param v
+	 *             The integer.
+	 */
+	private static void putInt(byte[] a, int position, int v)
+	{
+		a[position] = (byte) (v >>> 24);
+		a[position + 1] = (byte) (v >>> 16);
+		a[position + 2] = (byte) (v >>> 8);
+		a[position + 3] = (byte) v;
+	}
+
+	/**
+	 * Works out the checksum of two pieces of data one after another from the checksums of each, in the same way that zlib does.
+	 * 
+	 * @param first
+	 *             The checksum of the first piece.
+	 * @param second
+	 *             The checksum of the second piece.
+	 * @param secondLength
+	 *             The length of the second piece.
+	 * @return A long that is the checksum of both.
+	 */
+	private static long combine(long first, long second, long secondLength)
+	{
+		long remainder = secondLength % BASE;
+		long sum1 = first & 0xffff;
+		long sum2 = (remainder * sum1) % BASE;
+		sum1 += (second & 0xffff) + BASE - 1;
+		sum2 += ((first >>> 16) & 0xffff) + ((second >>> 16) & 0xffff) + BASE - remainder;
+		if(sum1 >= BASE)
+		{
+			sum1 -= BASE;
+		}
+		if(sum1 >= BASE)
+		{
+			sum1 -= BASE;
+		}
+		if(sum2 >= (BASE << 1))
+		{
+			sum2 -= (BASE << 1);
+		}
+		if(sum2 >= BASE)
+		{
+			sum2 -= BASE;
+		}
+		return sum1 | (sum2 << 16);
+	}
+
+	/**
+	 * Works out the predictor that a PNG filter subtracts from a color value.
+	 * 
+	 * @param type
+	 *             The filter - 0 for none, 1 for sub, 2 for up, 3 for average, 4 for Paeth.
+	 * @param a
+	 *             The color value to the left, or 0.
+	 * @param b
+	 *             The color value above, or 0.
+	 * @param c
+	 *             The color value above and to the left, or 0.
+	 * @return An integer between [0, 255].
+	 */
+	private static int predict(int type, int a, int b, int c)
+	{
+		switch(type)
+		{
+			case 1:
+				return a;
+			case 2:
+				return b;
+			case 3:
+				return (a + b) >> 1;
+			case 4:
+			{
+				int p = a + b - c;
+				int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+				return (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+			}
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Band is a band of rows that has been filtered and compressed.
+	 * 
+	 * @author Amndeep Singh Mann
+	 * @version 1.0 18 October 2026
+	 */
+	private final class Band
+	{
+		/**
+		 * The number of rows.
+		 */
+		final int rows;
+
+		/**
+		 * The compressed rows.
+		 */
+		byte[] data;
+
+		/**
+		 * The number of bytes of <code>data</code> that are used.
+		 */
+		int length;
+
+		/**
+		 * The checksum of the filtered rows.
+		 */
+		final long checksum;
+
+		/**
+		 * The length of the filtered rows.
+		 */
+		final int filteredLength;
+
+		/**
+		 * A constructor that filters and compresses some rows. Each row is filtered in whichever way leaves the smallest differences, which tends to compress best - except for the
+		 * first row, since the row above it is not available, so it can only be filtered in ways that do not need it.
+		 * 
+		 * @param samples
+		 *             The color values of the rows.
+		 * @param offset
+		 *             Where the first row starts in <code>samples</code>.
+		 * @param r
+		 *             The number of rows.
+		 */
+		Band(byte[] samples, int offset, int r)
+		{
+			rows = r;
+			filteredLength = r * (rowLength + 1);
+			byte[] filtered = new byte[filteredLength];
+			for(int j = 0; j < r; j++)
+			{
+				int row = offset + j * rowLength;
+				int above = (j == 0) ? -1 : row - rowLength;// the row above the band is not part of it, even if it is in the array
+				int best = 0;
+				long bestCost = Long.MAX_VALUE;
+				for(int type = 0; type < ((j == 0) ? 2 : 5); type++)
+				{
+					long cost = 0;
+					for(int i = 0; i < rowLength; i++)
+					{
+						cost += Math.abs((byte) (samples[row + i] - predict(type, sample(samples, row, i - channels), sample(samples, above, i), sample(samples, above, i - channels))));
+					}
+					if(cost < bestCost)
+					{
+						best = type;
+						bestCost = cost;
+					}
+				}
+
+				int position = j * (rowLength + 1);
+				filtered[position++] = (byte) best;
+				for(int i = 0; i < rowLength; i++)
+				{
+					filtered[position++] = (byte) (samples[row + i] - predict(best, sample(samples, row, i - channels), sample(samples, above, i), sample(samples, above, i - channels)));
+				}
+			}
+
+			Adler32 adler = new Adler32();
+			adler.update(filtered);
+			checksum = adler.getValue();
+
+			/* Flushing ends the compressed band on a byte boundary without marking it as the last one, so that the next band can carry on from it. */
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			deflater.setInput(filtered);
+			data = new byte[filteredLength / 2 + 64];
+			length = 0;
+			while(true)
+			{
+				length += deflater.deflate(data, length, data.length - length, Deflater.SYNC_FLUSH);
+				if(length < data.length)
+				{
+					break;
+				}
+				data = Arrays.copyOf(data, 2 * data.length);
+			}
+			deflater.end();
+		}
+
+		/**
+		 * Gets a color value of the band, treating anything outside of it as 0.
+		 * 
+		 * @param samples
+		 *             The color values of the band.
+		 * @param row
+		 *             Where the row starts, which is negative for the row above the band.
+		 * @param i
+		 *             The position of the color value in the row, which is negative for a pixel to the left of the picture.
+		 * @return An integer between [0, 255].
+		 */
+		private int sample(byte[] samples, int row, int i)
+		{
+			return (row < 0 || i < 0) ? 0 : samples[row + i] & 0xff;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+
+/**
+ * ProgressiveRendererParallel makes a picture coarse to fine, so that a rough version of it can be looked at long before the whole thing is finished. The first level works out every
+ * pixel whose row and column are both multiples of a step, such as 16, and each level after that halves the step and works out only the pixels that are new to it, so no pixel is
+ * worked out twice and the last level, with a step of 1, finishes the picture - which is exactly the same as it would have been otherwise. After each level, every pixel that has
+ * not been worked out yet has the color of the pixel above and to the left of it that has, so the picture can be saved as a preview. It can be cancelled at any point, which stops
+ * it at the next row. It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class ProgressiveRendererParallel
+{
+	/**
+	 * The expressions for each channel of the picture.
+	 */
+	private final ExpressionGeneratorParallel[] e;
+
+	/**
+	 * The width of the picture.
+	 */
+	private final int width;
+
+	/**
+	 * The height of the picture.
+	 */
+	private final int height;
+
+	/**
+	 * The color values of the picture, row by row.
+	 */
+	private final byte[] pixels;
+
+	/**
+	 * The number of threads that make the picture.
+	 */
+	private final int threads;
+
+	/**
+	 * Where the threads that make the picture come from. It is not shut down, so that it can be used again for the next picture.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * Where the rows that are made and the time that they took are recorded.
+	 */
+	private final RenderMetricsParallel metrics;
+
+	/**
+	 * The step of the next level, or 0 once the picture is finished.
+	 */
+	private int step;
+
+	/**
+	 * Whether the first level has been made.
+	 */
+	private boolean started;
+
+	/**
+	 * Whether making the picture has been cancelled.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * A constructor.
+	 * 
+	 * @param generators
+	 *             The expressions for each channel of the picture - one for grayscale, three (red, green, blue) for color.
+	 * @param w
+	 *             The width of the picture.
+	 * @param h
+	 *             The height of the picture.
+	 * @param p
+	 *             Receives the color values of the picture, row by row - it must hold at least <code>w * h * generators.length</code> of them.
+	 * @param coarsest
+	 *             The step of the first level, which is rounded down to a power of two.
+	 * @param t
+	 *             The number of threads that make the picture.
+	 * @param pool
+	 *             Where the threads that make the picture come from - it should have at least <code>t</code> threads.
+	 * @param m
+	 *             Where the rows that are made and the time that they took are recorded.
+	 */
+	ProgressiveRendererParallel(ExpressionGeneratorParallel[] generators, int w, int h, byte[] p, int coarsest, int t, ExecutorService pool, RenderMetricsParallel m)
+	{
+		e = generators;
+		width = w;
+		height = h;
+		pixels = p;
+		step = Integer.highestOneBit(Math.max(1, coarsest));
+		threads = Math.max(1, t);
+		this.pool = pool;
+		metrics = m;
+	}
+
+	/**
+	 * Checks whether there are any levels left to make.
+	 * 
+	 * @return True if the picture is not finished and has not been cancelled, false otherwise.
+	 */
+	boolean hasNextLevel()
+	{
+		return step > 0 && !cancelled;
+	}
+
+	/**
+	 * Stops making the picture at the next row. The level that was being made is left unfinished, so the pixels are only a preview as of the level before it.
+	 */
+	void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+	 * Checks whether making the picture has been cancelled.
+	 * 
+	 * @return True if it has, false otherwise.
+	 */
+	boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * Makes the next level of the picture.
+	 * 
+	 * @return The step of the level that was made - 1 means that the picture is finished, unless it was cancelled.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while waiting for the rows.
+	 */
+	int nextLevel() throws InterruptedException
+	{
+		final int s = step;
+		final boolean first = !started;
+		final int channels = e.length;
+		final double xinterval = 2.0 / (width - 1);// the minus one is so that the end result is [-1,1] and not [-1,1)
+		final double yinterval = 2.0 / (height - 1);
+		final AtomicInteger next = new AtomicInteger();
+		final int rows = (height + s - 1) / s;
+
+		List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+		for(int t = 0; t < threads; t++)
+		{
+			/* An anonymous inner class that keeps making rows of the level until there are none left. */
+			workers.add(new Callable<Void>()
+				{
+					public Void call()
+					{
+						double[][] raw = new double[channels][width];
+						int r;
+						while(!cancelled && (r = next.getAndIncrement()) < rows)
+						{
+							int j = r * s;
+							boolean old = !first && j % (2 * s) == 0;// whether every other pixel of the row was made by an earlier level
+							if(s == 1 && !old)
+							{
+								DriverParallel.makeRow(e, j, xinterval, yinterval, raw, pixels, j * width * channels, metrics);
+								continue;
+							}
+
+							long before = System.nanoTime();
+							double y = j * yinterval - 1.0;
+							for(int i = (old) ? s : 0; i < width; i += (old) ? 2 * s : s)
+							{
+								int at = (j * width + i) * channels;
+								for(int k = 0; k < channels; k++)
+								{
+									pixels[at + k] = (byte) DriverParallel.quantize(e[k].evaluateExpression(i * xinterval - 1.0, y));
+								}
+								fill(j, i, s, at);
+							}
+							metrics.addEvaluation(System.nanoTime() - before);
+							if(s == 1)
+							{
+								metrics.addRow();
+							}
+						}
+						return null;
+					}
+				});
+		}
+
+		try
+		{
+			for(Future<Void> f : pool.invokeAll(workers))
+			{
+				f.get();
+			}
+		}
+		catch(ExecutionException ee)
+		{
+			if(ee.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) ee.getCause();
+			}
+			throw (Error) ee.getCause();
+		}
+
+		started = true;
+		step = s / 2;
+		return s;
+	}
+
+	/**
+	 * Gives the pixels that a pixel stands in for until they are made the color of that pixel.
+	 * 
+	 * @param j
+	 *             The row of the pixel.
+	 * @param i
+	 *             The column of the pixel.
+	 * @param s
+	 *             The step of the level - the pixel stands in for an s by s square.
+	 * @param at
+	 *             Where the color values of the pixel are.
+	 */
+	private void fill(int j, int i, int s, int at)
+	{
+		int channels = e.length;
+		int columns = Math.min(s, width - i) * channels;
+		for(int row = j; row < j + s && row < height; row++)
+		{
+			int start = (row * width + i) * channels;
+			for(int c = (row == j) ? channels : 0; c < columns; c++)
+			{
+				pixels[start + c] = pixels[at + c % channels];
+			}
+		}
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+
+/**
+ * QuadtreeRendererParallel makes a picture without working out the pixels of its flat parts. The picture is split into square tiles, and for each tile and channel, bounds on what the
+ * expression gives anywhere in it are worked out - if both bounds come to the same shade, so does every pixel in between, and the whole tile is given that shade. Otherwise the tile is
+ * split into four and each quarter is tried again, down to <code>SMALLEST</code> pixels on a side. Whatever is left is then worked out pixel by pixel, or a row at a time where most of a
+ * row is left, so the picture is exactly the same as it would have been otherwise. It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class QuadtreeRendererParallel
+{
+	/**
+	 * The number of pixels on a side of the smallest tiles, which are worked out pixel by pixel rather than split any further.
+	 */
+	static final int SMALLEST = 4;
+
+	/**
+	 * The expressions for each channel of the picture.
+	 */
+	private final ExpressionGeneratorParallel[] e;
+
+	/**
+	 * The width of the picture.
+	 */
+	private final int width;
+
+	/**
+	 * The height of the picture.
+	 */
+	private final int height;
+
+	/**
+	 * The color values of the picture, row by row.
+	 */
+	private final byte[] pixels;
+
+	/**
+	 * The number of pixels on a side of the largest tiles.
+	 */
+	private final int tile;
+
+	/**
+	 * The number of threads that make the picture.
+	 */
+	private final int threads;
+
+	/**
+	 * Where the threads that make the picture come from. It is not shut down, so that it can be used again for the next picture.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * Where the rows that are made and the time that they took are recorded.
+	 */
+	private final RenderMetricsParallel metrics;
+
+	/**
+	 * A constructor.
+	 * 
+	 * @param generators
+	 *             The expressions for each channel of the picture - one for grayscale, three (red, green, blue) for color.
+	 * @param w
+	 *             The width of the picture.
+	 * @param h
+	 *             The height of the picture.
+	 * @param p
+	 *             Receives the color values of the picture, row by row - it must hold at least <code>w * h * generators.length</code> of them.
+	 * @param largest
+	 *             The number of pixels on a side of the largest tiles, which is rounded down to a power of two no smaller than <code>SMALLEST</code>.
+	 * @param t
+	 *             The number of threads that make the picture.
+	 * @param pool
+	 *             Where the threads that make the picture come from - it should have at least <code>t</code> threads.
+	 * @param m
+	 *             Where the rows that are made and the time that they took are recorded.
+	 */
+	QuadtreeRendererParallel(ExpressionGeneratorParallel[] generators, int w, int h, byte[] p, int largest, int t, ExecutorService pool, RenderMetricsParallel m)
+	{
+		e = generators;
+		width = w;
+		height = h;
+		pixels = p;
+		tile = Integer.highestOneBit(Math.max(SMALLEST, largest));
+		threads = Math.max(1, t);
+		this.pool = pool;
+		metrics = m;
+	}
+
+	/**
+	 * Makes the picture.
+	 * 
+	 * @return The number of color values that were filled in without being worked out.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while waiting for the tiles or rows.
+	 */
+	long render() throws InterruptedException
+	{
+		final int channels = e.length;
+		final double xinterval = 2.0 / (width - 1);// the minus one is so that the end result is [-1,1] and not [-1,1)
+		final double yinterval = 2.0 / (height - 1);
+		final boolean[] filled = new boolean[width * height * channels];// which color values have been filled in, in the same order as the pixels
+		final int across = (width + tile - 1) / tile;
+		final int tiles = across * ((height + tile - 1) / tile);
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger nextRow = new AtomicInteger();
+		final long[] skipped = new long[threads];
+
+		List<Callable<Void>> cullers = new ArrayList<Callable<Void>>();
+		List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+		for(int t = 0; t < threads; t++)
+		{
+			final int thread = t;
+
+			/* An anonymous inner class that keeps filling in the flat parts of tiles until there are none left. */
+			cullers.add(new Callable<Void>()
+				{
+					public Void call()
+					{
+						double[] bounds = new double[2];
+						int b;
+						while((b = next.getAndIncrement()) < tiles)
+						{
+							long before = System.nanoTime();
+							for(int k = 0; k < channels; k++)
+							{
+								skipped[thread] += cull(k, (b % across) * tile, (b / across) * tile, tile, xinterval, yinterval, filled, bounds);
+							}
+							metrics.addEvaluation(System.nanoTime() - before);
+						}
+						return null;
+					}
+				});
+
+			/* An anonymous inner class that keeps working out whatever is left of rows until there are none left - a whole row when more than a third is left, pixel by pixel otherwise. */
+			workers.add(new Callable<Void>()
+				{
+					public Void call()
+					{
+						double[] raw = new double[width];
+						int j;
+						while((j = nextRow.getAndIncrement()) < height)
+						{
+							long before = System.nanoTime();
+							double y = j * yinterval - 1.0;
+							for(int k = 0; k < channels; k++)
+							{
+								int start = j * width * channels + k;
+								int left = 0;
+								for(int i = 0, s = start; i < width; i++, s += channels)
+								{
+									if(!filled[s])
+									{
+										left++;
+									}
+								}
+
+								if(left > width / 3)
+								{
+									e[k].evaluateRow(y, -1.0, xinterval, raw);
+									for(int i = 0, s = start; i < width; i++, s += channels)
+									{
+										if(!filled[s])
+										{
+											pixels[s] = (byte) DriverParallel.quantize(raw[i]);
+										}
+									}
+								}
+								else if(left > 0)
+								{
+									for(int i = 0, s = start; i < width; i++, s += channels)
+									{
+										if(!filled[s])
+										{
+											pixels[s] = (byte) DriverParallel.quantize(e[k].evaluateExpression(i * xinterval - 1.0, y));
+										}
+									}
+								}
+							}
+							metrics.addEvaluation(System.nanoTime() - before);
+							metrics.addRow();
+						}
+						return null;
+					}
+				});
+		}
+
+		run(cullers);
+		run(workers);
+
+		long total = 0;
+		for(long s : skipped)
+		{
+			total += s;
+		}
+		return total;
+	}
+
+	/**
+	 * Fills in a channel of a tile if it is flat, or of whichever parts of it are flat otherwise.
+	 * 
+	 * @param k
+	 *             The channel.
+	 * @param left
+	 *             The column of the left side of the tile.
+	 * @param top
+	 *             The row of the top of the tile.
+	 * @param size
+	 *             The number of pixels on a side of the tile, some of which may be past the right or bottom of the picture.
+	 * @param xinterval
+	 *             The distance between the x-positions of neighboring pixels.
+	 * @param yinterval
+	 *             The distance between the y-positions of neighboring rows.
+	 * @param filled
+	 *             Which color values have been filled in, which is updated.
+	 * @param bounds
+	 *             Somewhere to put the bounds of the expression.
+	 * @return The number of color values that were filled in.
+	 */
+	private long cull(int k, int left, int top, int size, double xinterval, double yinterval, boolean[] filled, double[] bounds)
+	{
+		int right = Math.min(left + size, width) - 1;
+		int bottom = Math.min(top + size, height) - 1;
+
+		/* Working out a pixel's position never gives a smaller result for a larger column or row, so the positions of the sides bound those of every pixel in between. */
+		e[k].evaluateInterval(left * xinterval - 1.0, right * xinterval - 1.0, top * yinterval - 1.0, bottom * yinterval - 1.0, bounds);
+		if(Double.isNaN(bounds[0]) || Double.isNaN(bounds[1]))// there is nothing to go on, which only happens if the picture is a single pixel wide or high
+		{
+			return 0;
+		}
+		int shade = DriverParallel.quantize(bounds[0]);
+		if(shade == DriverParallel.quantize(bounds[1]))
+		{
+			int channels = e.length;
+			for(int j = top; j <= bottom; j++)
+			{
+				for(int i = left, s = (j * width + left) * channels + k; i <= right; i++, s += channels)
+				{
+					pixels[s] = (byte) shade;
+					filled[s] = true;
+				}
+			}
+			return (long) (right - left + 1) * (bottom - top + 1);
+		}
+
+		/* The bounds of a quarter tend to be about half as far apart, so a tile whose bounds are too many shades apart would not be flat even once it is split down to the smallest tiles. */
+		long count = 0;
+		if(size > SMALLEST && DriverParallel.quantize(bounds[1]) - shade < 2 * size / SMALLEST)
+		{
+			int half = size / 2;
+			for(int j = top; j <= bottom; j += half)
+			{
+				for(int i = left; i <= right; i += half)
+				{
+					count += cull(k, i, j, half, xinterval, yinterval, filled, bounds);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Runs some workers and waits for all of them to finish.
+	 * 
+	 * @param workers
+	 *             The workers.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while waiting for the workers.
+	 */
+	private void run(List<Callable<Void>> workers) throws InterruptedException
+	{
+		try
+		{
+			for(Future<Void> f : pool.invokeAll(workers))
+			{
+				f.get();
+			}
+		}
+		catch(ExecutionException ee)
+		{
+			if(ee.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) ee.getCause();
+			}
+			throw (Error) ee.getCause();
+		}
+	}
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+
+/**
+ * RenderMetricsParallel keeps track of how the making of a picture is going and how long each part of it takes: making the expressions, evaluating them, converting the results into
+ * color values, and saving them. Evaluating, converting, and saving are done by many threads at once, so the time spent on each is added up over all of the threads, while the time
+ * that the picture took as a whole is measured by the clock. The numbers can be watched through JMX while the picture is being made and are written out as JSON once it is finished.
+ * It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public final class RenderMetricsParallel implements RenderMetricsParallelMBean
+{
+	/**
+	 * The name that the metrics are shown under in JMX.
+	 */
+	private static final String NAME = "randomartassignment:type=RenderMetrics";
+
+	/**
+	 * The number of nanoseconds in a second.
+	 */
+	private static final double NANOSECONDS = 1e9;
+
+	/**
+	 * The width of the picture.
+	 */
+	private final int width;
+
+	/**
+	 * The height of the picture.
+	 */
+	private final int height;
+
+	/**
+	 * The settings that the picture was made with, in the order that they were given.
+	 */
+	private final Map<String, Object> settings = new LinkedHashMap<String, Object>();
+
+	/**
+	 * The number of rows that have been made.
+	 */
+	private final StripedCounterParallel rows = new StripedCounterParallel();
+
+	/**
+	 * The time spent evaluating expressions, in nanoseconds.
+	 */
+	private final StripedCounterParallel evaluation = new StripedCounterParallel();
+
+	/**
+	 * The time spent converting raw values into color values, in nanoseconds.
+	 */
+	private final StripedCounterParallel quantization = new StripedCounterParallel();
+
+	/**
+	 * The time spent saving rows, in nanoseconds.
+	 */
+	private final StripedCounterParallel write = new StripedCounterParallel();
+
+	/**
+	 * The number of expressions in each channel's expression.
+	 */
+	private long[] nodes = new long[0];
+
+	/**
+	 * How deep each channel's expression goes.
+	 */
+	private int[] depths = new int[0];
+
+	/**
+	 * How long it took to make the expressions, in nanoseconds.
+	 */
+	private volatile long generation;
+
+	/**
+	 * When the picture was started, or 0 if it has not been.
+	 */
+	private volatile long renderStart;
+
+	/**
+	 * When the picture was finished, or 0 if it has not been.
+	 */
+	private volatile long renderEnd;
+
+	/**
+	 * A constructor.
+	 * 
+	 * @param w
+	 *             The width of the picture.
+	 * @param h
+	 *             The height of the picture.
+	 */
+	public RenderMetricsParallel(int w, int h)
+	{
+		width = w;
+		height = h;
+	}
+
+	/**
+	 * Remembers a setting that the picture is made with, so that it can be written out with the rest of the metrics.
+	 * 
+	 * @param name
+	 *             The name of the setting.
+	 * @param value
+	 *             Its value - numbers, booleans, and null are written out as they are, anything else as a string.
+	 */
+	public synchronized void setSetting(String name, Object value)
+	{
+		settings.put(name, value);
+	}
+
+	/**
+	 * Records how long it took to make the expressions, along with how large they are.
+	 * 
+	 * @param nanoseconds
+	 *             How long it took to make the expressions and set up their evaluators.
+	 * @param generators
+	 *             The expressions for each channel of the picture.
+	 */
+	public synchronized void setGeneration(long nanoseconds, ExpressionGeneratorParallel[] generators)
+	{
+		generation = nanoseconds;
+		nodes = new long[generators.length];
+		depths = new int[generators.length];
+		for(int k = 0; k < generators.length; k++)
+		{
+			nodes[k] = generators[k].getNodeCount();
+			depths[k] = generators[k].getDepth();
+		}
+	}
+
+	/**
+	 * Records that the picture has been started.
+	 */
+	public void startRender()
+	{
+		renderStart = System.nanoTime();
+	}
+
+	/**
+	 * Records that the picture has been finished, including saving it.
+	 */
+	public void finishRender()
+	{
+		renderEnd = System.nanoTime();
+	}
+
+	/**
+	 * Records that a row has been made.
+	 */
+	void addRow()
+	{
+		rows.add(1);
+	}
+
+	/**
+	 * Records time spent evaluating expressions.
+	 * 
+	 * @param nanoseconds
+	 *             The time.
+	 */
+	void addEvaluation(long nanoseconds)
+	{
+		evaluation.add(nanoseconds);
+	}
+
+	/**
+	 * Records time spent converting raw values into color values.
+	 * 
+	 * @param nanoseconds
+	 *             The time.
+	 */
+	void addQuantization(long nanoseconds)
+	{
+		quantization.add(nanoseconds);
+	}
+
+	/**
+	 * Records time spent saving rows.
+	 * 
+	 * @param nanoseconds
+	 *             The time.
+	 */
+	void addWrite(long nanoseconds)
+	{
+		write.add(nanoseconds);
+	}
+
+	/**
+	 * Makes the metrics available through JMX. If that is not possible, such as when the metrics of another picture already are, nothing happens, since the metrics are still written
+	 * out at the end.
+	 */
+	public void register()
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(NAME));
+		}
+		catch(JMException ee)
+		{
+		}
+	}
+
+	/**
+	 * Stops making the metrics available through JMX, if they were.
+	 */
+	public void unregister()
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(NAME));
+		}
+		catch(JMException ee)
+		{
+		}
+	}
+
+	/**
+	 * @see randomartassignment.picture.RenderMetricsParallelMBean#getRowsFinished()
+	 */
+	@Override
+	public long getRowsFinished()
+	{
+		return rows.sum();
+	}
+
+	/**
+	 * @see randomartassignment.picture.RenderMetricsParallelMBean#getRows()
+	 */
+	@Override
+	public int getRows()
+	{
+		return height;
+	}
+
+	/**
+	 * @see randomartassignment.picture.RenderMetricsParallelMBean#getNodeCount()
+	 */
+	@Override
+	public synchronized long getNodeCount()
+	{
+		long total = 0;
+		for(long n : nodes)
+		{
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * @see randomartassignment.picture.RenderMetricsParallelMBean#getGenerationSeconds()
+	 */
+	@Override
+	public double getGenerationSeconds()
+	{
+		return generation / NANOSECONDS;
+	}
+
+	/**
+	 * @see randomartassignment.picture.RenderMetricsParallelMBean#getEvaluationSeconds()
+	 */
+	@Override
+	public double getEvaluationSeconds()
+	{
+		return evaluation.sum() / NANOSECONDS;
+	}
+
+	/**
+	 * @see randomartassignment.picture.RenderMetricsParallelMBean#getQuantizationSeconds()
+	 */
+	@Override
+	public double getQuantizationSeconds()
+	{
+		return quantization.sum() / NANOSECONDS;
+	}
+
+	/**
+	 * @see randomartassignment.picture.RenderMetricsParallelMBean#getWriteSeconds()
+	 */
+	@Override
+	public double getWriteSeconds()
+	{
+		return write.sum() / NANOSECONDS;
+	}
+
+	/**
+	 * Gets how long the picture has taken so far, or took if it has been finished, according to the clock.
+	 * 
+	 * @return A double that is a number of seconds.
+	 */
+	public double getRenderSeconds()
+	{
+		long s = renderStart, e = renderEnd;
+		if(s == 0)
+		{
+			return 0;
+		}
+		return (((e == 0) ? System.nanoTime() : e) - s) / NANOSECONDS;
+	}
+
+	/**
+	 * @see randomartassignment.picture.RenderMetricsParallelMBean#getPixelsPerSecond()
+	 */
+	@Override
+	public double getPixelsPerSecond()
+	{
+		double seconds = getRenderSeconds();
+		return (seconds > 0) ? getRowsFinished() * width / seconds : 0;
+	}
+
+	/**
+	 * @see randomartassignment.picture.RenderMetricsParallelMBean#getNodePixelsPerSecond()
+	 */
+	@Override
+	public double getNodePixelsPerSecond()
+	{
+		return getPixelsPerSecond() * getNodeCount();
+	}
+
+	/**
+	 * Writes out the metrics as a JSON object.
+	 * 
+	 * @return A string that is a JSON object.
+	 */
+	public synchronized String toJson()
+	{
+		StringBuilder json = new StringBuilder("{");
+		json.append("\"width\": ").append(width).append(", \"height\": ").append(height);
+		for(Map.Entry<String, Object> s : settings.entrySet())
+		{
+			json.append(", ");
+			quote(json, s.getKey()).append(": ");
+			if(s.getValue() == null || s.getValue() instanceof Number || s.getValue() instanceof Boolean)
+			{
+				json.append(s.getValue());
+			}
+			else
+			{
+				quote(json, String.valueOf(s.getValue()));
+			}
+		}
+
+		json.append(", \"expressions\": [");
+		for(int k = 0; k < nodes.length; k++)
+		{
+			json.append((k == 0) ? "" : ", ").append("{\"nodes\": ").append(nodes[k]).append(", \"depth\": ").append(depths[k]).append('}');
+		}
+		json.append("], \"nodes\": ").append(getNodeCount());
+
+		json.append(", \"seconds\": {\"generation\": ").append(getGenerationSeconds());
+		json.append(", \"evaluation\": ").append(getEvaluationSeconds());
+		json.append(", \"quantization\": ").append(getQuantizationSeconds());
+		json.append(", \"write\": ").append(getWriteSeconds());
+		json.append(", \"render\": ").append(getRenderSeconds()).append('}');
+
+		json.append(", \"rowsFinished\": ").append(getRowsFinished());
+		json.append(", \"pixelsPerSecond\": ").append(getPixelsPerSecond());
+		json.append(", \"nodePixelsPerSecond\": ").append(getNodePixelsPerSecond());
+		return json.append('}').toString();
+	}
+
+	/**
+	 * Adds a string to some JSON, in quotes and with any characters that JSON does not allow in a string escaped.
+	 * 
+	 * @param json
+	 *             The JSON.
+	 * @param s
+	 *             The string.
+	 * @return The JSON.
+	 */
+	static StringBuilder quote(StringBuilder json, String s)
+	{
+		json.append('"');
+		for(int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if(c == '"' || c == '\\')
+			{
+				json.append('\\').append(c);
+			}
+			else if(c < ' ')
+			{
+				json.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				json.append(c);
+			}
+		}
+		return json.append('"');
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+/**
+ * RenderMetricsParallelMBean is what <code>RenderMetricsParallel</code> shows through JMX, so that a picture that is being made can be watched from tools such as JConsole or Java
+ * Mission Control.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+public interface RenderMetricsParallelMBean
+{
+	/**
+	 * Gets the number of rows that have been made so far.
+	 * 
+	 * @return A long between [0, height].
+	 */
+	long getRowsFinished();
+
+	/**
+	 * Gets the number of rows in the picture.
+	 * 
+	 * @return An integer that is the height of the picture.
+	 */
+	int getRows();
+
+	/**
+	 * Gets the number of expressions that are worked out for every pixel, over all of the channels.
+	 * 
+	 * @return A long that is the sum of the node counts of the expressions.
+	 */
+	long getNodeCount();
+
+	/**
+	 * Gets how long it took to make the expressions and set up their evaluators.
+	 * 
+	 * @return A double that is a number of seconds.
+	 */
+	double getGenerationSeconds();
+
+	/**
+	 * Gets how long has been spent evaluating expressions so far, added up over all of the threads.
+	 * 
+	 * @return A double that is a number of seconds.
+	 */
+	double getEvaluationSeconds();
+
+	/**
+	 * Gets how long has been spent converting raw values into color values so far, added up over all of the threads.
+	 * 
+	 * @return A double that is a number of seconds.
+	 */
+	double getQuantizationSeconds();
+
+	/**
+	 * Gets how long has been spent saving rows so far, added up over all of the threads.
+	 * 
+	 * @return A double that is a number of seconds.
+	 */
+	double getWriteSeconds();
+
+	/**
+	 * Gets the number of pixels that have been made per second since the picture was started.
+	 * 
+	 * @return A double that is 0 before the picture has been started.
+	 */
+	double getPixelsPerSecond();
+
+	/**
+	 * Gets the number of expressions that have been worked out per second since the picture was started, which is the number of pixels per second times the node count - this allows
+	 * pictures of different depths to be compared.
+	 * 
+	 * @return A double that is 0 before the picture has been started.
+	 */
+	double getNodePixelsPerSecond();
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+import randomartassignment.expression.ExpressionGeneratorParallel.StorageType;
+import randomartassignment.expression.SplittableRandomParallel;
+import randomartassignment.expression.TrigonometryParallel;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * RenderServiceParallel makes pictures for anyone who asks for them over HTTP, at http://localhost:port/render?seed=42&depth=12&width=800&height=600&color=true&format=png (every
+ * parameter may be left out). A picture that has been made before is sent straight from a <code>PictureCacheParallel</code>, and only a few pictures are made at once - anyone who asks
+ * for a new one while that many are being made is told to try again later. The pictures are made in bands by the threads that <code>DriverParallel</code> shares between pictures. It
+ * has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class RenderServiceParallel implements HttpHandler
+{
+	/**
+	 * The most pictures that are made at once.
+	 */
+	static final int MAX_RENDERS = 2;
+
+	/**
+	 * The largest width or height of a picture.
+	 */
+	static final int MAX_SIDE = 8192;
+
+	/**
+	 * The deepest expressions that are made - they are kept in arrays, so this is limited by time more than by memory.
+	 */
+	static final int MAX_DEPTH = 30;
+
+	/**
+	 * The most bytes that an "ascii" picture may take up, at up to four characters per color value - the other kinds take at most about one byte per color value.
+	 */
+	static final long MAX_ASCII_BYTES = 64L << 20;
+
+	/**
+	 * The most bytes of pictures that are kept in memory.
+	 */
+	static final long MEMORY_CACHE = 64L << 20;
+
+	/**
+	 * The most bytes of pictures that are kept in files.
+	 */
+	static final long DISK_CACHE = 1L << 30;
+
+	/**
+	 * The number of rows in each band.
+	 */
+	private static final int BAND_HEIGHT = 16;
+
+	/**
+	 * The number of sets of parameters whose pictures' names are remembered, so that the expressions do not have to be made again to find them.
+	 */
+	private static final int NAMES = 4096;
+
+	/**
+	 * The number of seconds that the server waits for the pictures that are being sent when it is stopped.
+	 */
+	private static final int STOP_DELAY = 5;
+
+	/**
+	 * Used for turning text into bytes.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Where the finished pictures are kept.
+	 */
+	private final PictureCacheParallel cache;
+
+	/**
+	 * The number of threads that make each picture.
+	 */
+	private final int threads;
+
+	/**
+	 * The permits for making pictures - one is taken for as long as a picture is being made.
+	 */
+	private final Semaphore renders = new Semaphore(MAX_RENDERS);
+
+	/**
+	 * The names of the pictures for the sets of parameters that have been asked for most recently.
+	 */
+	private final LinkedHashMap<String, String> names = new LinkedHashMap<String, String>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+			{
+				return size() > NAMES;
+			}
+		};
+
+	/**
+	 * A constructor.
+	 * 
+	 * @param c
+	 *             Where the finished pictures are kept.
+	 * @param t
+	 *             The number of threads that make each picture.
+	 */
+	RenderServiceParallel(PictureCacheParallel c, int t)
+	{
+		cache = c;
+		threads = t;
+	}
+
+	/**
+	 * Serves pictures until the JVM is told to stop (such as with CTRL+C), at which point the pictures that are being sent are given a few seconds to finish. Only this computer can
+	 * connect.
+	 * 
+	 * @param port
+	 *             The port to listen on, or 0 for any free one.
+	 * @param threads
+	 *             The number of threads that make each picture.
+	 * @param directory
+	 *             The directory that the files of the cache are kept in.
+	 * @throws IOException
+	 *              If the server could not be started.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while serving.
+	 */
+	static void serve(int port, int threads, File directory) throws IOException, InterruptedException
+	{
+		final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/render", new RenderServiceParallel(new PictureCacheParallel(directory, MEMORY_CACHE, DISK_CACHE), threads));
+
+		/* Pictures that are kept are sent at once, while new ones are limited by the permits, so there is no need to limit these threads too. */
+		ExecutorService requests = Executors.newCachedThreadPool();
+		server.setExecutor(requests);
+		server.start();
+
+		final CountDownLatch stopped = new CountDownLatch(1);
+		/* An anonymous inner class that stops the server when the JVM is told to stop. */
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+			{
+				public void run()
+				{
+					server.stop(STOP_DELAY);
+					stopped.countDown();
+				}
+			}));
+
+		System.out.println("Serving pictures at http://localhost:" + server.getAddress().getPort() + "/render ...");
+		stopped.await();
+		requests.shutdown();
+	}
+
+	/**
+	 * Answers a request for a picture.
+	 * 
+	 * @see com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.HttpExchange)
+	 */
+	@Override
+	public void handle(HttpExchange exchange) throws IOException
+	{
+		boolean sent = false;// whether the headers of the picture have been sent, after which nothing else can be
+		try
+		{
+			if(!"GET".equals(exchange.getRequestMethod()))
+			{
+				exchange.getResponseHeaders().set("Allow", "GET");
+				sendText(exchange, 405, "Only GET is allowed.");
+				return;
+			}
+
+			Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+			long seed;
+			int depth, width, height, channels;
+			PictureFormatParallel format;
+			try
+			{
+				seed = (query.containsKey("seed")) ? Long.parseLong(query.get("seed")) : SplittableRandomParallel.newSeed();
+				depth = parseInt(query, "depth", 8, 0, MAX_DEPTH);
+				width = parseInt(query, "width", 301, 2, MAX_SIDE);
+				height = parseInt(query, "height", 301, 2, MAX_SIDE);
+				channels = (Boolean.parseBoolean(query.get("color")) || "1".equals(query.get("color"))) ? 3 : 1;
+				format = (query.containsKey("format")) ? PictureFormatParallel.valueOf(query.get("format").toUpperCase()) : PictureFormatParallel.PNG;
+			}
+			catch(IllegalArgumentException ee)
+			{
+				sendText(exchange, 400, "Bad parameters: " + ee.getMessage());
+				return;
+			}
+			if(format == PictureFormatParallel.ASCII && 4L * width * height * channels > MAX_ASCII_BYTES)
+			{
+				sendText(exchange, 400, "Bad parameters: the picture is too large to be sent as ascii - try another format.");
+				return;
+			}
+
+			/* The seed, depth, and number of channels decide the expressions, and together with everything else, the picture. */
+			String parameters = seed + " " + depth + " " + width + " " + height + " " + channels + " " + format + " " + TrigonometryParallel.getPrecision();
+			String name;
+			synchronized(names)
+			{
+				name = names.get(parameters);
+			}
+
+			PictureCacheParallel.Picture picture = (name != null) ? cache.get(name) : null;
+			boolean cached = picture != null;
+			if(!cached)
+			{
+				if(!renders.tryAcquire())
+				{
+					exchange.getResponseHeaders().set("Retry-After", "1");
+					sendText(exchange, 503, "Too many pictures are being made at once - try again later.");
+					return;
+				}
+				try
+				{
+					ExpressionGeneratorParallel[] e = ExpressionGeneratorParallel.generate(channels, depth, false, seed, StorageType.ARRAYS);
+					name = getName(e, width, height, format);
+					synchronized(names)
+					{
+						names.put(parameters, name);
+					}
+
+					/* Another seed may have made exactly the same expressions. */
+					picture = cache.get(name);
+					cached = picture != null;
+					if(!cached)
+					{
+						picture = render(name, e, width, height, format);
+					}
+				}
+				finally
+				{
+					renders.release();
+				}
+			}
+
+			try
+			{
+				exchange.getResponseHeaders().set("Content-Type", format.getContentType(channels));
+				exchange.getResponseHeaders().set("X-Seed", Long.toString(seed));
+				exchange.getResponseHeaders().set("X-Cache", (cached) ? "hit" : "miss");
+				sent = true;
+				exchange.sendResponseHeaders(200, picture.getLength());
+				OutputStream body = exchange.getResponseBody();
+				picture.sendTo(body);
+				body.close();
+			}
+			finally
+			{
+				picture.close();
+			}
+		}
+		catch(InterruptedException ee)
+		{
+			Thread.currentThread().interrupt();
+			if(!sent)
+			{
+				sendText(exchange, 503, "The server is stopping.");
+			}
+		}
+		catch(RuntimeException ee)
+		{
+			ee.printStackTrace();
+			if(!sent)
+			{
+				sendText(exchange, 500, "The picture could not be made.");
+			}
+		}
+		catch(IOException ee)
+		{
+			ee.printStackTrace();
+			if(!sent)
+			{
+				sendText(exchange, 500, "The picture could not be made.");
+			}
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Makes a picture and keeps it.
+	 * 
+	 * @param name
+	 *             The name that the picture is kept under.
+	 * @param e
+	 *             The expressions for each channel of the picture.
+	 * @param width
+	 *             The width of the picture.
+	 * @param height
+	 *             The height of the picture.
+	 * @param format
+	 *             The kind of file that the picture is saved as.
+	 * @return The picture, which must be closed once it has been sent.
+	 * @throws IOException
+	 *              If the picture could not be saved.
+	 * @throws InterruptedException
+	 *              If the thread was interrupted while the picture was being made.
+	 */
+	private PictureCacheParallel.Picture render(String name, ExpressionGeneratorParallel[] e, int width, int height, PictureFormatParallel format) throws IOException,
+	          InterruptedException
+	{
+		File part = cache.createPart(name);
+		try
+		{
+			PictureWriterParallel writer = format.create(part.getPath(), width, height, e.length, e);
+			new StreamingRendererParallel(e, width, height, BAND_HEIGHT, threads, DriverParallel.getBandPool(threads), new RenderMetricsParallel(width, height)).render(writer);
+			writer.close();
+			return cache.put(name, part);
+		}
+		finally
+		{
+			part.delete();// only still there if the picture was never kept
+		}
+	}
+
+	/**
+	 * Works out the name that a picture is kept under, which is a digest of everything that decides the picture, so the same picture is always found under the same name, no matter
+	 * which seed it came from.
+	 * 
+	 * @param e
+	 *             The expressions of each channel, whose equations are what is digested.
+	 * @param width
+	 *             The width of the picture.
+	 * @param height
+	 *             The height of the picture.
+	 * @param format
+	 *             The kind of file that the picture is saved as.
+	 * @return A string of hexadecimal digits followed by the extension of the file.
+	 * @throws IOException
+	 *              Never, since nothing is written anywhere but the digest.
+	 */
+	private static String getName(ExpressionGeneratorParallel[] e, int width, int height, PictureFormatParallel format) throws IOException
+	{
+		final MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException ee)
+		{
+			throw new IllegalStateException("Every Java implementation has SHA-256.", ee);
+		}
+
+		digest.update((width + "x" + height + " " + format + " " + TrigonometryParallel.getPrecision() + "\n").getBytes(UTF_8));
+		/* The equations are digested as they are written out, so that they never have to be kept as text - they are made only of ASCII characters, so these are their UTF-8 bytes. */
+		Writer text = new BufferedWriter(new OutputStreamWriter(new OutputStream()
+			{
+				public void write(int b)
+				{
+					digest.update((byte) b);
+				}
+
+				public void write(byte[] b, int offset, int length)
+				{
+					digest.update(b, offset, length);
+				}
+			}, UTF_8));
+		for(ExpressionGeneratorParallel eq : e)
+		{
+			eq.appendTo(text);
+			text.write('\n');
+		}
+		text.flush();
+
+		StringBuilder name = new StringBuilder();
+		for(byte b : digest.digest())
+		{
+			name.append(String.format("%02x", b & 0xff));
+		}
+		return name.append(format.getExtension(e.length)).toString();
+	}
+
+	/**
+	 * Splits up the query of a request.
+	 * 
+	 * @param raw
+	 *             The query, still encoded, or null if there is none.
+	 * @return A map from the name of each parameter to its value.
+	 * @throws UnsupportedEncodingException
+	 *              Never, since every Java implementation has UTF-8.
+	 */
+	private static Map<String, String> parseQuery(String raw) throws UnsupportedEncodingException
+	{
+		Map<String, String> query = new HashMap<String, String>();
+		if(raw == null)
+		{
+			return query;
+		}
+
+		for(String pair : raw.split("&"))
+		{
+			int equals = pair.indexOf('=');
+			if(equals > 0)
+			{
+				query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			}
+			else if(!pair.isEmpty())
+			{
+				query.put(URLDecoder.decode(pair, "UTF-8"), "");
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * Reads a whole number from the query.
+	 * 
+	 * @param query
+	 *             The parameters of the query.
+	 * @param key
+	 *             The name of the parameter.
+	 * @param otherwise
+	 *             The number to use if the parameter was not given.
+	 * @param min
+	 *             The smallest number that is allowed.
+	 * @param max
+	 *             The largest number that is allowed.
+	 * @return The number.
+	 * @throws IllegalArgumentException
+	 *              If the parameter is not a whole number between <code>min</code> and <code>max</code>.
+	 */
+	private static int parseInt(Map<String, String> query, String key, int otherwise, int min, int max)
+	{
+		if(!query.containsKey(key))
+		{
+			return otherwise;
+		}
+
+		int value = Integer.parseInt(query.get(key));
+		if(value < min || value > max)
+		{
+			throw new IllegalArgumentException(key + " must be between " + min + " and " + max + ".");
+		}
+		return value;
+	}
+
+	/**
+	 * Sends a short message instead of a picture.
+	 * 
+	 * @param exchange
+	 *             The request.
+	 * @param status
+	 *             The HTTP status code.
+	 * @param message
+	 *             The message.
+	 * @throws IOException
+	 *              If the message could not be sent.
+	 */
+	private static void sendText(HttpExchange exchange, int status, String message) throws IOException
+	{
+		byte[] bytes = (message + "\n").getBytes(UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream body = exchange.getResponseBody();
+		body.write(bytes);
+		body.close();
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import randomartassignment.expression.ExpressionGeneratorParallel;
+
+/**
+ * StreamingRendererParallel makes a picture a band of rows at a time, handing each band to a <code>PictureWriterParallel</code> as soon as it is finished instead of keeping the whole
+ * picture in memory. The buffers that bands are made in are reused once they have been written, and there are only ever twice as many of them as there are threads, so the memory that
+ * is needed depends on the size of a band and the number of threads but not on the size of the picture. It has been designed to work in a parallel fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class StreamingRendererParallel
+{
+	/**
+	 * The expressions for each channel of the picture.
+	 */
+	private final ExpressionGeneratorParallel[] e;
+
+	/**
+	 * The width of the picture.
+	 */
+	private final int width;
+
+	/**
+	 * The height of the picture.
+	 */
+	private final int height;
+
+	/**
+	 * The number of rows in a band.
+	 */
+	private final int bandHeight;
+
+	/**
+	 * The number of threads that make bands.
+	 */
+	private final int threads;
+
+	/**
+	 * Where the threads that make bands come from. It is not shut down, so that it can be used again for the next picture.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * Where the rows that are made and the time that they took are recorded.
+	 */
+	private final RenderMetricsParallel metrics;
+
+	/**
+	 * A constructor.
+	 * 
+	 * @param generators
+	 *             The expressions for each channel of the picture - one for grayscale, three (red, green, blue) for color.
+	 * @param w
+	 *             The width of the picture.
+	 * @param h
+	 *             The height of the picture.
+	 * @param band
+	 *             The number of rows in a band.
+	 * @param t
+	 *             The number of threads that make bands.
+	 * @param p
+	 *             Where the threads that make bands come from - it should have at least <code>t</code> threads.
+	 * @param m
+	 *             Where the rows that are made and the time that they took are recorded.
+	 */
+	StreamingRendererParallel(ExpressionGeneratorParallel[] generators, int w, int h, int band, int t, ExecutorService p, RenderMetricsParallel m)
+	{
+		metrics = m;
+		e = generators;
+		width = w;
+		height = h;
+		bandHeight = Math.max(1, Math.min(band, h));
+		threads = Math.max(1, t);
+		pool = p;
+	}
+
+	/**
+	 * Makes the picture and hands it to a writer, band by band. If the writer does not allow rows to be saved in any order, the bands are handed over in order, by the calling thread;
+	 * otherwise each thread hands over its own bands as soon as they are finished.
+	 * 
+	 * @param writer
+	 *             Where the bands are saved. It is not closed.
+	 * @throws IOException
+	 *              If the writer could not save a band.
+	 * @throws InterruptedException
+	 *              If the calling thread was interrupted while waiting for a band.
+	 */
+	void render(final PictureWriterParallel writer) throws IOException, InterruptedException
+	{
+		final int bands = (height + bandHeight - 1) / bandHeight;
+		final int channels = e.length;
+		final double xinterval = 2.0 / (width - 1);// the minus one is so that the end result is [-1,1] and not [-1,1)
+		final double yinterval = 2.0 / (height - 1);
+		final boolean anyOrder = writer.allowsAnyOrder();
+
+		/* The bounded pool of buffers - a thread that finds it empty waits until the writer has caught up. */
+		final BlockingQueue<byte[]> free = new ArrayBlockingQueue<byte[]>(2 * threads);
+		for(int b = 0; b < 2 * threads; b++)
+		{
+			free.add(new byte[bandHeight * width * channels]);
+		}
+
+		final AtomicInteger next = new AtomicInteger();
+		final HashMap<Integer, byte[]> finished = new HashMap<Integer, byte[]>();
+		final Throwable[] failure = new Throwable[1];
+		final Set<Thread> working = new HashSet<Thread>();
+		final CountDownLatch done = new CountDownLatch(threads);
+
+		for(int t = 0; t < threads; t++)
+		{
+			/* An anonymous inner class that keeps making bands until there are none left. A buffer is taken before a band is, so that the next band to be written always has one. */
+			pool.execute(new Runnable()
+				{
+					public void run()
+					{
+						synchronized(finished)
+						{
+							working.add(Thread.currentThread());
+						}
+
+						double[][] raw = new double[channels][width];
+						try
+						{
+							/* Failing after this thread has been added to the working threads interrupts it, and failing before is caught here - either way, it does not wait forever. */
+							while(!hasFailed())
+							{
+								byte[] buffer = free.take();
+								int b = next.getAndIncrement();
+								if(b >= bands)
+								{
+									free.put(buffer);
+									return;
+								}
+
+								int rows = Math.min(bandHeight, height - b * bandHeight);
+								for(int r = 0; r < rows; r++)
+								{
+									DriverParallel.makeRow(e, b * bandHeight + r, xinterval, yinterval, raw, buffer, r * width * channels, metrics);
+								}
+
+								if(anyOrder)
+								{
+									long before = System.nanoTime();
+									writer.writeRows(b * bandHeight, buffer, 0, rows);
+									metrics.addWrite(System.nanoTime() - before);
+									free.put(buffer);
+								}
+								else
+								{
+									synchronized(finished)
+									{
+										finished.put(b, buffer);
+										finished.notifyAll();
+									}
+								}
+							}
+						}
+						catch(Throwable ee)
+						{
+							fail(ee);
+						}
+						finally
+						{
+							synchronized(finished)
+							{
+								working.remove(Thread.currentThread());
+								Thread.interrupted();// the thread goes back to the pool, so it should not still be interrupted
+							}
+							done.countDown();
+						}
+					}
+
+					/**
+					 * Checks whether making the picture has failed.
+					 * 
+					 * @return True if it has, false otherwise.
+					 */
+					private boolean hasFailed()
+					{
+						synchronized(finished)
+						{
+							return failure[0] != null;
+						}
+					}
+
+					/**
+					 * Records why making the picture failed, if nothing else has already, and stops the other threads - any of them that is waiting for a buffer would otherwise wait
+					 * forever, since nothing is going to be written anymore.
+					 * 
+					 * @param ee
+					 *             Why it failed.
+					 */
+					private void fail(Throwable ee)
+					{
+						synchronized(finished)
+						{
+							if(failure[0] == null)
+							{
+								failure[0] = ee;
+								for(Thread w : working)
+								{
+									if(w != Thread.currentThread())
+									{
+										w.interrupt();
+									}
+								}
+							}
+							finished.notifyAll();
+						}
+					}
+				});
+		}
+
+		try
+		{
+			if(!anyOrder)
+			{
+				for(int b = 0; b < bands; b++)
+				{
+					byte[] buffer;
+					synchronized(finished)
+					{
+						while(!finished.containsKey(b) && failure[0] == null)
+						{
+							finished.wait();
+						}
+						if(failure[0] != null)
+						{
+							break;
+						}
+						buffer = finished.remove(b);
+					}
+					long before = System.nanoTime();
+					writer.writeRows(b * bandHeight, buffer, 0, Math.min(bandHeight, height - b * bandHeight));
+					metrics.addWrite(System.nanoTime() - before);
+					free.put(buffer);
+				}
+			}
+		}
+		catch(Throwable ee)
+		{
+			/* The bands are no longer being written, so the threads that make them are stopped, just as if one of them had failed. */
+			synchronized(finished)
+			{
+				if(failure[0] == null)
+				{
+					failure[0] = ee;
+				}
+				for(Thread w : working)
+				{
+					w.interrupt();
+				}
+			}
+		}
+
+		/* The threads are waited for even if this one is interrupted, since they are still using the writer. */
+		boolean interrupted = false;
+		while(true)
+		{
+			try
+			{
+				done.await();
+				break;
+			}
+			catch(InterruptedException ee)
+			{
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized(finished)
+		{
+			if(failure[0] instanceof IOException)
+			{
+				throw (IOException) failure[0];
+			}
+			else if(failure[0] instanceof InterruptedException)
+			{
+				throw (InterruptedException) failure[0];
+			}
+			else if(failure[0] instanceof RuntimeException)
+			{
+				throw (RuntimeException) failure[0];
+			}
+			else if(failure[0] instanceof Error)
+			{
+				throw (Error) failure[0];
+			}
+		}
+	}
+}
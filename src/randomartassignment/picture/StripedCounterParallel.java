@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012 Amndeep Singh Mann <Amndeep.dev@gmail.com> Please read License.txt for full license information.
+ */
+
+package randomartassignment.picture;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * StripedCounterParallel is a counter that many threads can add to at once without getting in each other's way. Each thread adds to one of several separate counts, picked by the
+ * thread's id and spaced far enough apart that they do not share a cache line, and the total is only worked out when it is asked for. It has been designed to work in a parallel
+ * fashion.
+ * 
+ * @author Amndeep Singh Mann
+ * @version 1.0 18 October 2026
+ */
+final class StripedCounterParallel
+{
+	/**
+	 * The distance between counts, which is the number of longs in a 64 byte cache line.
+	 */
+	private static final int SPACING = 8;
+
+	/**
+	 * The counts.
+	 */
+	private final AtomicLongArray counts;
+
+	/**
+	 * One less than the number of counts, which is a power of two.
+	 */
+	private final int mask;
+
+	/**
+	 * A constructor that makes a counter with at least two counts for every processor.
+	 */
+	StripedCounterParallel()
+	{
+		int n = Integer.highestOneBit(Math.max(1, 4 * Runtime.getRuntime().availableProcessors() - 1));
+		mask = n - 1;
+		counts = new AtomicLongArray(n * SPACING);
+	}
+
+	/**
+	 * Adds to the counter.
+	 * 
+	 * @param v
+	 *             The amount to add.
+	 */
+	void add(long v)
+	{
+		counts.getAndAdd(((int) Thread.currentThread().getId() & mask) * SPACING, v);
+	}
+
+	/**
+	 * Gets the total of everything that has been added to the counter. Anything that is added while this is running may or may not be included.
+	 * 
+	 * @return A long that is the total.
+	 */
+	long sum()
+	{
+		long total = 0;
+		for(int i = 0; i <= mask; i++)
+		{
+			total += counts.get(i * SPACING);
+		}
+		return total;
+	}
+}